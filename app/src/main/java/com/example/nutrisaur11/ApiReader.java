@@ -0,0 +1,58 @@
+package com.example.nutrisaur11;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Pull reader over one DatabaseAPI response, with the same calls as android.util.JsonReader.
+ * DatabaseApiClient backs it with a JsonReader for JSON replies and with CborCodec.Reader for
+ * CBOR replies, so row and result readers decode either wire format in a single pass.
+ *
+ * Calls that don't match the next token throw IllegalStateException, as JsonReader does.
+ */
+public interface ApiReader extends Closeable {
+
+    /**
+     * Token kinds; names match android.util.JsonToken
+     */
+    enum Token {
+        BEGIN_ARRAY,
+        END_ARRAY,
+        BEGIN_OBJECT,
+        END_OBJECT,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    Token peek() throws IOException;
+
+    void beginObject() throws IOException;
+
+    void endObject() throws IOException;
+
+    void beginArray() throws IOException;
+
+    void endArray() throws IOException;
+
+    boolean hasNext() throws IOException;
+
+    String nextName() throws IOException;
+
+    /**
+     * Next string or number, as text
+     */
+    String nextString() throws IOException;
+
+    boolean nextBoolean() throws IOException;
+
+    void nextNull() throws IOException;
+
+    /**
+     * Skip the next value, including everything nested in it
+     */
+    void skipValue() throws IOException;
+}
@@ -18,8 +18,8 @@ public abstract class BaseActivity extends AppCompatActivity {
         // Record user interaction (opening activity)
         SessionManager.getInstance(this).recordUserInteraction();
         
-        // Validate session for all activities that extend this
-        if (!SessionManager.getInstance(this).validateSession(this)) {
+        // Validate session for all activities that extend this (never blocks the UI thread)
+        if (!SessionManager.getInstance(this).validateSessionAsync(this)) {
             return; // Will redirect to login
         }
     }
@@ -31,23 +31,29 @@ public abstract class BaseActivity extends AppCompatActivity {
         // Record user interaction (returning to activity)
         SessionManager.getInstance(this).recordUserInteraction();
         
+        // Let pushed session invalidations reach this activity
+        SessionManager.getInstance(this).attachForegroundActivity(this);
+        
+        // Close the previous screen's batching window for the round-trips-saved metric
+        DatabaseApiBatcher.getInstance().markScreenTransition();
+        
         // INTERACTION-BASED VALIDATION: Only validate when user is actively using the app
-        if (!SessionManager.getInstance(this).validateSession(this)) {
+        // Renders from the last known-good session and revalidates in the background
+        if (!SessionManager.getInstance(this).validateSessionAsync(this)) {
             return; // Will redirect to login
         }
         
-        // Check if user is archived (for community users)
-        CommunityUserManager userManager = new CommunityUserManager(this);
-        userManager.checkArchiveStatusAndLogoutIfNeeded(this);
-        
-        // Check if user still exists in database (handles internet connectivity gracefully)
-        userManager.checkUserExistsAndLogoutIfNeeded(this);
+        // Check if user is archived or no longer exists in database (handles internet
+        // connectivity gracefully); batched into one request with the revalidation above
+        SessionManager.getInstance(this).checkAccountOnResume(this);
     }
     
     @Override
     protected void onPause() {
         super.onPause();
         
+        SessionManager.getInstance(this).detachForegroundActivity(this);
+        
         // Mark user as idle when activity goes to background
         SessionManager.getInstance(this).markUserAsIdle();
     }
@@ -0,0 +1,499 @@
+package com.example.nutrisaur11;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+
+/**
+ * Minimal CBOR (RFC 8949) codec for the compact DatabaseAPI wire format.
+ * Plain Java with no Android dependencies, so the same encoder and decoder can run on the
+ * device and in a local stand-in server or benchmark.
+ *
+ * Writer streams maps and arrays with indefinite lengths, so callers never need sizes up
+ * front. Reader decodes straight from the response stream as ApiReader tokens, so CBOR
+ * replies go through the same row and result readers as JSON without an intermediate
+ * JSON text or tree; byte strings are read as UTF-8 text and tags are ignored.
+ */
+public final class CborCodec {
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+    private static final int MAJOR_SIMPLE = 7;
+
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xFF;
+
+    private CborCodec() {
+    }
+
+    /**
+     * Streaming encoder; every beginMap()/beginArray() must be closed with end()
+     */
+    public static final class Writer {
+        private final ByteArrayOutputStream out;
+
+        public Writer(int initialSize) {
+            this.out = new ByteArrayOutputStream(initialSize);
+        }
+
+        public Writer beginMap() {
+            out.write(MAJOR_MAP << 5 | INDEFINITE);
+            return this;
+        }
+
+        public Writer beginArray() {
+            out.write(MAJOR_ARRAY << 5 | INDEFINITE);
+            return this;
+        }
+
+        public Writer end() {
+            out.write(BREAK);
+            return this;
+        }
+
+        public Writer string(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeHead(MAJOR_TEXT, bytes.length);
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        public Writer integer(long value) {
+            if (value >= 0) {
+                writeHead(MAJOR_UNSIGNED, value);
+            } else {
+                writeHead(MAJOR_NEGATIVE, -1 - value);
+            }
+            return this;
+        }
+
+        public Writer floating(double value) {
+            out.write(MAJOR_SIMPLE << 5 | 27);
+            writeBytes(Double.doubleToLongBits(value), 8);
+            return this;
+        }
+
+        public Writer bool(boolean value) {
+            out.write(MAJOR_SIMPLE << 5 | (value ? 21 : 20));
+            return this;
+        }
+
+        public Writer nul() {
+            out.write(MAJOR_SIMPLE << 5 | 22);
+            return this;
+        }
+
+        public byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private void writeHead(int major, long length) {
+            if (length < 24) {
+                out.write(major << 5 | (int) length);
+            } else if (length <= 0xFFL) {
+                out.write(major << 5 | 24);
+                writeBytes(length, 1);
+            } else if (length <= 0xFFFFL) {
+                out.write(major << 5 | 25);
+                writeBytes(length, 2);
+            } else if (length <= 0xFFFFFFFFL) {
+                out.write(major << 5 | 26);
+                writeBytes(length, 4);
+            } else {
+                out.write(major << 5 | 27);
+                writeBytes(length, 8);
+            }
+        }
+
+        private void writeBytes(long value, int count) {
+            for (int shift = (count - 1) * 8; shift >= 0; shift -= 8) {
+                out.write((int) (value >>> shift) & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Thrown for input that isn't well-formed CBOR
+     */
+    public static final class MalformedException extends IOException {
+        MalformedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Streaming decoder for one CBOR item; map keys that aren't strings are returned as text
+     */
+    public static final class Reader implements ApiReader {
+        private static final class Frame {
+            final boolean map;
+            long remaining; // items (arrays) or pairs (maps) left, -1 for indefinite length
+            boolean atName;
+
+            Frame(boolean map, long remaining) {
+                this.map = map;
+                this.remaining = remaining;
+                this.atName = map;
+            }
+        }
+
+        private final InputStream in;
+        private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+        private Token peeked;
+        private int initial; // initial byte of the peeked item
+        private boolean finished;
+
+        public Reader(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public Token peek() throws IOException {
+            if (peeked != null) {
+                return peeked;
+            }
+            Frame frame = stack.peek();
+            if (frame == null && finished) {
+                return peeked = Token.END_DOCUMENT;
+            }
+            if (frame != null && frame.remaining == 0) {
+                return peeked = frame.map ? Token.END_OBJECT : Token.END_ARRAY;
+            }
+
+            initial = readByte(in);
+            while (initial >>> 5 == MAJOR_TAG) {
+                readLength(in, initial & 0x1F);
+                initial = readByte(in);
+            }
+            if (initial == BREAK) {
+                if (frame == null || frame.remaining >= 0 || (frame.map && !frame.atName)) {
+                    throw new MalformedException("Unexpected CBOR break");
+                }
+                return peeked = frame.map ? Token.END_OBJECT : Token.END_ARRAY;
+            }
+            if (frame != null && frame.map && frame.atName) {
+                return peeked = Token.NAME;
+            }
+            return peeked = tokenOf(initial);
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            expect(Token.BEGIN_OBJECT);
+            open(true);
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            expect(Token.END_OBJECT);
+            leave();
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            expect(Token.BEGIN_ARRAY);
+            open(false);
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            expect(Token.END_ARRAY);
+            leave();
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            Token token = peek();
+            return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            expect(Token.NAME);
+            return consumeText();
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            Token token = peek();
+            if (token != Token.STRING && token != Token.NUMBER) {
+                throw new IllegalStateException("Expected a string but was " + token);
+            }
+            return consumeText();
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            expect(Token.BOOLEAN);
+            boolean value = (initial & 0x1F) == 21;
+            consumed();
+            return value;
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            expect(Token.NULL);
+            if ((initial & 0x1F) == 24) {
+                readByte(in);
+            }
+            consumed();
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    while (hasNext()) {
+                        nextName();
+                        skipValue();
+                    }
+                    endObject();
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    while (hasNext()) {
+                        skipValue();
+                    }
+                    endArray();
+                    break;
+                case NAME:
+                    nextName();
+                    skipValue();
+                    break;
+                case BOOLEAN:
+                    nextBoolean();
+                    break;
+                case NULL:
+                    nextNull();
+                    break;
+                case STRING:
+                case NUMBER:
+                    nextString();
+                    break;
+                default:
+                    throw new IllegalStateException("No value to skip at " + peeked);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void expect(Token expected) throws IOException {
+            Token token = peek();
+            if (token != expected) {
+                throw new IllegalStateException("Expected " + expected + " but was " + token);
+            }
+        }
+
+        private void open(boolean map) throws IOException {
+            int info = initial & 0x1F;
+            long count = info == INDEFINITE ? -1 : readLength(in, info);
+            peeked = null;
+            stack.push(new Frame(map, count));
+        }
+
+        private void leave() {
+            stack.pop();
+            consumed();
+        }
+
+        /**
+         * Text of the peeked scalar (string, byte string, number or simple value)
+         */
+        private String consumeText() throws IOException {
+            int major = initial >>> 5;
+            int info = initial & 0x1F;
+            String text;
+            switch (major) {
+                case MAJOR_UNSIGNED:
+                    text = Long.toString(readLength(in, info));
+                    break;
+                case MAJOR_NEGATIVE:
+                    text = Long.toString(-1 - readLength(in, info));
+                    break;
+                case MAJOR_BYTES:
+                case MAJOR_TEXT:
+                    text = readText(in, major, info);
+                    break;
+                case MAJOR_SIMPLE:
+                    text = simpleText(in, info);
+                    break;
+                default:
+                    throw new MalformedException("CBOR container where a scalar was expected");
+            }
+            consumed();
+            return text;
+        }
+
+        /**
+         * Move past the peeked item within its parent container
+         */
+        private void consumed() {
+            peeked = null;
+            Frame frame = stack.peek();
+            if (frame == null) {
+                finished = true;
+            } else if (frame.map && frame.atName) {
+                frame.atName = false;
+            } else {
+                frame.atName = frame.map;
+                if (frame.remaining > 0) {
+                    frame.remaining--;
+                }
+            }
+        }
+
+        private static Token tokenOf(int initial) {
+            switch (initial >>> 5) {
+                case MAJOR_UNSIGNED:
+                case MAJOR_NEGATIVE:
+                    return Token.NUMBER;
+                case MAJOR_BYTES:
+                case MAJOR_TEXT:
+                    return Token.STRING;
+                case MAJOR_ARRAY:
+                    return Token.BEGIN_ARRAY;
+                case MAJOR_MAP:
+                    return Token.BEGIN_OBJECT;
+                default:
+                    switch (initial & 0x1F) {
+                        case 20:
+                        case 21:
+                            return Token.BOOLEAN;
+                        case 25:
+                        case 26:
+                        case 27:
+                            return Token.NUMBER;
+                        default:
+                            // null, undefined and unassigned simple values
+                            return Token.NULL;
+                    }
+            }
+        }
+    }
+
+    private static String simpleText(InputStream in, int info) throws IOException {
+        switch (info) {
+            case 20:
+                return "false";
+            case 21:
+                return "true";
+            case 25:
+                return numberText(halfToDouble((int) readUnsigned(in, 2)));
+            case 26:
+                return numberText(Float.intBitsToFloat((int) readUnsigned(in, 4)));
+            case 27:
+                return numberText(Double.longBitsToDouble(readUnsigned(in, 8)));
+            case 24:
+                readByte(in);
+                return "null";
+            default:
+                return "null";
+        }
+    }
+
+    private static String readText(InputStream in, int major, int info) throws IOException {
+        if (info != INDEFINITE) {
+            return new String(readFully(in, readLength(in, info)), UTF_8);
+        }
+        // Indefinite-length string: definite chunks of the same major type until break
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        int initial;
+        while ((initial = readByte(in)) != BREAK) {
+            if (initial >>> 5 != major) {
+                throw new MalformedException("Malformed CBOR string chunk");
+            }
+            byte[] chunk = readFully(in, readLength(in, initial & 0x1F));
+            chunks.write(chunk, 0, chunk.length);
+        }
+        return new String(chunks.toByteArray(), UTF_8);
+    }
+
+    private static long readLength(InputStream in, int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return readUnsigned(in, 1);
+            case 25:
+                return readUnsigned(in, 2);
+            case 26:
+                return readUnsigned(in, 4);
+            case 27:
+                return readUnsigned(in, 8);
+            default:
+                throw new MalformedException("Malformed CBOR length " + info);
+        }
+    }
+
+    private static long readUnsigned(InputStream in, int count) throws IOException {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = value << 8 | readByte(in);
+        }
+        return value;
+    }
+
+    private static byte[] readFully(InputStream in, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new MalformedException("CBOR string too long");
+        }
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0) {
+                throw new EOFException("Truncated CBOR string");
+            }
+            offset += read;
+        }
+        return bytes;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException("Truncated CBOR item");
+        }
+        return value;
+    }
+
+    private static double halfToDouble(int half) {
+        int exponent = (half >> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        double value;
+        if (exponent == 0) {
+            value = mantissa * Math.pow(2, -24);
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        } else {
+            value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+
+    private static String numberText(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
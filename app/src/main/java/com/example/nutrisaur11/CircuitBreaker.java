@@ -0,0 +1,197 @@
+package com.example.nutrisaur11;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Per-endpoint circuit breaker (closed / open / half-open) for DatabaseAPI calls, driven by
+ * the error rate and slow-call rate over the last WINDOW_SIZE calls. While open, calls fail at
+ * once with OpenException instead of waiting out a timeout against a degraded backend; after a
+ * cool-down one trial call is let through, and its outcome closes or re-opens the circuit.
+ *
+ * The endpoint is the "action" query parameter (or the path for other URLs). Installed on the
+ * shared client by HttpClientProvider, so every caller goes through it.
+ */
+public final class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+
+    private static final int WINDOW_SIZE = 20;
+    private static final int MIN_CALLS = 10;
+    private static final double FAILURE_RATE_THRESHOLD = 0.5;
+    private static final double SLOW_RATE_THRESHOLD = 0.8;
+    private static final long SLOW_CALL_MILLIS = TimeUnit.SECONDS.toMillis(3);
+    private static final long BASE_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long MAX_OPEN_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    public enum State {
+        CLOSED,    // calls flow, outcomes are recorded
+        OPEN,      // calls fail fast until the cool-down ends
+        HALF_OPEN  // one trial call decides
+    }
+
+    /**
+     * Thrown instead of sending a call while the endpoint's circuit is open
+     */
+    public static final class OpenException extends IOException {
+        OpenException(String endpoint) {
+            super("Circuit open for " + endpoint);
+        }
+    }
+
+    private static final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final String endpoint;
+    private State state = State.CLOSED;
+    private final boolean[] failed = new boolean[WINDOW_SIZE];
+    private final boolean[] slow = new boolean[WINDOW_SIZE];
+    private int next;
+    private int recorded;
+    private long openUntil;
+    private long openMillis = BASE_OPEN_MILLIS;
+    private boolean trialInFlight;
+
+    private CircuitBreaker(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public static CircuitBreaker forEndpoint(String endpoint) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker == null) {
+            breakers.putIfAbsent(endpoint, new CircuitBreaker(endpoint));
+            breaker = breakers.get(endpoint);
+        }
+        return breaker;
+    }
+
+    static String endpointOf(Request request) {
+        String action = request.url().queryParameter("action");
+        return action != null ? action : request.url().encodedPath();
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * True if a call may go out now; in half-open, only for the single trial call
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() < openUntil) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            Log.d(TAG, endpoint + " half-open, sending trial call");
+        }
+        if (trialInFlight) {
+            return false;
+        }
+        trialInFlight = true;
+        return true;
+    }
+
+    synchronized void record(boolean success, long latencyMillis) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (success) {
+                Log.d(TAG, endpoint + " closed after successful trial");
+                state = State.CLOSED;
+                openMillis = BASE_OPEN_MILLIS;
+                recorded = 0;
+                next = 0;
+            } else {
+                openMillis = Math.min(openMillis * 2, MAX_OPEN_MILLIS);
+                trip();
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            return; // a call that started before the circuit opened
+        }
+
+        failed[next] = !success;
+        slow[next] = latencyMillis >= SLOW_CALL_MILLIS;
+        next = (next + 1) % WINDOW_SIZE;
+        recorded = Math.min(recorded + 1, WINDOW_SIZE);
+        if (recorded < MIN_CALLS) {
+            return;
+        }
+
+        int failures = 0;
+        int slowCalls = 0;
+        for (int i = 0; i < recorded; i++) {
+            if (failed[i]) {
+                failures++;
+            }
+            if (slow[i]) {
+                slowCalls++;
+            }
+        }
+        if (failures >= recorded * FAILURE_RATE_THRESHOLD || slowCalls >= recorded * SLOW_RATE_THRESHOLD) {
+            Log.w(TAG, endpoint + " opened: " + failures + " failed, " + slowCalls + " slow of " + recorded);
+            trip();
+        }
+    }
+
+    /**
+     * Release a trial slot without an outcome (call cancelled, e.g. a losing hedge)
+     */
+    synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    private void trip() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + openMillis;
+        recorded = 0;
+        next = 0;
+        MetricsRegistry.getInstance().increment(MetricsRegistry.CIRCUIT_OPENED);
+    }
+
+    /**
+     * Application interceptor: fails fast while open, records outcome and per-endpoint latency.
+     * Server errors (5xx) count as failures; cancelled calls count as nothing.
+     */
+    static final class BreakerInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            String endpoint = endpointOf(chain.request());
+            CircuitBreaker breaker = forEndpoint(endpoint);
+            if (!breaker.tryAcquire()) {
+                MetricsRegistry.getInstance().increment(MetricsRegistry.CIRCUIT_REJECTED);
+                throw new OpenException(endpoint);
+            }
+
+            long startTime = System.currentTimeMillis();
+            try {
+                Response response = chain.proceed(chain.request());
+                long duration = System.currentTimeMillis() - startTime;
+                breaker.record(response.code() < 500, duration);
+                MetricsRegistry.getInstance().recordLatency(MetricsRegistry.HTTP_LATENCY_PREFIX + endpoint, duration);
+                return response;
+            } catch (IOException | RuntimeException e) {
+                if (chain.call().isCanceled()) {
+                    breaker.release();
+                } else {
+                    breaker.record(false, System.currentTimeMillis() - startTime);
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.util.Log;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Process-wide connectivity cache driven by ConnectivityManager.NetworkCallback.
+ * Readers get a volatile snapshot (online, validated, metered, transport) without any
+ * Binder call, and work queued with runWhenOnline() runs as soon as the network returns.
+ */
+public final class ConnectivityMonitor {
+    private static final String TAG = "ConnectivityMonitor";
+
+    public static final int TRANSPORT_NONE = 0;
+    public static final int TRANSPORT_WIFI = 1;
+    public static final int TRANSPORT_CELLULAR = 2;
+    public static final int TRANSPORT_ETHERNET = 3;
+    public static final int TRANSPORT_OTHER = 4;
+
+    /**
+     * Immutable view of the default network
+     */
+    public static final class Snapshot {
+        public static final Snapshot OFFLINE = new Snapshot(false, false, false, TRANSPORT_NONE);
+
+        public final boolean online;
+        public final boolean validated;
+        public final boolean metered;
+        public final int transport;
+
+        Snapshot(boolean online, boolean validated, boolean metered, int transport) {
+            this.online = online;
+            this.validated = validated;
+            this.metered = metered;
+            this.transport = transport;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{online=" + online + ", validated=" + validated
+                + ", metered=" + metered + ", transport=" + transport + "}";
+        }
+    }
+
+    private static ConnectivityMonitor instance;
+
+    private final ConnectivityManager connectivityManager;
+    private final ConcurrentLinkedQueue<Runnable> pendingOnReconnect = new ConcurrentLinkedQueue<>();
+    private volatile Snapshot snapshot = Snapshot.OFFLINE;
+    private final boolean callbackRegistered;
+
+    private ConnectivityMonitor(Context context) {
+        this.connectivityManager = (ConnectivityManager) context.getApplicationContext()
+            .getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.callbackRegistered = registerCallback();
+        this.snapshot = readActiveNetwork();
+        Log.d(TAG, "Initial connectivity: " + snapshot);
+        applyWireFormat(snapshot);
+    }
+
+    public static synchronized ConnectivityMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new ConnectivityMonitor(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Current connectivity snapshot (no IPC once the callback is registered)
+     */
+    public Snapshot getSnapshot() {
+        if (!callbackRegistered) {
+            // Pre-Lollipop or registration failed: fall back to a live query
+            return readActiveNetwork();
+        }
+        return snapshot;
+    }
+
+    public boolean isOnline() {
+        return getSnapshot().online;
+    }
+
+    /**
+     * Run the task now if online, otherwise as soon as connectivity returns.
+     * Tasks run on the caller's thread or the ConnectivityManager callback thread,
+     * so they must hand off any blocking work.
+     */
+    public void runWhenOnline(Runnable task) {
+        if (isOnline()) {
+            task.run();
+            return;
+        }
+        pendingOnReconnect.add(task);
+        Log.d(TAG, "Deferred task until reconnect (" + pendingOnReconnect.size() + " pending)");
+
+        // Connectivity may have returned while we were queueing
+        if (isOnline()) {
+            drainPending();
+        }
+    }
+
+    private void drainPending() {
+        Runnable task;
+        while ((task = pendingOnReconnect.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Deferred task failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void onSnapshotChanged(Snapshot newSnapshot) {
+        boolean wasOnline = snapshot.online;
+        snapshot = newSnapshot;
+        Log.d(TAG, "Connectivity changed: " + newSnapshot);
+        applyWireFormat(newSnapshot);
+        if (!wasOnline && newSnapshot.online) {
+            drainPending();
+        }
+    }
+
+    /**
+     * Compact (CBOR) DatabaseAPI replies on metered links, plain JSON otherwise
+     */
+    private static void applyWireFormat(Snapshot current) {
+        if (current.online) {
+            DatabaseApiClient.getInstance().setCompactWireFormat(current.metered);
+        }
+    }
+
+    private boolean registerCallback() {
+        if (connectivityManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+
+        ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                onSnapshotChanged(fromCapabilities(capabilities));
+            }
+
+            @Override
+            public void onLost(Network network) {
+                onSnapshotChanged(Snapshot.OFFLINE);
+            }
+        };
+
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                connectivityManager.registerDefaultNetworkCallback(callback);
+            } else {
+                NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+                connectivityManager.registerNetworkCallback(request, callback);
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error registering network callback: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Snapshot readActiveNetwork() {
+        try {
+            if (connectivityManager == null) {
+                return Snapshot.OFFLINE;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                Network activeNetwork = connectivityManager.getActiveNetwork();
+                if (activeNetwork == null) {
+                    return Snapshot.OFFLINE;
+                }
+                return fromCapabilities(connectivityManager.getNetworkCapabilities(activeNetwork));
+            }
+            android.net.NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
+            boolean connected = activeNetwork != null && activeNetwork.isConnected();
+            return new Snapshot(connected, connected, connectivityManager.isActiveNetworkMetered(),
+                connected ? TRANSPORT_OTHER : TRANSPORT_NONE);
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking network availability: " + e.getMessage());
+            return Snapshot.OFFLINE;
+        }
+    }
+
+    private static Snapshot fromCapabilities(NetworkCapabilities capabilities) {
+        if (capabilities == null) {
+            return Snapshot.OFFLINE;
+        }
+
+        int transport;
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            transport = TRANSPORT_WIFI;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            transport = TRANSPORT_CELLULAR;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            transport = TRANSPORT_ETHERNET;
+        } else {
+            transport = TRANSPORT_OTHER;
+        }
+
+        boolean online = transport != TRANSPORT_OTHER
+            && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        boolean validated = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+            && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+
+        return new Snapshot(online, validated, metered, transport);
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.nutrisaur11;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects DatabaseAPI operations and sends them as one DatabaseAPI.php?action=batch request;
+ * each caller gets a Future for its own result. The first operation queued opens a BATCH_WINDOW
+ * window; everything queued until it closes (and while a request is in flight) is sent
+ * together, a lone operation as the plain action. Servers without the batch action get the
+ * operations one by one (remembered for the rest of the process).
+ * Operations are charged to their NetworkGovernor call class, so only operations of the
+ * same class share a batch request. Each class has its own queue and flush thread, so a
+ * session check never waits behind a slow data write.
+ *
+ * BaseActivity reports screen transitions so the round trips saved per transition show up
+ * in MetricsRegistry ("api.batch.saved_per_transition").
+ */
+public final class DatabaseApiBatcher {
+    private static final String TAG = "DatabaseApiBatcher";
+
+    private static final int MAX_OPERATIONS = 16; // BATCH_MAX_OPERATIONS on the server
+    private static final long BATCH_WINDOW = 20; // ms the first operation waits for others of its class
+
+    private static final DatabaseApiBatcher instance = new DatabaseApiBatcher(DatabaseApiClient.getInstance());
+
+    private final DatabaseApiClient client;
+    private final Map<NetworkGovernor.CallClass, ClassQueue> queues = new EnumMap<>(NetworkGovernor.CallClass.class);
+    private volatile boolean batchUnsupported;
+
+    private final AtomicLong savedSinceTransition = new AtomicLong();
+
+    DatabaseApiBatcher(DatabaseApiClient client) {
+        this.client = client;
+        for (NetworkGovernor.CallClass callClass : NetworkGovernor.CallClass.values()) {
+            queues.put(callClass, new ClassQueue());
+        }
+    }
+
+    /**
+     * Pending operations of one call class and the thread that sends them
+     */
+    private static final class ClassQueue {
+        final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor();
+        List<Operation<?>> pending = new ArrayList<>();
+    }
+
+    public static DatabaseApiBatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Result slot for one operation; completed by the flush thread, never run directly
+     */
+    static final class Operation<T> extends FutureTask<T> {
+        final String action;
+        final NetworkGovernor.CallClass callClass;
+        final String writesTable; // invalidated in the select cache once sent, null for reads
+        final DatabaseApiClient.BodyWriter body;
+        final DatabaseApiClient.ResponseReader<T> reader;
+        final T unparseable;
+
+        Operation(String action, NetworkGovernor.CallClass callClass, String writesTable, DatabaseApiClient.BodyWriter body,
+                  DatabaseApiClient.ResponseReader<T> reader, T unparseable) {
+            super(() -> {
+                throw new IllegalStateException("Completed by the batcher");
+            });
+            this.action = action;
+            this.callClass = callClass;
+            this.writesTable = writesTable;
+            this.body = body;
+            this.reader = reader;
+            this.unparseable = unparseable;
+        }
+
+        void readFrom(ApiReader apiReader) throws IOException {
+            set(reader.read(apiReader));
+        }
+
+        void complete(T value) {
+            set(value);
+        }
+
+        void fail(Throwable error) {
+            setException(error);
+        }
+    }
+
+    /**
+     * ClassQueue an update or insert template
+     */
+    public Future<DatabaseApiClient.WriteResult> write(DatabaseApiClient.Template template, Object[] values, Object... params) {
+        return write(NetworkGovernor.CallClass.DATA, template, values, params);
+    }
+
+    /**
+     * ClassQueue an update or insert template charged to a call class (e.g. TOKEN for FCM token writes)
+     */
+    public Future<DatabaseApiClient.WriteResult> write(NetworkGovernor.CallClass callClass, DatabaseApiClient.Template template,
+                                                       Object[] values, Object... params) {
+        return enqueue(new Operation<>(template.action, callClass, template.table, DatabaseApiClient.writeRequest(template, values, params),
+            DatabaseApiClient::readWriteResult, DatabaseApiClient.UNPARSED_WRITE));
+    }
+
+    /**
+     * ClassQueue a select template; batched selects bypass the select cache (use
+     * DatabaseApiClient.select for cached reads)
+     */
+    public <T> Future<DatabaseApiClient.SelectResult<T>> select(DatabaseApiClient.Template template,
+                                                                DatabaseApiClient.RowReader<T> rowReader, Object... params) {
+        return select(NetworkGovernor.CallClass.DATA, template, rowReader, params);
+    }
+
+    /**
+     * ClassQueue a select template charged to a call class (e.g. SESSION for account checks)
+     */
+    public <T> Future<DatabaseApiClient.SelectResult<T>> select(NetworkGovernor.CallClass callClass, DatabaseApiClient.Template template,
+                                                                DatabaseApiClient.RowReader<T> rowReader, Object... params) {
+        return enqueue(new Operation<>(template.action, callClass, null, DatabaseApiClient.selectRequest(template, params),
+            DatabaseApiClient.selectReader(rowReader), DatabaseApiClient.<T>unparsedSelect()));
+    }
+
+    /**
+     * ClassQueue a custom action the server allows in batches (sync_fcm_token), charged to a call class
+     */
+    public Future<DatabaseApiClient.WriteResult> post(NetworkGovernor.CallClass callClass, String action, String writesTable,
+                                                      DatabaseApiClient.BodyWriter bodyWriter) {
+        return enqueue(new Operation<>(action, callClass, writesTable, bodyWriter,
+            DatabaseApiClient::readWriteResult, DatabaseApiClient.UNPARSED_WRITE));
+    }
+
+    /**
+     * Block for a queued result, unwrapping the I/O error of a failed request
+     */
+    public static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for " + future, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Record the round trips saved since the previous screen transition (called from onResume)
+     */
+    public void markScreenTransition() {
+        MetricsRegistry.getInstance().recordLatency(MetricsRegistry.API_BATCH_SAVED_PER_TRANSITION,
+            savedSinceTransition.getAndSet(0));
+    }
+
+    private <T> Future<T> enqueue(Operation<T> operation) {
+        ClassQueue queue = queues.get(operation.callClass);
+        List<Operation<?>> full = null;
+        boolean first;
+        synchronized (queue) {
+            queue.pending.add(operation);
+            first = queue.pending.size() == 1;
+            if (queue.pending.size() >= MAX_OPERATIONS) {
+                full = queue.pending;
+                queue.pending = new ArrayList<>();
+            }
+        }
+
+        if (full != null) {
+            List<Operation<?>> batch = full;
+            queue.flushExecutor.execute(() -> send(batch));
+        } else if (first) {
+            // Runs when the window closes, or after the request in flight if that takes longer,
+            // taking everything queued by then
+            queue.flushExecutor.schedule(() -> flush(queue), BATCH_WINDOW, TimeUnit.MILLISECONDS);
+        }
+        return operation;
+    }
+
+    private void flush(ClassQueue queue) {
+        List<Operation<?>> batch;
+        synchronized (queue) {
+            if (queue.pending.isEmpty()) {
+                return; // already sent because the batch filled up
+            }
+            batch = queue.pending;
+            queue.pending = new ArrayList<>();
+        }
+        send(batch);
+    }
+
+    private void send(List<Operation<?>> batch) {
+        try {
+            sendBatch(batch);
+        } finally {
+            SelectCache selectCache = client.getSelectCache();
+            for (Operation<?> operation : batch) {
+                if (operation.writesTable != null) {
+                    selectCache.invalidate(operation.writesTable);
+                }
+            }
+        }
+    }
+
+    private void sendBatch(List<Operation<?>> batch) {
+        if (batch.size() == 1 || batchUnsupported) {
+            sendIndividually(batch);
+            return;
+        }
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        try {
+            byte[] body = DatabaseApiClient.writeBody(writer -> {
+                writer.name("operations").beginArray();
+                for (Operation<?> operation : batch) {
+                    writer.beginObject();
+                    writer.name("action").value(operation.action);
+                    writer.name("body").beginObject();
+                    operation.body.write(writer);
+                    writer.endObject();
+                    writer.endObject();
+                }
+                writer.endArray();
+            });
+
+            Boolean answered = client.execute(DatabaseApiClient.actionUrl("batch"), body, batch.get(0).callClass,
+                reader -> readResults(reader, batch), null);
+            if (answered == null) {
+                // Some operations may have run; completed ones keep their results, the rest fail
+                throw new IOException("Unparseable batch response");
+            }
+            if (!answered) {
+                // Older server: the batch action fell through to the default case, nothing ran
+                Log.d(TAG, "Server has no batch action, sending operations individually");
+                batchUnsupported = true;
+                sendIndividually(batch);
+                return;
+            }
+
+            int saved = batch.size() - 1;
+            metrics.increment(MetricsRegistry.API_BATCH_SENT);
+            metrics.add(MetricsRegistry.API_BATCH_SAVED, saved);
+            savedSinceTransition.addAndGet(saved);
+            Log.d(TAG, "Sent " + batch.size() + " operations in one request");
+
+            failUnanswered(batch, new IOException("Batch reply has fewer results than operations"));
+        } catch (Exception e) {
+            Log.w(TAG, "Batch request failed: " + e.getMessage());
+            failUnanswered(batch, e);
+        }
+    }
+
+    /**
+     * Fail the operations that did not get a result; answered ones keep theirs
+     */
+    private static void failUnanswered(List<Operation<?>> batch, Exception error) {
+        for (Operation<?> operation : batch) {
+            if (!operation.isDone()) {
+                operation.fail(error);
+            }
+        }
+    }
+
+    /**
+     * Complete each operation from its entry in "results"; false if the reply has no results list
+     */
+    private static boolean readResults(ApiReader reader, List<Operation<?>> batch) throws IOException {
+        boolean answered = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"results".equals(reader.nextName()) || reader.peek() != ApiReader.Token.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            answered = true;
+            reader.beginArray();
+            for (int i = 0; reader.hasNext(); i++) {
+                if (i < batch.size()) {
+                    batch.get(i).readFrom(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return answered;
+    }
+
+    private void sendIndividually(List<Operation<?>> batch) {
+        for (Operation<?> operation : batch) {
+            sendOne(operation);
+        }
+    }
+
+    private <T> void sendOne(Operation<T> operation) {
+        try {
+            operation.complete(client.execute(DatabaseApiClient.actionUrl(operation.action),
+                DatabaseApiClient.writeBody(operation.body), operation.callClass, operation.reader, operation.unparseable));
+        } catch (Exception e) {
+            operation.fail(e);
+        }
+    }
+}
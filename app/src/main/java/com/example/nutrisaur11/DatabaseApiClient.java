@@ -0,0 +1,678 @@
+package com.example.nutrisaur11;
+
+import android.util.JsonReader;
+import android.util.JsonWriter;
+import android.util.Log;
+import android.util.MalformedJsonException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Typed client for the DatabaseAPI.php protocol (select / update / insert and custom actions).
+ * Requests are written straight to bytes with JsonWriter from pre-built templates, and responses
+ * are read with a streaming ApiReader that keeps only the fields the caller asks for, so a call
+ * never holds the body as a String plus a parsed JSONObject tree.
+ *
+ * With the compact wire format enabled (ConnectivityMonitor turns it on for metered links) the
+ * client asks for CBOR via Accept and, once the server has advertised CBOR request support,
+ * sends CBOR bodies too. CBOR replies are decoded straight from the stream by CborCodec.Reader;
+ * servers without CBOR keep answering JSON, and every reader is unchanged either way.
+ */
+public final class DatabaseApiClient {
+    private static final String TAG = "DatabaseApiClient";
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final MediaType CBOR = MediaType.parse(CborCodec.CONTENT_TYPE);
+    private static final String ACCEPT_COMPACT = CborCodec.CONTENT_TYPE + ", application/json;q=0.9";
+    // Set by servers that decode CBOR request bodies
+    private static final String HEADER_ACCEPT_CONTENT = "X-Accept-Content-Type";
+    // Buffered JSON bodies up to this size are read from a String rather than a decoding stream
+    private static final int SMALL_BODY = 2048;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final HttpUrl BASE_URL = HttpUrl.parse(Constants.API_BASE_URL + "api/DatabaseAPI.php");
+
+    private static final DatabaseApiClient instance = new DatabaseApiClient(HttpClientProvider.getClient());
+
+    // A 2xx write we can't read keeps the old "HTTP success means success" behaviour
+    static final WriteResult UNPARSED_WRITE = new WriteResult(true, "Non-JSON response", false, false, true, null, false);
+
+    private final OkHttpClient httpClient;
+    private volatile boolean compactWireFormat;
+    // Learned from the last response; only then are request bodies sent as CBOR
+    private final AtomicBoolean serverAcceptsCbor = new AtomicBoolean(false);
+    private final SelectCache selectCache = new SelectCache();
+
+    DatabaseApiClient(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public static DatabaseApiClient getInstance() {
+        return instance;
+    }
+
+    /**
+     * Opt in to (or out of) the CBOR wire format; JSON stays the fallback for any server.
+     * Set by ConnectivityMonitor from the metered flag of the current network.
+     */
+    public void setCompactWireFormat(boolean enabled) {
+        compactWireFormat = enabled;
+        if (!enabled) {
+            serverAcceptsCbor.set(false);
+        }
+    }
+
+    public boolean isCompactWireFormat() {
+        return compactWireFormat;
+    }
+
+    /**
+     * Reads one row object from a select response into a typed record
+     */
+    public interface RowReader<T> {
+        T read(ApiReader reader) throws IOException;
+    }
+
+    /**
+     * Writes the fields of a custom action's request object (the enclosing object is handled)
+     */
+    public interface BodyWriter {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    /**
+     * Pre-built request shape for one table/where/column combination; build once, reuse per call
+     */
+    public static final class Template {
+        final String action;
+        final HttpUrl url;
+        final String table;
+        final String where;
+        final String[] columns;
+
+        private Template(String action, String table, String where, String[] columns) {
+            this.action = action;
+            this.url = actionUrl(action);
+            this.table = table;
+            this.where = where;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * UPDATE table SET columns... WHERE where; values are passed per call in column order
+     */
+    public static Template updateTemplate(String table, String where, String... columns) {
+        return new Template("update", table, where, columns);
+    }
+
+    public static Template insertTemplate(String table, String... columns) {
+        return new Template("insert", table, null, columns);
+    }
+
+    /**
+     * SELECT columns FROM table WHERE where; an empty column list selects *
+     */
+    public static Template selectTemplate(String table, String where, String... columns) {
+        return new Template("select", table, where, columns);
+    }
+
+    /**
+     * Result of a write action (update, insert or a custom action such as sync_fcm_token)
+     */
+    public static final class WriteResult {
+        public final boolean success;
+        public final String message;
+        public final boolean unchanged;
+        public final boolean updated;
+        public final boolean exists;
+        public final String insertId;
+        public final boolean parsed; // false if the server answered 2xx with a non-JSON body
+
+        WriteResult(boolean success, String message, boolean unchanged, boolean updated, boolean exists,
+                    String insertId, boolean parsed) {
+            this.success = success;
+            this.message = message;
+            this.unchanged = unchanged;
+            this.updated = updated;
+            this.exists = exists;
+            this.insertId = insertId;
+            this.parsed = parsed;
+        }
+
+        /**
+         * True if the server knew the conditional action (answered "unchanged"/"updated" or
+         * reported the user missing); older servers answer with neither
+         */
+        public boolean isConditionalReply() {
+            return unchanged || updated || !exists;
+        }
+    }
+
+    /**
+     * Rows of a select plus the server's success flag
+     */
+    public static final class SelectResult<T> {
+        public final boolean success;
+        public final String message;
+        public final List<T> rows;
+
+        SelectResult(boolean success, String message, List<T> rows) {
+            this.success = success;
+            this.message = message;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Run an update or insert template (blocking)
+     *
+     * @param values one value per template column (String, Number, Boolean or null)
+     * @param params values for the WHERE placeholders
+     */
+    public WriteResult write(Template template, Object[] values, Object... params) throws IOException {
+        try {
+            return execute(template.url, writeBody(writeRequest(template, values, params)), null,
+                DatabaseApiClient::readWriteResult, UNPARSED_WRITE);
+        } finally {
+            selectCache.invalidate(template.table);
+        }
+    }
+
+    /**
+     * Run a select template and map each row with the reader (blocking); served from the
+     * select cache when possible
+     */
+    public <T> SelectResult<T> select(Template template, RowReader<T> rowReader, Object... params) throws IOException {
+        return selectCached(template, selectRequest(template, params), params, rowReader);
+    }
+
+    /**
+     * POST a custom action and read the common write-result fields (blocking)
+     *
+     * @param writesTable table the action writes to, invalidated in the select cache (or null)
+     */
+    public WriteResult post(String action, String writesTable, BodyWriter bodyWriter) throws IOException {
+        try {
+            return execute(actionUrl(action), writeBody(bodyWriter), null, DatabaseApiClient::readWriteResult, UNPARSED_WRITE);
+        } finally {
+            if (writesTable != null) {
+                selectCache.invalidate(writesTable);
+            }
+        }
+    }
+
+    public SelectCache getSelectCache() {
+        return selectCache;
+    }
+
+    interface ResponseReader<T> {
+        T read(ApiReader reader) throws IOException;
+    }
+
+    static BodyWriter writeRequest(Template template, Object[] values, Object[] params) {
+        if (values.length != template.columns.length) {
+            throw new IllegalArgumentException("Expected " + template.columns.length + " values, got " + values.length);
+        }
+        return writer -> {
+            writer.name("table").value(template.table);
+            writer.name("data").beginObject();
+            for (int i = 0; i < values.length; i++) {
+                writeValue(writer.name(template.columns[i]), values[i]);
+            }
+            writer.endObject();
+            if (template.where != null) {
+                writer.name("where").value(template.where);
+                writeParams(writer, params);
+            }
+        };
+    }
+
+    static BodyWriter selectRequest(Template template, Object[] params) {
+        return writer -> {
+            writer.name("table").value(template.table);
+            if (template.columns.length > 0) {
+                writer.name("columns").value(join(template.columns));
+            }
+            if (template.where != null) {
+                writer.name("where").value(template.where);
+                writeParams(writer, params);
+            }
+        };
+    }
+
+    static <T> ResponseReader<SelectResult<T>> selectReader(RowReader<T> rowReader) {
+        return reader -> readSelectResult(reader, rowReader);
+    }
+
+    static <T> SelectResult<T> unparsedSelect() {
+        return new SelectResult<>(false, "Non-JSON response", Collections.<T>emptyList());
+    }
+
+    /**
+     * @param callClass NetworkGovernor budget to charge (null for DATA)
+     * @param unparseable returned for a 2xx whose body isn't JSON (e.g. PHP notices in front of it)
+     */
+    <T> T execute(HttpUrl url, byte[] body, NetworkGovernor.CallClass callClass,
+                  ResponseReader<T> responseReader, T unparseable) throws IOException {
+        String action = url.queryParameter("action");
+        try (Response response = send(url, body, null, callClass)) {
+            ResponseBody responseBody = response.body();
+            if (!response.isSuccessful() || responseBody == null) {
+                throw new IOException("HTTP " + response.code() + " from " + action);
+            }
+            return read(action, openReader(responseBody), responseReader, unparseable);
+        }
+    }
+
+    /**
+     * Select through the cache: a fresh entry is served locally, a stale one is revalidated
+     * with its ETag, and only a miss or a changed result downloads the rows
+     */
+    private <T> SelectResult<T> selectCached(Template template, BodyWriter request, Object[] params,
+                                             RowReader<T> rowReader) throws IOException {
+        String key = SelectCache.key(template.table, template.columns, template.where, params);
+        long now = System.currentTimeMillis();
+        SelectCache.Entry cached = selectCache.get(key);
+        ResponseReader<SelectResult<T>> responseReader = selectReader(rowReader);
+        SelectResult<T> unparseable = unparsedSelect();
+
+        if (cached != null && now < cached.freshUntil) {
+            selectCache.recordHit();
+            return read(template.action, openReader(cached.body, cached.cbor), responseReader, unparseable);
+        }
+
+        try (Response response = send(template.url, writeBody(request), cached != null ? cached.etag : null, null)) {
+            ResponseBody responseBody = response.body();
+            if (response.code() == 304 && cached != null) {
+                cached.freshUntil = now + selectCache.ttlFor(template.table);
+                selectCache.recordRevalidated();
+                return read(template.action, openReader(cached.body, cached.cbor), responseReader, unparseable);
+            }
+            if (!response.isSuccessful() || responseBody == null) {
+                throw new IOException("HTTP " + response.code() + " from " + template.action);
+            }
+            selectCache.recordMiss();
+
+            // Kept as received (JSON or CBOR) for the cache, and parsed once from those bytes
+            byte[] body = responseBody.bytes();
+            boolean cbor = isCompact(responseBody);
+            SelectResult<T> result = read(template.action, openReader(body, cbor), responseReader, unparseable);
+            String etag = response.header("ETag");
+            if (result.success && etag != null) {
+                selectCache.put(key, new SelectCache.Entry(SelectCache.normalize(template.table), body, cbor, etag,
+                    now + selectCache.ttlFor(template.table)));
+            }
+            return result;
+        }
+    }
+
+    private static <T> T read(String action, ApiReader source, ResponseReader<T> responseReader, T unparseable) throws IOException {
+        try (ApiReader reader = source) {
+            return responseReader.read(reader);
+        } catch (MalformedJsonException | CborCodec.MalformedException | IllegalStateException e) {
+            Log.w(TAG, "Unparseable response from " + action + ": " + e.getMessage());
+            return unparseable;
+        }
+    }
+
+    /**
+     * POST the body, negotiating the wire format; the caller closes the response
+     */
+    private Response send(HttpUrl url, byte[] body, String ifNoneMatch, NetworkGovernor.CallClass callClass) throws IOException {
+        boolean compact = compactWireFormat;
+        boolean sendCbor = compact && serverAcceptsCbor.get();
+        byte[] payload = sendCbor ? toCbor(body) : body;
+
+        Request.Builder builder = new Request.Builder()
+            .url(url)
+            .post(RequestBody.create(payload, sendCbor ? CBOR : JSON));
+        if (compact) {
+            builder.header("Accept", ACCEPT_COMPACT);
+        }
+        if (ifNoneMatch != null) {
+            builder.header("If-None-Match", ifNoneMatch);
+        }
+        if (callClass != null) {
+            builder.tag(NetworkGovernor.CallClass.class, callClass);
+        }
+
+        // Bytes on the wire are counted per action by RequestTimingRecorder once the body is read
+        Response response = httpClient.newCall(builder.build()).execute();
+
+        if (compact) {
+            boolean accepts = response.header(HEADER_ACCEPT_CONTENT, "").contains(CborCodec.CONTENT_TYPE);
+            serverAcceptsCbor.set(accepts);
+            if (sendCbor && !accepts) {
+                // The server lost CBOR support and can't have read this body; resend as JSON
+                Log.w(TAG, "Server no longer accepts CBOR, resending " + url.queryParameter("action") + " as JSON");
+                response.close();
+                return send(url, body, ifNoneMatch, callClass);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Streaming reader for the body in the format the server chose
+     */
+    private static ApiReader openReader(ResponseBody responseBody) {
+        return openReader(responseBody.byteStream(), isCompact(responseBody));
+    }
+
+    /**
+     * Reader over a buffered body (select replies and cache hits). A stream reader costs an
+     * 8 KB decode buffer, more than a typical reply, so small JSON bodies are decoded in one go.
+     */
+    static ApiReader openReader(byte[] body, boolean cbor) {
+        if (!cbor && body.length <= SMALL_BODY) {
+            return new JsonApiReader(new JsonReader(new StringReader(new String(body, UTF_8))));
+        }
+        return openReader(new ByteArrayInputStream(body), cbor);
+    }
+
+    private static ApiReader openReader(InputStream in, boolean cbor) {
+        if (cbor) {
+            return new CborCodec.Reader(in);
+        }
+        return new JsonApiReader(new JsonReader(new InputStreamReader(in, UTF_8)));
+    }
+
+    /**
+     * Whether the server answered in CBOR (counted once per response, not per cache read)
+     */
+    private static boolean isCompact(ResponseBody responseBody) {
+        MediaType type = responseBody.contentType();
+        boolean cbor = type != null && CborCodec.CONTENT_TYPE.equals(type.type() + "/" + type.subtype());
+        if (cbor) {
+            MetricsRegistry.getInstance().increment(MetricsRegistry.API_COMPACT_RESPONSE);
+        }
+        return cbor;
+    }
+
+    /**
+     * ApiReader over android.util.JsonReader
+     */
+    private static final class JsonApiReader implements ApiReader {
+        private final JsonReader reader;
+
+        JsonApiReader(JsonReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Token peek() throws IOException {
+            return Token.valueOf(reader.peek().name());
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            reader.beginObject();
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            reader.endObject();
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            reader.beginArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            reader.endArray();
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return reader.hasNext();
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            return reader.nextName();
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            return reader.nextString();
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            return reader.nextBoolean();
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            reader.nextNull();
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            reader.skipValue();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Re-encode a JSON request body (as written by writeBody) as CBOR
+     */
+    static byte[] toCbor(byte[] json) throws IOException {
+        CborCodec.Writer writer = new CborCodec.Writer(json.length);
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), UTF_8))) {
+            transcode(reader, writer);
+        }
+        return writer.toByteArray();
+    }
+
+    private static void transcode(JsonReader reader, CborCodec.Writer writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginMap();
+                while (reader.hasNext()) {
+                    writer.string(reader.nextName());
+                    transcode(reader, writer);
+                }
+                reader.endObject();
+                writer.end();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    transcode(reader, writer);
+                }
+                reader.endArray();
+                writer.end();
+                break;
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    writer.integer(Long.parseLong(number));
+                } catch (NumberFormatException e) {
+                    writer.floating(Double.parseDouble(number));
+                }
+                break;
+            case BOOLEAN:
+                writer.bool(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nul();
+                break;
+            default:
+                writer.string(reader.nextString());
+        }
+    }
+
+    static WriteResult readWriteResult(ApiReader reader) throws IOException {
+        boolean success = false;
+        String message = null;
+        boolean unchanged = false;
+        boolean updated = false;
+        boolean exists = true;
+        String insertId = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "success":
+                    success = nextBoolean(reader);
+                    break;
+                case "message":
+                    message = nextString(reader);
+                    break;
+                case "unchanged":
+                    unchanged = nextBoolean(reader);
+                    break;
+                case "updated":
+                    updated = nextBoolean(reader);
+                    break;
+                case "exists":
+                    exists = nextBoolean(reader);
+                    break;
+                case "insert_id":
+                    insertId = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new WriteResult(success, message, unchanged, updated, exists, insertId, true);
+    }
+
+    private static <T> SelectResult<T> readSelectResult(ApiReader reader, RowReader<T> rowReader) throws IOException {
+        boolean success = false;
+        String message = null;
+        List<T> rows = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "success":
+                    success = nextBoolean(reader);
+                    break;
+                case "message":
+                    message = nextString(reader);
+                    break;
+                case "data":
+                    if (reader.peek() != ApiReader.Token.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        rows.add(rowReader.read(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new SelectResult<>(success, message, rows);
+    }
+
+    /**
+     * Next value as a string (numbers and booleans converted, null kept as null)
+     */
+    public static String nextString(ApiReader reader) throws IOException {
+        ApiReader.Token token = reader.peek();
+        if (token == ApiReader.Token.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (token == ApiReader.Token.BOOLEAN) {
+            return String.valueOf(reader.nextBoolean());
+        }
+        if (token == ApiReader.Token.BEGIN_OBJECT || token == ApiReader.Token.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Next value as a boolean; PHP may send true, 1 or "1"
+     */
+    public static boolean nextBoolean(ApiReader reader) throws IOException {
+        ApiReader.Token token = reader.peek();
+        if (token == ApiReader.Token.BOOLEAN) {
+            return reader.nextBoolean();
+        }
+        String value = nextString(reader);
+        return "1".equals(value) || "true".equalsIgnoreCase(value);
+    }
+
+    static byte[] writeBody(BodyWriter bodyWriter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, UTF_8));
+        writer.beginObject();
+        bodyWriter.write(writer);
+        writer.endObject();
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static void writeParams(JsonWriter writer, Object[] params) throws IOException {
+        writer.name("params").beginArray();
+        for (Object param : params) {
+            writeValue(writer, param);
+        }
+        writer.endArray();
+    }
+
+    private static void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else {
+            writer.value(value.toString());
+        }
+    }
+
+    private static String join(String[] columns) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(columns[i]);
+        }
+        return builder.toString();
+    }
+
+    static HttpUrl actionUrl(String action) {
+        return BASE_URL.newBuilder().addQueryParameter("action", action).build();
+    }
+}
@@ -7,25 +7,24 @@ import android.os.Handler;
 import android.os.Looper;
 import android.content.Intent;
 import android.app.Activity;
-import com.example.nutrisaur11.UserPreferencesDbHelper;
 
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.FirebaseMessagingService;
 
-import org.json.JSONObject;
-import org.json.JSONArray;
-import org.json.JSONException;
-
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.CountDownLatch;
-
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Application-scoped FCM token registration. Use getInstance(); the manager holds only the
+ * application context, leaves the daily sync to SyncJobService, and tracks registration with an
+ * atomic state machine so concurrent callers join the attempt in flight instead of racing.
+ */
 public class FCMTokenManager {
     private static final String TAG = "FCMTokenManager";
     private static final String PREFS_NAME = "fcm_prefs";
@@ -33,76 +32,82 @@ public class FCMTokenManager {
     private static final String KEY_LAST_REGISTRATION = "last_registration";
     private static final String KEY_USER_EMAIL = "user_email";
     private static final String KEY_USER_BARANGAY = "user_barangay";
+    private static final String KEY_ACKED_DIGEST = "acked_registration_digest"; // digest of last (token, email, barangay) the server accepted
+    
     // Device ID tracking removed to avoid database changes
     
-    // Server endpoint for FCM token registration - using working database update API
-    private static final String SERVER_URL = Constants.API_BASE_URL + "api/DatabaseAPI.php?action=update";
+    // Registrations (token and barangay) go out only as the conditional sync_fcm_token action,
+    // which compares digests and answers "unchanged" without writing; logout clears with an update
+    private static final DatabaseApiClient.Template CLEAR_TOKEN =
+        DatabaseApiClient.updateTemplate("community_users", "email = ?", "fcm_token");
     
     // Registration intervals
     private static final long REGISTRATION_INTERVAL = TimeUnit.HOURS.toMillis(24); // 24 hours (daily sync)
-    private static final long RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(30); // 30 minutes
-    
-    private Context context;
-    private SharedPreferences prefs;
-    private Handler handler;
-    private OkHttpClient httpClient;
-    private boolean isRegistrationInProgress = false;
-    
-    public FCMTokenManager(Context context) {
-        this.context = context;
-        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        this.handler = new Handler(Looper.getMainLooper());
-        this.httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    
+    // Max time a registration attempt waits for the outbox before handing over to its retries
+    private static final long REGISTRATION_ATTEMPT_TIMEOUT = 30; // seconds
+    private static final long LOCATION_UPDATE_DEBOUNCE = 1500; // ms of quiet before a location change is sent
+    
+    /**
+     * Registration lifecycle: one attempt at a time, failures retried by the outbox
+     */
+    public enum RegistrationState {
+        IDLE,            // nothing pending
+        IN_FLIGHT,       // an attempt is fetching the token or waiting for the server
+        RETRY_SCHEDULED  // last attempt failed, the outbox will retry with backoff
+    }
+    
+    private static FCMTokenManager instance;
+    
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Handler handler;
+    private final DatabaseApiBatcher apiBatcher;
+    private final ExecutorService registrationExecutor;
+    private final AtomicReference<RegistrationState> registrationState;
+    // Set by every caller; an attempt clears it when it starts, so requests made mid-attempt trigger one more
+    private final AtomicBoolean registrationRequested;
+    private final Object attemptLock;
+    private final AtomicReference<String> pendingLocationEmail;
+    private final AtomicBoolean locationUpdatePending;
+    private final Runnable locationUpdateRunnable;
+    
+    private FCMTokenManager(Context appContext, Handler mainHandler) {
+        this(appContext, mainHandler, DatabaseApiBatcher.getInstance());
+    }
+    
+    FCMTokenManager(Context appContext, Handler mainHandler, DatabaseApiBatcher apiBatcher) {
+        this.context = appContext;
+        this.prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.handler = mainHandler;
+        this.apiBatcher = apiBatcher;
+        this.registrationExecutor = Executors.newSingleThreadExecutor();
+        this.registrationState = new AtomicReference<>(RegistrationState.IDLE);
+        this.registrationRequested = new AtomicBoolean(false);
+        this.attemptLock = new Object();
+        this.pendingLocationEmail = new AtomicReference<>();
+        this.locationUpdatePending = new AtomicBoolean(false);
+        this.locationUpdateRunnable = () -> {
+            locationUpdatePending.set(false);
+            registrationExecutor.execute(this::sendLocationUpdate);
+        };
         
         // Device ID generation removed to avoid database changes
     }
     
-    // Device ID methods removed to avoid database changes
-
-    /**
-     * Check with server if the given token exists
-     */
-    private boolean tokenExistsOnServer(String token) {
-        try {
-            // Use database select API to check if token exists
-            JSONObject requestData = new JSONObject();
-            requestData.put("table", "community_users");
-            requestData.put("where", "fcm_token = :fcm_token");
-            requestData.put("params", new JSONObject().put("fcm_token", token));
-            
-            RequestBody body = RequestBody.create(
-                requestData.toString(), 
-                MediaType.parse("application/json; charset=utf-8")
-            );
-            
-            Request request = new Request.Builder()
-                .url(Constants.API_BASE_URL + "api/DatabaseAPI.php?action=select")
-                .post(body)
-                .addHeader("Content-Type", "application/json")
-                .build();
-                
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    return false;
-                }
-                String responseBody = response.body() != null ? response.body().string() : "";
-                JSONObject json = new JSONObject(responseBody);
-                if (json.optBoolean("success", false)) {
-                    JSONArray data = json.optJSONArray("data");
-                    return data != null && data.length() > 0;
-                }
-                return false;
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Failed to check token existence on server: " + e.getMessage());
-            return false;
+    public static synchronized FCMTokenManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new FCMTokenManager(context.getApplicationContext(), new Handler(Looper.getMainLooper()));
         }
+        return instance;
     }
     
+    public RegistrationState getRegistrationState() {
+        return registrationState.get();
+    }
+    
+    // Device ID methods removed to avoid database changes
+
     /**
      * Initialize FCM token registration
      * Call this when the app starts or user logs in
@@ -110,27 +115,13 @@ public class FCMTokenManager {
     public void initialize() {
         Log.d(TAG, "Initializing FCM token manager");
         
-        // Get current FCM token
-        FirebaseMessaging.getInstance().getToken()
-            .addOnCompleteListener(task -> {
-                if (task.isSuccessful() && task.getResult() != null) {
-                    String token = task.getResult();
-                    Log.d(TAG, "FCM token obtained: " + token.substring(0, Math.min(50, token.length())) + "...");
-                    
-                    // Check if we need to register this token
-                    if (shouldRegisterToken(token)) {
-                        Log.d(TAG, "Token needs registration, sending to server");
-                        registerTokenWithServer(token);
-                    } else {
-                        Log.d(TAG, "Token already registered and up-to-date, skipping server call");
-                    }
-                } else {
-                    Log.e(TAG, "Failed to get FCM token", task.getException());
-                }
-            });
+        // Deliver token writes left over from earlier runs (process death, offline)
+        flushPendingTokenClears();
         
-        // Schedule periodic token refresh (daily sync)
-        scheduleTokenRefresh();
+        requestRegistration("initialize");
+        
+        // Daily sync runs as a JobScheduler job (survives process death)
+        SyncJobService.scheduleTokenSync(context);
     }
     
     /**
@@ -143,41 +134,15 @@ public class FCMTokenManager {
         // Save user email
         prefs.edit().putString(KEY_USER_EMAIL, userEmail).apply();
         
-        // Get current FCM token
-        FirebaseMessaging.getInstance().getToken()
-            .addOnCompleteListener(task -> {
-                if (task.isSuccessful() && task.getResult() != null) {
-                    String token = task.getResult();
-                    Log.d(TAG, "FCM token obtained: " + token.substring(0, Math.min(50, token.length())) + "...");
-                    
-                    // Decide registration in background to avoid blocking main thread
-                    new Thread(() -> {
-                        try {
-                            boolean shouldRegister = shouldRegisterToken(token);
-                            if (!shouldRegister) {
-                                // Double-check with server in case database was cleared
-                                boolean existsOnServer = tokenExistsOnServer(token);
-                                if (!existsOnServer) {
-                                    Log.d(TAG, "Server reports token is missing; will register now");
-                                    registerTokenWithServer(token);
-                                } else {
-                                    Log.d(TAG, "Token already registered and up-to-date on server, skipping");
-                                }
-                            } else {
-                                Log.d(TAG, "Token needs registration based on local checks; registering");
-                                registerTokenWithServer(token);
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error deciding token registration: " + e.getMessage());
-                        }
-                    }).start();
-                } else {
-                    Log.e(TAG, "Failed to get FCM token", task.getException());
-                }
-            });
+        // The user is back: a queued clear must not wipe the token we are about to register
+        FCMTokenOutbox.getInstance(context).cancelClear(userEmail);
+        flushPendingTokenClears();
+        
+        // The daily conditional sync also catches a server-side wipe, so no extra select here
+        requestRegistration("initialize with user");
         
-        // Schedule periodic token refresh
-        scheduleTokenRefresh();
+        // Daily sync runs as a JobScheduler job (survives process death)
+        SyncJobService.scheduleTokenSync(context);
     }
     
     /**
@@ -193,22 +158,104 @@ public class FCMTokenManager {
             .putString(KEY_USER_BARANGAY, userBarangay)
             .apply();
         
-        // Get current token and register
+        // The new barangay changes the registration digest, so this attempt is sent
+        requestRegistration("screening");
+    }
+    
+    /**
+     * Ask for a registration attempt. If one is already in flight the caller joins it; because the
+     * attempt reads the token and user info when it starts, a request made mid-attempt gets one
+     * follow-up attempt rather than being lost.
+     */
+    private void requestRegistration(String reason) {
+        registrationRequested.set(true);
+        if (!tryStartAttempt()) {
+            Log.d(TAG, "Registration already in flight, joining (" + reason + ")");
+            MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_REGISTRATION_JOINED);
+            return;
+        }
+        Log.d(TAG, "Starting registration attempt (" + reason + ")");
+        runAttempt();
+    }
+    
+    private boolean tryStartAttempt() {
+        while (true) {
+            RegistrationState current = registrationState.get();
+            if (current == RegistrationState.IN_FLIGHT) {
+                return false;
+            }
+            if (registrationState.compareAndSet(current, RegistrationState.IN_FLIGHT)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * One attempt: fetch the token, decide, queue in the outbox and wait for delivery.
+     * Only the thread that moved the state to IN_FLIGHT gets here.
+     */
+    private void runAttempt() {
+        registrationRequested.set(false);
+        MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_REGISTRATION_ATTEMPT);
+        
         FirebaseMessaging.getInstance().getToken()
             .addOnCompleteListener(task -> {
-                if (task.isSuccessful() && task.getResult() != null) {
-                    String token = task.getResult();
-                    Log.d(TAG, "FCM token obtained for screening registration: " + token.substring(0, Math.min(50, token.length())) + "...");
-                    registerTokenWithServer(token, userEmail, userBarangay);
-                } else {
-                    Log.e(TAG, "Failed to get FCM token for screening registration", task.getException());
+                if (!task.isSuccessful() || task.getResult() == null) {
+                    Log.e(TAG, "Failed to get FCM token", task.getException());
+                    registrationExecutor.execute(this::finishAttempt);
+                    return;
                 }
+                
+                String token = task.getResult();
+                Log.d(TAG, "FCM token obtained: " + token.substring(0, Math.min(50, token.length())) + "...");
+                
+                // Decide registration in background to avoid blocking main thread
+                registrationExecutor.execute(() -> {
+                    try {
+                        if (shouldRegisterToken(token)) {
+                            Log.d(TAG, "Token needs registration, sending to server");
+                            registerTokenWithServer(token);
+                            FCMTokenOutbox.getInstance(context).drain().get(REGISTRATION_ATTEMPT_TIMEOUT, TimeUnit.SECONDS);
+                        } else {
+                            Log.d(TAG, "Token already registered and up-to-date, skipping server call");
+                        }
+                    } catch (Exception e) {
+                        Log.w(TAG, "Registration attempt did not complete: " + e.getMessage());
+                    } finally {
+                        finishAttempt();
+                    }
+                });
             });
     }
     
+    private void finishAttempt() {
+        if (registrationRequested.get()) {
+            // Someone asked while we were busy: run once more with the latest token and user info
+            runAttempt();
+            return;
+        }
+        
+        // The outbox is read on its own thread, after the writes this attempt queued
+        String userEmail = prefs.getString(KEY_USER_EMAIL, "");
+        FCMTokenOutbox outbox = FCMTokenOutbox.getInstance(context);
+        outbox.execute(() -> settleAttempt(outbox.queryPendingRegister(userEmail)));
+    }
+    
+    private void settleAttempt(boolean retryPending) {
+        registrationState.set(retryPending ? RegistrationState.RETRY_SCHEDULED : RegistrationState.IDLE);
+        synchronized (attemptLock) {
+            attemptLock.notifyAll();
+        }
+        
+        // A request that raced with the state change above
+        if (registrationRequested.get() && tryStartAttempt()) {
+            runAttempt();
+        }
+    }
+    
     /**
-     * Update user location and refresh FCM token
-     * Call this when user changes their location
+     * Update user location for the existing FCM token
+     * Call this when user changes their location; rapid changes are debounced into one request
      */
     public void updateUserLocation(String userEmail, String newBarangay) {
         Log.d(TAG, "Updating user location for " + userEmail + " to " + newBarangay);
@@ -216,37 +263,62 @@ public class FCMTokenManager {
         // Update stored barangay
         prefs.edit().putString(KEY_USER_BARANGAY, newBarangay).apply();
         
-        // Force refresh token to update server with new location
-        forceTokenRefresh();
+        // Only the last location within the debounce window is sent
+        pendingLocationEmail.set(userEmail);
+        if (locationUpdatePending.getAndSet(true)) {
+            MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_LOCATION_DEBOUNCED);
+        }
+        handler.removeCallbacks(locationUpdateRunnable);
+        handler.postDelayed(locationUpdateRunnable, LOCATION_UPDATE_DEBOUNCE);
+    }
+    
+    /**
+     * Patch the barangay for the token the server already has: no deleteToken/getToken round trips
+     * and no new token for the server to re-index
+     */
+    private void sendLocationUpdate() {
+        String userEmail = pendingLocationEmail.get();
+        String barangay = prefs.getString(KEY_USER_BARANGAY, "");
+        String token = prefs.getString(KEY_FCM_TOKEN, "");
+        
+        if (userEmail == null || userEmail.isEmpty()) {
+            return;
+        }
+        
+        if (token.isEmpty()) {
+            // No token registered yet, so a full registration carries the location
+            requestRegistration("location change");
+            return;
+        }
+        
+        Log.d(TAG, "Sending location-only update for " + userEmail + ": " + barangay);
+        MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_LOCATION_UPDATE);
+        registerTokenWithServer(token, userEmail, barangay);
     }
     
     /**
-     * Check if we should register the token
+     * Check if we should register the token: only when the (token, email, barangay) tuple differs
+     * from the last one the server acknowledged, or for the daily conditional sync
      */
     private boolean shouldRegisterToken(String newToken) {
-        String storedToken = prefs.getString(KEY_FCM_TOKEN, "");
+        String ackedDigest = prefs.getString(KEY_ACKED_DIGEST, "");
         long lastRegistration = prefs.getLong(KEY_LAST_REGISTRATION, 0);
         long currentTime = System.currentTimeMillis();
         
-        // Only register if:
-        // 1. Token is completely different from stored token (Firebase generated new token)
-        // 2. No token was ever stored (first time)
-        // 3. Last registration was more than 24 hours ago (daily refresh for server sync)
-        
-        if (storedToken.isEmpty()) {
-            Log.d(TAG, "No stored token found, will register");
+        if (ackedDigest.isEmpty()) {
+            Log.d(TAG, "No acknowledged registration found, will register");
             return true;
         }
         
-        if (!newToken.equals(storedToken)) {
-            Log.d(TAG, "Token changed from Firebase, will register new token");
+        String digest = registrationDigest(newToken, prefs.getString(KEY_USER_EMAIL, ""), prefs.getString(KEY_USER_BARANGAY, ""));
+        if (!digest.equals(ackedDigest)) {
+            Log.d(TAG, "Token, email or barangay changed since last registration, will register");
             return true;
         }
         
-        // Only refresh every 24 hours for server sync, not every 6 hours
-        long dailyInterval = TimeUnit.HOURS.toMillis(24);
-        if ((currentTime - lastRegistration) > dailyInterval) {
-            Log.d(TAG, "Daily refresh interval reached, will sync with server");
+        // Daily sync is a conditional update; the server answers "unchanged" without writing
+        if ((currentTime - lastRegistration) > REGISTRATION_INTERVAL) {
+            Log.d(TAG, "Daily sync interval reached, will confirm with server");
             return true;
         }
         
@@ -254,6 +326,32 @@ public class FCMTokenManager {
         return false;
     }
     
+    /**
+     * SHA-256 over the registration tuple; the server computes the same digest from its row
+     */
+    static String registrationDigest(String token, String userEmail, String userBarangay) {
+        try {
+            java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest((token + "|" + userEmail + "|" + (userBarangay != null ? userBarangay : ""))
+                .getBytes(java.nio.charset.Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            // SHA-256 is always available on Android
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Forget the acknowledged tuple so the next registration is sent (token cleared on server)
+     */
+    private void forgetAcknowledgedRegistration() {
+        prefs.edit().remove(KEY_ACKED_DIGEST).apply();
+    }
+    
     /**
      * Public method to check if token registration is needed
      * Used by MyFirebaseMessagingService to determine if onNewToken should trigger registration
@@ -304,122 +402,111 @@ public class FCMTokenManager {
     }
     
     /**
-     * Register token with server with user info
+     * Register token with server with user info.
+     * The write goes through the durable outbox, which retries with backoff and across restarts.
      */
     private void registerTokenWithServer(String token, String userEmail, String userBarangay) {
-        if (isRegistrationInProgress) {
-            Log.d(TAG, "Registration already in progress, skipping");
+        // Skip entirely when the server already has exactly this tuple and the daily sync isn't due
+        String digest = registrationDigest(token, userEmail, userBarangay);
+        long lastRegistration = prefs.getLong(KEY_LAST_REGISTRATION, 0);
+        if (digest.equals(prefs.getString(KEY_ACKED_DIGEST, ""))
+                && System.currentTimeMillis() - lastRegistration <= REGISTRATION_INTERVAL) {
+            Log.d(TAG, "Registration unchanged since last acknowledgement, skipping server call");
+            MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_REGISTRATION_SKIPPED);
             return;
         }
-        
-        isRegistrationInProgress = true;
-        
-        try {
-            // Update existing user with FCM token (no status/device_id columns needed)
-            JSONObject data = new JSONObject();
-            data.put("fcm_token", token);
-            data.put("barangay", userBarangay);
-            
-            JSONObject requestData = new JSONObject();
-            requestData.put("table", "community_users");
-            requestData.put("data", data);
-            requestData.put("where", "email = ?");
-            requestData.put("params", new JSONArray().put(userEmail));
-            
-            RequestBody body = RequestBody.create(
-                requestData.toString(), 
-                MediaType.parse("application/json; charset=utf-8")
-            );
-            
-            Request request = new Request.Builder()
-                .url(SERVER_URL)
-                .post(body)
-                .addHeader("Content-Type", "application/json")
-                .build();
-            
-            // Execute request in background
-            new Thread(() -> {
-                try {
-                    Response response = httpClient.newCall(request).execute();
-                    String responseBody = response.body() != null ? response.body().string() : "";
-                    
-                    if (response.isSuccessful()) {
-                        Log.d(TAG, "FCM token registered successfully: " + responseBody);
-                        
-                        // Save successful registration
-                        handler.post(() -> {
-                            prefs.edit()
-                                .putString(KEY_FCM_TOKEN, token)
-                                .putLong(KEY_LAST_REGISTRATION, System.currentTimeMillis())
-                                .apply();
-                            
-                            isRegistrationInProgress = false;
-                        });
-                        
-                    } else {
-                        Log.e(TAG, "Failed to register FCM token. HTTP " + response.code() + ": " + responseBody);
-                        
-                        // Schedule retry
-                        handler.post(() -> {
-                            isRegistrationInProgress = false;
-                            scheduleRetry();
-                        });
-                    }
-                    
-                } catch (IOException e) {
-                    Log.e(TAG, "Network error registering FCM token", e);
-                    
-                    // Schedule retry
-                    handler.post(() -> {
-                        isRegistrationInProgress = false;
-                        scheduleRetry();
-                    });
-                }
-            }).start();
-            
-        } catch (JSONException e) {
-            Log.e(TAG, "Error creating request JSON", e);
-            isRegistrationInProgress = false;
+        FCMTokenOutbox.getInstance(context).enqueueRegister(userEmail, token, userBarangay);
+    }
+    
+    /**
+     * Send one outbox operation to the server (blocking, called from the outbox drain thread)
+     */
+    boolean sendOutboxOperation(FCMTokenOutbox.Operation operation) {
+        if (FCMTokenOutbox.OP_CLEAR.equals(operation.type)) {
+            forgetAcknowledgedRegistration();
+            return sendTokenClearRequest(operation.email);
         }
+        return sendTokenRegistration(operation.token, operation.email, operation.barangay);
     }
     
     /**
-     * Schedule token refresh
+     * Write the token and barangay for a user (blocking, call off the main thread).
+     * Sends a conditional sync first; servers without sync_fcm_token get the plain update.
+     *
+     * @return true if the server accepted (or already had) the registration
      */
-    private void scheduleTokenRefresh() {
-        handler.postDelayed(() -> {
-            Log.d(TAG, "Performing scheduled token refresh");
+    private boolean sendTokenRegistration(String token, String userEmail, String userBarangay) {
+        long startTime = System.currentTimeMillis();
+        String digest = registrationDigest(token, userEmail, userBarangay);
+        try {
+            // Sent at once, or batched with token writes queued while another request is in flight; token budget
+            DatabaseApiClient.WriteResult result = DatabaseApiBatcher.await(apiBatcher.post(NetworkGovernor.CallClass.TOKEN,
+                "sync_fcm_token", "community_users", writer -> writer
+                .name("email").value(userEmail)
+                .name("fcm_token").value(token)
+                .name("barangay").value(userBarangay)
+                .name("digest").value(digest)));
+            if (result.parsed && result.isConditionalReply()) {
+                MetricsRegistry.getInstance().recordLatency(MetricsRegistry.TOKEN_REGISTRATION, System.currentTimeMillis() - startTime);
+                if (!result.success) {
+                    Log.e(TAG, "Failed to sync FCM token: " + result.message);
+                    MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_REGISTRATION_FAILURE);
+                    return false;
+                }
+                if (result.unchanged) {
+                    Log.d(TAG, "FCM token unchanged on server");
+                    MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_SYNC_UNCHANGED);
+                } else {
+                    Log.d(TAG, "FCM token updated on server");
+                }
+                acknowledgeRegistration(token, userEmail, digest);
+                return true;
+            }
             
-            FirebaseMessaging.getInstance().getToken()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        String token = task.getResult();
-                        if (shouldRegisterToken(token)) {
-                            registerTokenWithServer(token);
-                        }
-                    }
-                    
-                    // Schedule next refresh
-                    scheduleTokenRefresh();
-                });
-                
-        }, REGISTRATION_INTERVAL);
+            // Not acknowledged: the outbox keeps the registration and retries it
+            Log.e(TAG, "Unexpected reply to sync_fcm_token: " + result.message);
+            MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_REGISTRATION_FAILURE);
+            return false;
+        } catch (IOException e) {
+            Log.e(TAG, "Network error registering FCM token", e);
+            MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_REGISTRATION_FAILURE);
+            return false;
+        }
+    }
+    
+    private void acknowledgeRegistration(String token, String userEmail, String digest) {
+        prefs.edit()
+            .putString(KEY_FCM_TOKEN, token)
+            .putString(KEY_ACKED_DIGEST, digest)
+            .putLong(KEY_LAST_REGISTRATION, System.currentTimeMillis())
+            .apply();
+        
+        // An outbox retry delivered what the last attempt could not
+        registrationState.compareAndSet(RegistrationState.RETRY_SCHEDULED, RegistrationState.IDLE);
+        
+        // Pushes can reach this device now; the token also authenticates the first session lease
+        SessionManager.getInstance(context).onPushRegistered(userEmail);
     }
     
     /**
-     * Schedule retry after failure
+     * Run (or join) a registration attempt and wait for it (blocking, called from SyncJobService)
+     *
+     * @return false if the attempt left work for the outbox to retry
      */
-    private void scheduleRetry() {
-        handler.postDelayed(() -> {
-            Log.d(TAG, "Retrying FCM token registration");
-            FirebaseMessaging.getInstance().getToken()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        String token = task.getResult();
-                        registerTokenWithServer(token);
-                    }
-                });
-        }, RETRY_INTERVAL);
+    boolean syncNow(long timeoutMillis) throws InterruptedException {
+        requestRegistration("background sync");
+        
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (attemptLock) {
+            while (registrationState.get() == RegistrationState.IN_FLIGHT) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                attemptLock.wait(remaining);
+            }
+        }
+        return registrationState.get() != RegistrationState.RETRY_SCHEDULED;
     }
     
     /**
@@ -429,6 +516,17 @@ public class FCMTokenManager {
         return prefs.getString(KEY_FCM_TOKEN, "");
     }
     
+    /**
+     * True if the server has acknowledged this device's token for the user, i.e. session
+     * invalidation pushes can reach it
+     */
+    public boolean isRegisteredFor(String userEmail) {
+        return userEmail != null
+            && userEmail.equalsIgnoreCase(prefs.getString(KEY_USER_EMAIL, ""))
+            && !prefs.getString(KEY_FCM_TOKEN, "").isEmpty()
+            && !prefs.getString(KEY_ACKED_DIGEST, "").isEmpty();
+    }
+    
     /**
      * Get user email
      */
@@ -456,113 +554,65 @@ public class FCMTokenManager {
     }
     
     /**
-     * Clear FCM token from database for specific user (called during logout)
-     * This method runs in background thread but waits for completion to ensure timing
+     * Clear FCM token from database for specific user (called during logout).
+     * Returns at once; callers that need to know when the clear went out can wait on the result,
+     * and if they stop waiting the clear stays queued.
+     *
+     * @return the outbox drain that sends the clear
      */
-    public void clearFCMTokenForUser(String userEmail) {
-        Log.d(TAG, "=== FCM TOKEN CLEARING DEBUG START ===");
-        Log.d(TAG, "Input userEmail: " + userEmail);
+    public Future<?> clearFCMTokenForUser(String userEmail) {
+        if (userEmail == null || userEmail.isEmpty()) {
+            Log.e(TAG, "ERROR: No user email provided to clear FCM token");
+            FutureTask<Void> nothingQueued = new FutureTask<>(() -> null);
+            nothingQueued.run();
+            return nothingQueued;
+        }
         
+        Log.d(TAG, "Queueing FCM token clear for: " + userEmail);
+        forgetAcknowledgedRegistration();
+        return FCMTokenOutbox.getInstance(context).enqueueClear(userEmail);
+    }
+    
+    /**
+     * Clear FCM token for a user without blocking the caller (logout path).
+     * The clear is recorded durably first and replaces any pending registration for the user,
+     * so it is retried on the next start if the process dies or the device is offline.
+     */
+    public void clearFCMTokenForUserAsync(String userEmail) {
         if (userEmail == null || userEmail.isEmpty()) {
             Log.e(TAG, "ERROR: No user email provided to clear FCM token");
             return;
         }
         
-        Log.d(TAG, "Step 1: Starting FCM token clearing for: " + userEmail);
-        
-        // Use CountDownLatch to wait for background thread completion
-        final CountDownLatch latch = new CountDownLatch(1);
-        
-        // Run in background thread to avoid NetworkOnMainThreadException
-        new Thread(() -> {
-            try {
-                Log.d(TAG, "Step 2: Creating JSON data object");
-                // Clear FCM token for the user
-                JSONObject data = new JSONObject();
-                data.put("fcm_token", ""); // Clear FCM token with empty string
-                Log.d(TAG, "Step 2.1: Created data JSON: " + data.toString());
-                
-                Log.d(TAG, "Step 3: Creating request data object");
-                JSONObject requestData = new JSONObject();
-                requestData.put("table", "community_users");
-                requestData.put("data", data);
-                requestData.put("where", "email = ?");
-                requestData.put("params", new JSONArray().put(userEmail));
-                Log.d(TAG, "Step 3.1: Created requestData JSON: " + requestData.toString());
-                
-                String requestBody = requestData.toString();
-                Log.d(TAG, "Step 4: Final request body: " + requestBody);
-                
-                Log.d(TAG, "Step 5: Creating RequestBody");
-                RequestBody body = RequestBody.create(
-                    requestBody, 
-                    MediaType.parse("application/json; charset=utf-8")
-                );
-                Log.d(TAG, "Step 5.1: RequestBody created successfully");
-                
-                Log.d(TAG, "Step 6: Checking httpClient");
-                if (httpClient == null) {
-                    Log.e(TAG, "ERROR: HttpClient is null, cannot clear FCM token");
-                    return;
-                }
-                Log.d(TAG, "Step 6.1: HttpClient is not null");
-                
-                Log.d(TAG, "Step 7: Checking SERVER_URL");
-                Log.d(TAG, "Step 7.1: SERVER_URL value: '" + SERVER_URL + "'");
-                if (SERVER_URL == null || SERVER_URL.isEmpty()) {
-                    Log.e(TAG, "ERROR: SERVER_URL is null or empty, cannot clear FCM token");
-                    return;
-                }
-                Log.d(TAG, "Step 7.2: SERVER_URL is valid");
-                
-                Log.d(TAG, "Step 8: Building HTTP request");
-                Request request = new Request.Builder()
-                    .url(SERVER_URL)
-                    .post(body)
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-                Log.d(TAG, "Step 8.1: HTTP request built successfully");
-                Log.d(TAG, "Step 8.2: Request URL: " + request.url());
-                Log.d(TAG, "Step 8.3: Request method: " + request.method());
-                Log.d(TAG, "Step 8.4: Request headers: " + request.headers());
-                
-                Log.d(TAG, "Step 9: Executing HTTP request");
-                try (Response response = httpClient.newCall(request).execute()) {
-                    Log.d(TAG, "Step 9.1: HTTP request executed");
-                    Log.d(TAG, "Step 9.2: Response code: " + response.code());
-                    Log.d(TAG, "Step 9.3: Response message: " + response.message());
-                    Log.d(TAG, "Step 9.4: Response headers: " + response.headers());
-                    
-                    if (response.isSuccessful()) {
-                        Log.d(TAG, "SUCCESS: FCM token cleared from database for: " + userEmail);
-                        String responseBody = response.body() != null ? response.body().string() : "null";
-                        Log.d(TAG, "Step 9.5: Response body: " + responseBody);
-                    } else {
-                        Log.w(TAG, "WARNING: Failed to clear FCM token: " + response.code());
-                        String responseBody = response.body() != null ? response.body().string() : "null";
-                        Log.w(TAG, "Step 9.6: Error response body: " + responseBody);
-                    }
-                }
-                Log.d(TAG, "Step 10: HTTP request completed");
-            } catch (Exception e) {
-                Log.e(TAG, "ERROR: Exception in FCM token clearing: " + e.getMessage());
-                Log.e(TAG, "ERROR: Exception type: " + e.getClass().getSimpleName());
-                Log.e(TAG, "ERROR: Stack trace:", e);
-            } finally {
-                latch.countDown(); // Signal completion
-            }
-        }).start();
-        
-        // Wait for background thread to complete (max 10 seconds)
+        forgetAcknowledgedRegistration();
+        FCMTokenOutbox.getInstance(context).enqueueClear(userEmail);
+    }
+    
+    /**
+     * Send all queued token writes (clears and registrations) in the background
+     */
+    public void flushPendingTokenClears() {
+        FCMTokenOutbox.getInstance(context).drain();
+    }
+    
+    /**
+     * Clear the FCM token for a user on the server (blocking, call off the main thread)
+     *
+     * @return true if the server accepted the update
+     */
+    private boolean sendTokenClearRequest(String userEmail) {
+        long startTime = System.currentTimeMillis();
         try {
-            Log.d(TAG, "Step 11: Waiting for background thread to complete");
-            latch.await(10, java.util.concurrent.TimeUnit.SECONDS);
-            Log.d(TAG, "Step 11.1: Background thread completed");
-        } catch (InterruptedException e) {
-            Log.e(TAG, "ERROR: Interrupted while waiting for FCM token clearing: " + e.getMessage());
+            // Clear FCM token with empty string
+            DatabaseApiClient.WriteResult result = DatabaseApiBatcher.await(apiBatcher.write(NetworkGovernor.CallClass.TOKEN, CLEAR_TOKEN, new Object[]{""}, userEmail));
+            MetricsRegistry.getInstance().recordLatency(MetricsRegistry.TOKEN_CLEAR, System.currentTimeMillis() - startTime);
+            Log.d(TAG, "SUCCESS: FCM token cleared from database for: " + userEmail + " (" + result.message + ")");
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "ERROR: Exception in FCM token clearing: " + e.getMessage());
+            MetricsRegistry.getInstance().increment(MetricsRegistry.TOKEN_CLEAR_FAILURE);
+            return false;
         }
-        
-        Log.d(TAG, "=== FCM TOKEN CLEARING DEBUG END ===");
     }
     
     /**
@@ -575,40 +625,7 @@ public class FCMTokenManager {
             return;
         }
         
-        new Thread(() -> {
-            try {
-                // Clear FCM token for the user
-                JSONObject data = new JSONObject();
-                data.put("fcm_token", null); // Clear FCM token
-                
-                JSONObject requestData = new JSONObject();
-                requestData.put("table", "community_users");
-                requestData.put("data", data);
-                requestData.put("where", "email = ?");
-                requestData.put("params", new JSONArray().put(userEmail));
-                
-                RequestBody body = RequestBody.create(
-                    requestData.toString(), 
-                    MediaType.parse("application/json; charset=utf-8")
-                );
-                
-                Request request = new Request.Builder()
-                    .url(SERVER_URL)
-                    .post(body)
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-                
-                try (Response response = httpClient.newCall(request).execute()) {
-                    if (response.isSuccessful()) {
-                        Log.d(TAG, "FCM token cleared from database for: " + userEmail);
-                    } else {
-                        Log.w(TAG, "Failed to clear FCM token: " + response.code());
-                    }
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error clearing FCM token: " + e.getMessage());
-            }
-        }).start();
+        FCMTokenOutbox.getInstance(context).enqueueClear(userEmail);
     }
     
     /**
@@ -632,6 +649,7 @@ public class FCMTokenManager {
     public void clearTokenData() {
         prefs.edit()
             .remove(KEY_FCM_TOKEN)
+            .remove(KEY_ACKED_DIGEST)
             .remove(KEY_LAST_REGISTRATION)
             .apply();
         Log.d(TAG, "FCM token data cleared for user switch");
@@ -642,70 +660,10 @@ public class FCMTokenManager {
      */
     private String fetchBarangayFromDatabase(String userEmail) {
         try {
-            // Use the existing UserPreferencesDbHelper to fetch barangay
-            UserPreferencesDbHelper dbHelper = new UserPreferencesDbHelper(context);
-            android.database.sqlite.SQLiteDatabase db = dbHelper.getReadableDatabase();
-            
-            // Check if table exists first
-            android.database.Cursor tableCheck = db.rawQuery(
-                "SELECT name FROM sqlite_master WHERE type='table' AND name=?", 
-                new String[]{UserPreferencesDbHelper.TABLE_NAME}
-            );
-            
-            if (tableCheck == null || !tableCheck.moveToFirst()) {
-                Log.w(TAG, "Table " + UserPreferencesDbHelper.TABLE_NAME + " does not exist");
-                if (tableCheck != null) tableCheck.close();
-                dbHelper.close();
-                return "";
-            }
-            tableCheck.close();
-            
-            // Check if barangay column exists
-            android.database.Cursor columnCheck = db.rawQuery(
-                "PRAGMA table_info(" + UserPreferencesDbHelper.TABLE_NAME + ")", 
-                null
-            );
-            
-            boolean hasBarangayColumn = false;
-            if (columnCheck != null) {
-                while (columnCheck.moveToNext()) {
-                    String columnName = columnCheck.getString(columnCheck.getColumnIndex("name"));
-                    if (UserPreferencesDbHelper.COL_BARANGAY.equals(columnName)) {
-                        hasBarangayColumn = true;
-                        break;
-                    }
-                }
-                columnCheck.close();
-            }
-            
-            if (!hasBarangayColumn) {
-                Log.w(TAG, "Column " + UserPreferencesDbHelper.COL_BARANGAY + " does not exist in table " + UserPreferencesDbHelper.TABLE_NAME);
-                dbHelper.close();
-                return "";
-            }
-            
-            String[] columns = {UserPreferencesDbHelper.COL_BARANGAY};
-            String selection = UserPreferencesDbHelper.COL_USER_EMAIL + " = ?";
-            String[] selectionArgs = {userEmail};
-            
-            android.database.Cursor cursor = db.query(
-                UserPreferencesDbHelper.TABLE_NAME,
-                columns,
-                selection,
-                selectionArgs,
-                null, null, null
-            );
-            
-            String barangay = "";
-            if (cursor != null && cursor.moveToFirst()) {
-                barangay = cursor.getString(cursor.getColumnIndex(UserPreferencesDbHelper.COL_BARANGAY));
-                cursor.close();
-            }
-            
-            dbHelper.close();
+            // Shared store: schema checked once per process, lookup is a precompiled statement
+            String barangay = UserPreferencesStore.getInstance(context).getBarangay(userEmail);
             Log.d(TAG, "Fetched barangay from database for " + userEmail + ": " + barangay);
-            return barangay != null ? barangay : "";
-            
+            return barangay;
         } catch (Exception e) {
             Log.e(TAG, "Error fetching barangay from database: " + e.getMessage());
             return "";
@@ -724,8 +682,7 @@ public class FCMTokenManager {
                     FirebaseMessaging.getInstance().getToken()
                         .addOnCompleteListener(tokenTask -> {
                             if (tokenTask.isSuccessful() && tokenTask.getResult() != null) {
-                                String newToken = tokenTask.getResult();
-                                registerTokenWithServer(newToken);
+                                requestRegistration("token rotated");
                             }
                         });
                 }
@@ -742,6 +699,7 @@ public class FCMTokenManager {
         
         prefs.edit()
             .remove(KEY_FCM_TOKEN)
+            .remove(KEY_ACKED_DIGEST)
             .remove(KEY_LAST_REGISTRATION)
             .remove(KEY_USER_EMAIL)
             .remove(KEY_USER_BARANGAY)
@@ -0,0 +1,342 @@
+package com.example.nutrisaur11;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Durable outbox for FCM token writes (register / clear) backed by SQLite.
+ * There is at most one pending operation per user: a newer operation replaces the older one,
+ * so register-then-clear collapses into a single clear. Operations survive process death and
+ * are drained on start, on reconnect and on an exponential backoff schedule.
+ *
+ * All database access runs on the outbox's single background thread, in call order; queries
+ * return Futures, so callers on the main thread never touch the database.
+ */
+public class FCMTokenOutbox {
+    private static final String TAG = "FCMTokenOutbox";
+
+    public static final String OP_REGISTER = "register";
+    public static final String OP_CLEAR = "clear";
+
+    private static final long BASE_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * One pending token write
+     */
+    public static final class Operation {
+        public final long id;
+        public final String email;
+        public final String type;
+        public final String token;
+        public final String barangay;
+        public final int attempts;
+
+        Operation(long id, String email, String type, String token, String barangay, int attempts) {
+            this.id = id;
+            this.email = email;
+            this.type = type;
+            this.token = token;
+            this.barangay = barangay;
+            this.attempts = attempts;
+        }
+
+        @Override
+        public String toString() {
+            return type + "(" + email + ", attempts=" + attempts + ")";
+        }
+    }
+
+    /**
+     * Performs one operation against the server (blocking)
+     */
+    public interface Sender {
+        boolean send(Operation operation);
+    }
+
+    private static FCMTokenOutbox instance;
+
+    private final Context context;
+    private final OutboxDbHelper dbHelper;
+    private final Sender sender;
+    private final ExecutorService drainExecutor = Executors.newSingleThreadExecutor();
+    private final Random random = new Random();
+    private final AtomicBoolean waitingForNetwork = new AtomicBoolean(false);
+
+    FCMTokenOutbox(Context context, Sender sender) {
+        this.context = context.getApplicationContext();
+        this.dbHelper = new OutboxDbHelper(this.context);
+        this.sender = sender;
+    }
+
+    public static synchronized FCMTokenOutbox getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            FCMTokenManager manager = FCMTokenManager.getInstance(appContext);
+            instance = new FCMTokenOutbox(appContext, manager::sendOutboxOperation);
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a token registration for a user, replacing any pending operation for that user;
+     * returns the drain that sends it
+     */
+    public Future<?> enqueueRegister(String email, String token, String barangay) {
+        return enqueue(email, OP_REGISTER, token, barangay);
+    }
+
+    /**
+     * Queue a token clear for a user, replacing any pending operation for that user;
+     * returns the drain that sends it
+     */
+    public Future<?> enqueueClear(String email) {
+        return enqueue(email, OP_CLEAR, "", null);
+    }
+
+    /**
+     * Drop a pending clear for a user (the user logged back in before it went out)
+     */
+    public void cancelClear(String email) {
+        drainExecutor.execute(() -> dbHelper.getWritableDatabase().delete(OutboxDbHelper.TABLE_NAME,
+            OutboxDbHelper.COL_EMAIL + " = ? AND " + OutboxDbHelper.COL_OP + " = ?",
+            new String[]{email, OP_CLEAR}));
+    }
+
+    /**
+     * Run a task on the outbox thread, after any write queued before this call
+     */
+    void execute(Runnable task) {
+        drainExecutor.execute(task);
+    }
+
+    /**
+     * True if a registration for this user is still waiting to be delivered; answered on the
+     * outbox thread, after any write queued before this call
+     */
+    public Future<Boolean> hasPendingRegister(String email) {
+        return drainExecutor.submit(() -> queryPendingRegister(email));
+    }
+
+    /**
+     * Number of operations waiting to be delivered; answered on the outbox thread
+     */
+    public Future<Integer> getPendingCount() {
+        return drainExecutor.submit(this::queryPendingCount);
+    }
+
+    /**
+     * Blocking database read behind hasPendingRegister; only for tasks already on the outbox thread
+     */
+    boolean queryPendingRegister(String email) {
+        Cursor cursor = dbHelper.getReadableDatabase().query(OutboxDbHelper.TABLE_NAME,
+            new String[]{OutboxDbHelper.COL_ID},
+            OutboxDbHelper.COL_EMAIL + " = ? AND " + OutboxDbHelper.COL_OP + " = ?",
+            new String[]{email, OP_REGISTER}, null, null, null);
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private boolean hasPendingClear() {
+        Cursor cursor = dbHelper.getReadableDatabase().query(OutboxDbHelper.TABLE_NAME,
+            new String[]{OutboxDbHelper.COL_ID}, OutboxDbHelper.COL_OP + " = ?",
+            new String[]{OP_CLEAR}, null, null, null, "1");
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int queryPendingCount() {
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+            "SELECT COUNT(*) FROM " + OutboxDbHelper.TABLE_NAME, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Future<?> enqueue(String email, String type, String token, String barangay) {
+        ContentValues values = new ContentValues();
+        values.put(OutboxDbHelper.COL_EMAIL, email);
+        values.put(OutboxDbHelper.COL_OP, type);
+        values.put(OutboxDbHelper.COL_TOKEN, token);
+        values.put(OutboxDbHelper.COL_BARANGAY, barangay);
+        values.put(OutboxDbHelper.COL_ATTEMPTS, 0);
+        values.put(OutboxDbHelper.COL_NEXT_ATTEMPT, 0);
+        values.put(OutboxDbHelper.COL_CREATED_AT, System.currentTimeMillis());
+
+        drainExecutor.execute(() -> {
+            // UNIQUE(email) + REPLACE collapses to the latest operation per user
+            dbHelper.getWritableDatabase().insertWithOnConflict(OutboxDbHelper.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+            Log.d(TAG, "Queued " + type + " for " + email);
+        });
+        return drain();
+    }
+
+    /**
+     * Send all due operations in the background, after any write queued before this call;
+     * returns the drain task
+     */
+    public Future<?> drain() {
+        return drainExecutor.submit(this::drainDueOperations);
+    }
+
+    private void drainDueOperations() {
+        if (!ConnectivityMonitor.getInstance(context).isOnline()) {
+            waitForNetwork();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Operation operation : loadDue(now)) {
+            boolean sent;
+            try {
+                sent = sender.send(operation);
+            } catch (Exception e) {
+                Log.e(TAG, "Error sending " + operation + ": " + e.getMessage());
+                sent = false;
+            }
+
+            if (sent) {
+                // Only remove the row we sent; a newer operation for the user keeps its place
+                dbHelper.getWritableDatabase().delete(OutboxDbHelper.TABLE_NAME,
+                    OutboxDbHelper.COL_ID + " = ?", new String[]{String.valueOf(operation.id)});
+                Log.d(TAG, "Delivered " + operation);
+            } else {
+                markFailed(operation);
+                if (!ConnectivityMonitor.getInstance(context).isOnline()) {
+                    waitForNetwork();
+                    return;
+                }
+            }
+        }
+
+        scheduleNextDrain();
+    }
+
+    private List<Operation> loadDue(long now) {
+        List<Operation> operations = new ArrayList<>();
+        Cursor cursor = dbHelper.getReadableDatabase().query(OutboxDbHelper.TABLE_NAME, null,
+            OutboxDbHelper.COL_NEXT_ATTEMPT + " <= ?", new String[]{String.valueOf(now)},
+            null, null, OutboxDbHelper.COL_ID);
+        try {
+            while (cursor.moveToNext()) {
+                operations.add(new Operation(
+                    cursor.getLong(cursor.getColumnIndexOrThrow(OutboxDbHelper.COL_ID)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(OutboxDbHelper.COL_EMAIL)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(OutboxDbHelper.COL_OP)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(OutboxDbHelper.COL_TOKEN)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(OutboxDbHelper.COL_BARANGAY)),
+                    cursor.getInt(cursor.getColumnIndexOrThrow(OutboxDbHelper.COL_ATTEMPTS))
+                ));
+            }
+        } finally {
+            cursor.close();
+        }
+        return operations;
+    }
+
+    /**
+     * Exponential backoff with jitter: 30 s, 1 min, 2 min ... capped at 30 min
+     */
+    private void markFailed(Operation operation) {
+        int attempts = operation.attempts + 1;
+        long backoff = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempts - 1, 16));
+        long delay = backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+
+        ContentValues values = new ContentValues();
+        values.put(OutboxDbHelper.COL_ATTEMPTS, attempts);
+        values.put(OutboxDbHelper.COL_NEXT_ATTEMPT, System.currentTimeMillis() + delay);
+        dbHelper.getWritableDatabase().update(OutboxDbHelper.TABLE_NAME, values,
+            OutboxDbHelper.COL_ID + " = ?", new String[]{String.valueOf(operation.id)});
+        Log.w(TAG, "Failed " + operation + ", retrying in " + delay + "ms");
+    }
+
+    /**
+     * Schedule a drain job for the earliest pending retry; the job survives process death
+     */
+    private void scheduleNextDrain() {
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+            "SELECT MIN(" + OutboxDbHelper.COL_NEXT_ATTEMPT + ") FROM " + OutboxDbHelper.TABLE_NAME, null);
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return;
+            }
+            long delay = Math.max(0, cursor.getLong(0) - System.currentTimeMillis());
+            SyncJobService.scheduleOutboxDrain(context, delay, hasPendingClear());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void waitForNetwork() {
+        if (!waitingForNetwork.compareAndSet(false, true)) {
+            return;
+        }
+        Log.d(TAG, "Offline, draining outbox on reconnect");
+        // In-process callback for the common case, job in case the process dies first
+        SyncJobService.scheduleOutboxDrain(context, 0, hasPendingClear());
+        ConnectivityMonitor.getInstance(context).runWhenOnline(() -> {
+            waitingForNetwork.set(false);
+            drain();
+        });
+    }
+
+    static class OutboxDbHelper extends SQLiteOpenHelper {
+        private static final String DATABASE_NAME = "fcm_outbox.db";
+        private static final int DATABASE_VERSION = 1;
+
+        public static final String TABLE_NAME = "fcm_outbox";
+        public static final String COL_ID = "id";
+        public static final String COL_EMAIL = "email";
+        public static final String COL_OP = "op";
+        public static final String COL_TOKEN = "token";
+        public static final String COL_BARANGAY = "barangay";
+        public static final String COL_ATTEMPTS = "attempts";
+        public static final String COL_NEXT_ATTEMPT = "next_attempt_at";
+        public static final String COL_CREATED_AT = "created_at";
+
+        OutboxDbHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_NAME + " ("
+                + COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COL_EMAIL + " TEXT NOT NULL UNIQUE, "
+                + COL_OP + " TEXT NOT NULL, "
+                + COL_TOKEN + " TEXT, "
+                + COL_BARANGAY + " TEXT, "
+                + COL_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_NEXT_ATTEMPT + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_CREATED_AT + " INTEGER NOT NULL)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+            onCreate(db);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.nutrisaur11;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Hedged execution for idempotent, latency-critical reads: if the first call hasn't answered
+ * by the endpoint's p95 latency, an identical second call goes out and the first response wins
+ * (the other call is cancelled). No hedge is sent while the endpoint's circuit isn't closed or
+ * before there are enough latency samples to know its p95. The hedge isn't charged to the
+ * NetworkGovernor budget again: the primary already paid for the logical call.
+ */
+public final class HedgedCall {
+    private static final String TAG = "HedgedCall";
+
+    private static final int MIN_SAMPLES = 20;
+    private static final long MIN_HEDGE_DELAY = 250;
+    private static final long MAX_HEDGE_DELAY = TimeUnit.SECONDS.toMillis(3);
+
+    private HedgedCall() {
+    }
+
+    private static final class Outcome {
+        final Call call;
+        final Response response;
+        final IOException error;
+
+        Outcome(Call call, Response response, IOException error) {
+            this.call = call;
+            this.response = response;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Hedge delay for an endpoint, or 0 to send a single call
+     */
+    static long hedgeDelay(String endpoint) {
+        if (CircuitBreaker.forEndpoint(endpoint).getState() != CircuitBreaker.State.CLOSED) {
+            return 0;
+        }
+        MetricsRegistry.LatencyHistogram latency =
+            MetricsRegistry.getInstance().histogram(MetricsRegistry.HTTP_LATENCY_PREFIX + endpoint);
+        if (latency.getCount() < MIN_SAMPLES) {
+            return 0;
+        }
+        return Math.max(MIN_HEDGE_DELAY, Math.min(latency.percentile(95), MAX_HEDGE_DELAY));
+    }
+
+    /**
+     * Execute the request (blocking), hedging it after the endpoint's p95 latency
+     */
+    public static Response execute(OkHttpClient client, Request request) throws IOException {
+        long delay = hedgeDelay(CircuitBreaker.endpointOf(request));
+        if (delay <= 0) {
+            return client.newCall(request).execute();
+        }
+
+        BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        AtomicBoolean settled = new AtomicBoolean(false);
+        AtomicBoolean abandoned = new AtomicBoolean(false);
+        Call primary = client.newCall(request);
+        Call hedge = null;
+        primary.enqueue(collect(outcomes, settled, abandoned));
+
+        try {
+            int outstanding = 1;
+            Outcome outcome = outcomes.poll(delay, TimeUnit.MILLISECONDS);
+            if (outcome == null) {
+                Log.d(TAG, "No response after " + delay + "ms, hedging " + CircuitBreaker.endpointOf(request));
+                MetricsRegistry.getInstance().increment(MetricsRegistry.HTTP_HEDGE_SENT);
+                hedge = client.newCall(request.newBuilder()
+                    .tag(NetworkGovernor.AlreadyCharged.class, NetworkGovernor.AlreadyCharged.INSTANCE)
+                    .build());
+                hedge.enqueue(collect(outcomes, settled, abandoned));
+                outstanding = 2;
+                outcome = outcomes.take();
+            }
+
+            while (true) {
+                if (outcome.response != null) {
+                    if (outcome.call == hedge) {
+                        MetricsRegistry.getInstance().increment(MetricsRegistry.HTTP_HEDGE_WON);
+                    }
+                    cancelOthers(outcome.call, primary, hedge);
+                    return outcome.response;
+                }
+                if (--outstanding == 0) {
+                    throw outcome.error;
+                }
+                outcome = outcomes.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandoned.set(true);
+            cancelOthers(null, primary, hedge);
+            // A response that already won but wasn't taken; one arriving later is closed by its callback
+            closeQueued(outcomes);
+            throw new InterruptedIOException("Interrupted waiting for " + request.url());
+        }
+    }
+
+    private static Callback collect(BlockingQueue<Outcome> outcomes, AtomicBoolean settled, AtomicBoolean abandoned) {
+        return new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                outcomes.offer(new Outcome(call, null, e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                if (settled.compareAndSet(false, true)) {
+                    outcomes.offer(new Outcome(call, response, null));
+                    if (abandoned.get()) {
+                        // The caller was interrupted and may have drained the queue before this offer
+                        closeQueued(outcomes);
+                    }
+                } else {
+                    // The other call already won
+                    response.close();
+                }
+            }
+        };
+    }
+
+    private static void closeQueued(BlockingQueue<Outcome> outcomes) {
+        Outcome outcome;
+        while ((outcome = outcomes.poll()) != null) {
+            if (outcome.response != null) {
+                outcome.response.close();
+            }
+        }
+    }
+
+    private static void cancelOthers(Call winner, Call primary, Call hedge) {
+        if (primary != winner) {
+            primary.cancel();
+        }
+        if (hedge != null && hedge != winner) {
+            hedge.cancel();
+        }
+    }
+}
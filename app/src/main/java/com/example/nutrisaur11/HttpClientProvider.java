@@ -0,0 +1,223 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.Dns;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * One OkHttp stack for the whole process. Every caller shares the same connection pool,
+ * dispatcher, TLS session cache and DNS cache, so a check after the first request reuses
+ * the open (HTTP/2 where the server offers it) connection instead of a new handshake.
+ * Callers that need other timeouts use newBuilder() on the shared client, which keeps the
+ * pool, dispatcher, the NetworkGovernor budget and the per-endpoint CircuitBreaker.
+ * Cookies are kept in memory so the PHP session set by a login through this client is
+ * presented when the first session lease is requested.
+ */
+public final class HttpClientProvider {
+    private static final String TAG = "HttpClientProvider";
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long DNS_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final SessionCookieJar cookieJar = new SessionCookieJar();
+
+    private static final OkHttpClient sharedClient = new OkHttpClient.Builder()
+        .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+        .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+        .dns(new CachingDns(DNS_TTL))
+        .connectTimeout(30, TimeUnit.SECONDS)
+        .readTimeout(30, TimeUnit.SECONDS)
+        .writeTimeout(30, TimeUnit.SECONDS)
+        .retryOnConnectionFailure(true)
+        .cookieJar(cookieJar)
+        .addInterceptor(new NetworkGovernor.GovernorInterceptor())
+        .addInterceptor(new CircuitBreaker.BreakerInterceptor())
+        .eventListenerFactory(RequestTimingRecorder.getInstance().factory())
+        .build();
+
+    // Short-timeout variant for session checks; shares the pool with sharedClient
+    private static final OkHttpClient fastClient = sharedClient.newBuilder()
+        .connectTimeout(5, TimeUnit.SECONDS)
+        .readTimeout(5, TimeUnit.SECONDS)
+        .writeTimeout(5, TimeUnit.SECONDS)
+        .build();
+
+    private static final AtomicBoolean warmedUp = new AtomicBoolean(false);
+
+    private HttpClientProvider() {
+    }
+
+    /**
+     * Shared client for general API calls (FCM registration, DatabaseAPI)
+     */
+    public static OkHttpClient getClient() {
+        return sharedClient;
+    }
+
+    /**
+     * Shared client with 5 s timeouts for latency-sensitive session checks
+     */
+    public static OkHttpClient getFastClient() {
+        return fastClient;
+    }
+
+    /**
+     * Open a connection to the API host ahead of the first real request (DNS, TCP and TLS),
+     * so the first session validation finds a warm pooled connection. Runs once per process,
+     * when the network is available.
+     */
+    public static void warmUp(Context context) {
+        if (!warmedUp.compareAndSet(false, true)) {
+            return;
+        }
+
+        ConnectivityMonitor.getInstance(context).runWhenOnline(() -> {
+            long startTime = System.currentTimeMillis();
+            Request request = new Request.Builder()
+                .url(Constants.API_BASE_URL)
+                .head()
+                .tag(NetworkGovernor.Priority.class, NetworkGovernor.Priority.LOW)
+                .build();
+
+            sharedClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    // Allow a later attempt (e.g. after the next reconnect)
+                    warmedUp.set(false);
+                    Log.w(TAG, "Connection warm-up failed: " + e.getMessage());
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    long duration = System.currentTimeMillis() - startTime;
+                    response.close();
+                    MetricsRegistry.getInstance().recordLatency(MetricsRegistry.HTTP_WARMUP, duration);
+                    Log.d(TAG, "Connection warmed up in " + duration + "ms (" + response.protocol() + ")");
+                }
+            });
+        });
+    }
+
+    /**
+     * Forget the server session cookies (call on logout)
+     */
+    public static void clearCookies() {
+        cookieJar.clear();
+    }
+
+    /**
+     * Number of pooled connections, for diagnostics
+     */
+    public static int getConnectionCount() {
+        return sharedClient.connectionPool().connectionCount();
+    }
+
+    /**
+     * In-memory cookie store; replaces cookies by name, domain and path and drops expired ones
+     */
+    static final class SessionCookieJar implements CookieJar {
+        private final List<Cookie> cookies = new ArrayList<>();
+
+        @Override
+        public synchronized void saveFromResponse(HttpUrl url, List<Cookie> received) {
+            for (Cookie cookie : received) {
+                Iterator<Cookie> iterator = cookies.iterator();
+                while (iterator.hasNext()) {
+                    Cookie stored = iterator.next();
+                    if (stored.name().equals(cookie.name()) && stored.domain().equals(cookie.domain())
+                            && stored.path().equals(cookie.path())) {
+                        iterator.remove();
+                    }
+                }
+                cookies.add(cookie);
+            }
+        }
+
+        @Override
+        public synchronized List<Cookie> loadForRequest(HttpUrl url) {
+            long now = System.currentTimeMillis();
+            List<Cookie> matching = new ArrayList<>();
+            Iterator<Cookie> iterator = cookies.iterator();
+            while (iterator.hasNext()) {
+                Cookie cookie = iterator.next();
+                if (cookie.expiresAt() <= now) {
+                    iterator.remove();
+                } else if (cookie.matches(url)) {
+                    matching.add(cookie);
+                }
+            }
+            return matching;
+        }
+
+        synchronized void clear() {
+            cookies.clear();
+        }
+    }
+
+    /**
+     * Caches successful lookups for a fixed TTL on top of the system resolver
+     */
+    static final class CachingDns implements Dns {
+        private static final class Entry {
+            final List<InetAddress> addresses;
+            final long expiresAt;
+
+            Entry(List<InetAddress> addresses, long expiresAt) {
+                this.addresses = addresses;
+                this.expiresAt = expiresAt;
+            }
+        }
+
+        private final long ttlMillis;
+        private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+
+        CachingDns(long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+        }
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            long now = System.currentTimeMillis();
+            Entry entry = cache.get(hostname);
+            if (entry != null && now < entry.expiresAt) {
+                return entry.addresses;
+            }
+
+            try {
+                List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+                cache.put(hostname, new Entry(addresses, now + ttlMillis));
+                return addresses;
+            } catch (UnknownHostException e) {
+                // A stale answer beats no answer on a flaky resolver; the connect will tell
+                if (entry != null) {
+                    Log.w(TAG, "DNS lookup failed for " + hostname + ", using stale entry");
+                    return entry.addresses;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wipes a user's local stores in parallel with a fixed deadline.
+ * The caller waits at most the deadline; slower steps keep running in the background and
+ * are reported as pending. Remote cleanup (FCM token) is handed to FCMTokenManager's durable
+ * queue instead of being waited on.
+ */
+public class LogoutPurgePipeline {
+    private static final String TAG = "LogoutPurgePipeline";
+    private static final int PURGE_THREADS = 4;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService purgeExecutor = Executors.newFixedThreadPool(PURGE_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "logout-purge-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * One purge step (a local store to wipe)
+     */
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    /**
+     * Per-step timings for one logout
+     */
+    public static class Report {
+        private final Map<String, Long> stepTimings;
+        private final List<String> pendingSteps;
+        private final long totalMillis;
+
+        Report(Map<String, Long> stepTimings, List<String> pendingSteps, long totalMillis) {
+            this.stepTimings = stepTimings;
+            this.pendingSteps = pendingSteps;
+            this.totalMillis = totalMillis;
+        }
+
+        /**
+         * Step name to duration in ms, for steps that finished before the deadline (-1 if it failed)
+         */
+        public Map<String, Long> getStepTimings() {
+            return stepTimings;
+        }
+
+        /**
+         * Steps still running when the deadline passed
+         */
+        public List<String> getPendingSteps() {
+            return pendingSteps;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "total=" + totalMillis + "ms steps=" + stepTimings + " pending=" + pendingSteps;
+        }
+    }
+
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+
+    /**
+     * Build the standard pipeline for a user's local data and queue the remote cleanup
+     */
+    public static LogoutPurgePipeline forUser(Context context, String email) {
+        LogoutPurgePipeline pipeline = new LogoutPurgePipeline();
+        // Stores kept in the user's partition (session state, probe versions, cached selects)
+        // go with a single rename. AddedFoodManager, CalorieTracker, GeminiCacheManager,
+        // FavoritesManager and CommunityUserManager still keep their data in shared locations
+        // and clear it themselves; each can drop its step once it opens its files through
+        // UserPartition.current()
+        pipeline.addStep("UserPartition", () -> UserPartition.drop(context, email));
+        pipeline.addStep("AddedFoodManager", () -> AddedFoodManager.clearUserData(context, email));
+        pipeline.addStep("CalorieTracker", () -> CalorieTracker.clearUserData(context, email));
+        pipeline.addStep("GeminiCacheManager", () -> GeminiCacheManager.clearUserData(context, email));
+        pipeline.addStep("FavoritesManager", () -> FavoritesManager.clearUserData(context, email));
+        pipeline.addStep("CommunityUserManager", () -> new CommunityUserManager(context).clearUserCache(email));
+        pipeline.addStep("FCMTokenManager", () -> FCMTokenManager.getInstance(context).clearFCMTokenForUserAsync(email));
+        return pipeline;
+    }
+
+    public LogoutPurgePipeline addStep(String name, Step step) {
+        steps.put(name, step);
+        return this;
+    }
+
+    /**
+     * Run all steps in parallel and wait up to the deadline
+     */
+    public Report run(long deadlineMillis) {
+        long startTime = System.currentTimeMillis();
+        Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+        CountDownLatch latch = new CountDownLatch(steps.size());
+
+        for (Map.Entry<String, Step> entry : steps.entrySet()) {
+            String name = entry.getKey();
+            Step step = entry.getValue();
+            purgeExecutor.execute(() -> {
+                long stepStart = System.currentTimeMillis();
+                try {
+                    step.run();
+                    long duration = System.currentTimeMillis() - stepStart;
+                    timings.put(name, duration);
+                    Log.d(TAG, name + " purged in " + duration + "ms");
+                } catch (Exception e) {
+                    timings.put(name, -1L);
+                    Log.e(TAG, "Error purging " + name + ": " + e.getMessage());
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        try {
+            if (!latch.await(deadlineMillis, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Purge deadline of " + deadlineMillis + "ms reached, continuing in background");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, Long> finished;
+        synchronized (timings) {
+            finished = new LinkedHashMap<>(timings);
+        }
+        List<String> pending = new ArrayList<>();
+        for (String name : steps.keySet()) {
+            if (!finished.containsKey(name)) {
+                pending.add(name);
+            }
+        }
+
+        Report report = new Report(finished, pending, System.currentTimeMillis() - startTime);
+        Log.d(TAG, "Logout purge: " + report);
+        return report;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide, low-overhead metrics for SessionManager and FCMTokenManager.
+ * Counters and histograms are lock-free on the record path; snapshot() / exportJson()
+ * give support a JSON dump without attaching a debugger.
+ */
+public final class MetricsRegistry {
+    private static final String TAG = "MetricsRegistry";
+    private static final String EXPORT_FILE = "nutrisaur_metrics.json";
+
+    // Histogram names
+    public static final String SESSION_VALIDATION = "session.validation_ms";
+    public static final String TOKEN_REGISTRATION = "fcm.registration_ms";
+    public static final String TOKEN_CLEAR = "fcm.clear_ms";
+    public static final String HTTP_WARMUP = "http.warmup_ms";
+    public static final String HTTP_LATENCY_PREFIX = "http.latency_ms."; // + endpoint (action)
+    public static final String HTTP_PHASE_PREFIX = "http.phase."; // + endpoint + "." + phase + "_ms"
+    public static final String API_BATCH_SAVED_PER_TRANSITION = "api.batch.saved_per_transition";
+    public static final String STORAGE_PARTITION_DROP = "storage.partition_drop_ms";
+    public static final String STORAGE_PARTITION_UNLINK = "storage.partition_unlink_ms";
+
+    // Counter names
+    public static final String SESSION_CACHE_HIT = "session.cache_hit";
+    public static final String SESSION_CACHE_MISS = "session.cache_miss";
+    public static final String SESSION_COALESCED = "session.coalesced";
+    public static final String SESSION_LEASE_HIT = "session.lease_hit";
+    public static final String SESSION_NETWORK_CHECK = "session.network_check";
+    public static final String TOKEN_REGISTRATION_FAILURE = "fcm.registration_failure";
+    public static final String TOKEN_CLEAR_FAILURE = "fcm.clear_failure";
+    public static final String TOKEN_REGISTRATION_SKIPPED = "fcm.registration_skipped";
+    public static final String TOKEN_REGISTRATION_ATTEMPT = "fcm.registration_attempt";
+    public static final String TOKEN_REGISTRATION_JOINED = "fcm.registration_joined";
+    public static final String TOKEN_LOCATION_UPDATE = "fcm.location_update";
+    public static final String TOKEN_LOCATION_DEBOUNCED = "fcm.location_debounced";
+    public static final String TOKEN_SYNC_UNCHANGED = "fcm.sync_unchanged";
+
+    // Per-action request + response body bytes as sent and received (compressed), e.g. "api.bytes.update";
+    // recorded by RequestTimingRecorder when the call ends
+    public static final String API_BYTES_PREFIX = "api.bytes.";
+    public static final String API_COMPACT_RESPONSE = "api.compact_response";
+    public static final String API_BATCH_SENT = "api.batch.sent";
+    public static final String CIRCUIT_OPENED = "http.circuit_opened";
+    public static final String CIRCUIT_REJECTED = "http.circuit_rejected";
+    public static final String HTTP_HEDGE_SENT = "http.hedge_sent";
+    public static final String HTTP_HEDGE_WON = "http.hedge_won";
+    public static final String NET_BUDGET_PREFIX = "net.budget."; // + class + ".allowed" / ".rejected"
+    public static final String API_BATCH_SAVED = "api.batch.saved_round_trips";
+    public static final String SELECT_CACHE_HIT = "api.select_cache.hit";
+    public static final String SELECT_CACHE_REVALIDATED = "api.select_cache.revalidated";
+    public static final String SELECT_CACHE_MISS = "api.select_cache.miss";
+
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    private final long startedAt = System.currentTimeMillis();
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    public void increment(String name) {
+        counter(name).incrementAndGet();
+    }
+
+    public void add(String name, long delta) {
+        counter(name).addAndGet(delta);
+    }
+
+    public long getCount(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter != null ? counter.get() : 0;
+    }
+
+    public void recordLatency(String name, long millis) {
+        histogram(name).record(millis);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histograms.putIfAbsent(name, new LatencyHistogram());
+            histogram = histograms.get(name);
+        }
+        return histogram;
+    }
+
+    AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            counters.putIfAbsent(name, new AtomicLong());
+            counter = counters.get(name);
+        }
+        return counter;
+    }
+
+    /**
+     * Point-in-time view of all counters and histograms, plus derived rates
+     */
+    public JSONObject snapshot() {
+        JSONObject json = new JSONObject();
+        try {
+            long uptime = System.currentTimeMillis() - startedAt;
+            json.put("uptime_ms", uptime);
+
+            JSONObject counterJson = new JSONObject();
+            for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+                counterJson.put(entry.getKey(), entry.getValue().get());
+            }
+            json.put("counters", counterJson);
+
+            JSONObject histogramJson = new JSONObject();
+            for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+                histogramJson.put(entry.getKey(), entry.getValue().toJson());
+            }
+            json.put("histograms", histogramJson);
+
+            long hits = getCount(SESSION_CACHE_HIT);
+            long misses = getCount(SESSION_CACHE_MISS);
+            json.put("session.cache_hit_ratio", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+            json.put("session.network_checks_per_hour",
+                uptime > 0 ? getCount(SESSION_NETWORK_CHECK) * 3600000.0 / uptime : 0);
+            long fcmBytes = getCount(API_BYTES_PREFIX + "sync_fcm_token") + getCount(API_BYTES_PREFIX + "update");
+            json.put("fcm.bytes_per_day", uptime > 0 ? fcmBytes * 86400000.0 / uptime : 0);
+            long selectServed = getCount(SELECT_CACHE_HIT) + getCount(SELECT_CACHE_REVALIDATED);
+            long selectTotal = selectServed + getCount(SELECT_CACHE_MISS);
+            json.put("api.select_cache.hit_ratio", selectTotal > 0 ? (double) selectServed / selectTotal : 0);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error building metrics snapshot: " + e.getMessage());
+        }
+        return json;
+    }
+
+    public String exportJson() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Write the snapshot to the app's files dir so it can be attached to a support request
+     */
+    public File exportToFile(Context context) {
+        File file = new File(context.getFilesDir(), EXPORT_FILE);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(exportJson().getBytes(Charset.forName("UTF-8")));
+            Log.d(TAG, "Metrics exported to " + file.getAbsolutePath());
+        } catch (Exception e) {
+            Log.e(TAG, "Error exporting metrics: " + e.getMessage());
+        }
+        return file;
+    }
+
+    /**
+     * Log-linear latency histogram (HDR-style): exact below 16 ms, then 8 sub-buckets per
+     * power of two, so every bucket is within 12.5% of its values. Recording is one atomic add.
+     */
+    public static final class LatencyHistogram {
+        private static final int LINEAR_LIMIT = 16;
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_EXPONENT = 30; // ~12 days in ms, plenty for latencies
+        private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - 3) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long millis) {
+            long value = Math.max(0, millis);
+            buckets.incrementAndGet(indexFor(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+
+            long currentMax;
+            while (value > (currentMax = max.get())) {
+                if (max.compareAndSet(currentMax, value)) {
+                    break;
+                }
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Value at the given percentile (0-100), accurate to the bucket width
+         */
+        public long percentile(double percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return Math.min(upperBoundFor(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        public JSONObject toJson() throws JSONException {
+            long total = count.get();
+            JSONObject json = new JSONObject();
+            json.put("count", total);
+            json.put("mean", total > 0 ? sum.get() / total : 0);
+            json.put("p50", percentile(50));
+            json.put("p90", percentile(90));
+            json.put("p99", percentile(99));
+            json.put("max", max.get());
+            return json;
+        }
+
+        static int indexFor(long value) {
+            if (value < LINEAR_LIMIT) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent >= MAX_EXPONENT + 1) {
+                return BUCKET_COUNT - 1;
+            }
+            int subBucket = (int) (value >> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+            return LINEAR_LIMIT + (exponent - 4) * SUB_BUCKETS + subBucket;
+        }
+
+        static long upperBoundFor(int index) {
+            if (index < LINEAR_LIMIT) {
+                return index;
+            }
+            int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + 4;
+            int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.nutrisaur11;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Device-side request budget for the shared HTTP stack. Every call belongs to a class
+ * (session, token, data), set by its sender with Request.Builder.tag(NetworkGovernor.CallClass.class, ...)
+ * (untagged calls are DATA), and takes one token from that class's bucket. When a bucket runs low, LOW priority calls are refused with BudgetExceededException
+ * (an IOException, so callers treat it like a network error and their existing retry
+ * or backoff defers the work; session checks report it as THROTTLED, never as a valid
+ * session) while a reserve is kept for HIGH priority, user-facing calls.
+ *
+ * A request can set its priority with Request.Builder.tag(NetworkGovernor.Priority.class, ...);
+ * otherwise the class default applies. A duplicate of a call that was already charged (a
+ * HedgedCall hedge) is tagged with AlreadyCharged, so each logical call takes one token.
+ */
+public final class NetworkGovernor {
+    private static final String TAG = "NetworkGovernor";
+
+    /**
+     * Budgets per call class. SESSION covers user-facing checks (screen resumes, pushed
+     * invalidations) and lease renewal. The periodic safety-net check asks
+     * millisUntilAvailable() at LOW priority first, so a schedule faster than the refill rate
+     * (the old 3-second check needed 1,200 to 2,400 calls an hour) is stretched to that rate instead
+     * of draining the bucket, and the HIGH reserve stays free for the user-facing checks.
+     */
+    public enum CallClass {
+        SESSION(20, 120, Priority.HIGH), // probes and lease renewal
+        TOKEN(5, 12, Priority.LOW),      // FCM token sync and clears
+        DATA(30, 300, Priority.HIGH);    // everything else (user data, selects, batches)
+
+        final int capacity;
+        final int perHour;
+        final Priority defaultPriority;
+
+        CallClass(int capacity, int perHour, Priority defaultPriority) {
+            this.capacity = capacity;
+            this.perHour = perHour;
+            this.defaultPriority = defaultPriority;
+        }
+    }
+
+    public enum Priority {
+        HIGH, // may use the reserve
+        LOW   // refused once the bucket is down to the reserve
+    }
+
+    /**
+     * Thrown instead of sending a call that is over its class budget
+     */
+    public static final class BudgetExceededException extends IOException {
+        BudgetExceededException(CallClass callClass) {
+            super("Network budget exceeded for " + callClass);
+        }
+    }
+
+    /**
+     * Request tag for a second attempt at a call whose token was already taken
+     */
+    public static final class AlreadyCharged {
+        public static final AlreadyCharged INSTANCE = new AlreadyCharged();
+
+        private AlreadyCharged() {
+        }
+    }
+
+    // Share of each bucket that only HIGH priority calls may use
+    private static final double HIGH_PRIORITY_RESERVE = 0.2;
+
+    private static final NetworkGovernor instance = new NetworkGovernor(System::currentTimeMillis);
+
+    private final EnumMap<CallClass, Bucket> buckets = new EnumMap<>(CallClass.class);
+
+    NetworkGovernor(ValidationScheduler.Clock clock) {
+        for (CallClass callClass : CallClass.values()) {
+            buckets.put(callClass, new Bucket(callClass, clock));
+        }
+    }
+
+    public static NetworkGovernor getInstance() {
+        return instance;
+    }
+
+    private static final class Bucket {
+        final CallClass callClass;
+        final ValidationScheduler.Clock clock;
+        final double refillPerMilli;
+        final double reserve;
+        double tokens;
+        long lastRefill;
+        long allowed;
+        long rejected;
+
+        Bucket(CallClass callClass, ValidationScheduler.Clock clock) {
+            this.callClass = callClass;
+            this.clock = clock;
+            this.refillPerMilli = callClass.perHour / (double) TimeUnit.HOURS.toMillis(1);
+            this.reserve = callClass.capacity * HIGH_PRIORITY_RESERVE;
+            this.tokens = callClass.capacity;
+            this.lastRefill = clock.now();
+        }
+
+        private void refill() {
+            long now = clock.now();
+            tokens = Math.min(callClass.capacity, tokens + (now - lastRefill) * refillPerMilli);
+            lastRefill = now;
+        }
+
+        private double floor(Priority priority) {
+            return priority == Priority.LOW ? reserve : 0;
+        }
+
+        synchronized boolean tryTake(Priority priority) {
+            refill();
+            if (tokens - 1 < floor(priority)) {
+                rejected++;
+                return false;
+            }
+            tokens -= 1;
+            allowed++;
+            return true;
+        }
+
+        synchronized long millisUntilAvailable(Priority priority) {
+            refill();
+            double missing = floor(priority) + 1 - tokens;
+            return missing <= 0 ? 0 : (long) Math.ceil(missing / refillPerMilli);
+        }
+    }
+
+    /**
+     * Class tagged on the request by its sender; the action name is not used, since token
+     * writes also go out as plain updates and inside batches
+     */
+    static CallClass classify(Request request) {
+        CallClass tagged = request.tag(CallClass.class);
+        return tagged != null ? tagged : CallClass.DATA;
+    }
+
+    /**
+     * Take a token for the call or refuse it
+     */
+    void acquire(CallClass callClass, Priority priority) throws BudgetExceededException {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        if (!buckets.get(callClass).tryTake(priority)) {
+            metrics.increment(MetricsRegistry.NET_BUDGET_PREFIX + callClass.name().toLowerCase(Locale.US) + ".rejected");
+            Log.w(TAG, "Over budget, refusing " + priority + " " + callClass + " call");
+            throw new BudgetExceededException(callClass);
+        }
+        metrics.increment(MetricsRegistry.NET_BUDGET_PREFIX + callClass.name().toLowerCase(Locale.US) + ".allowed");
+    }
+
+    /**
+     * Milliseconds until a call of this class and priority would be let through, 0 if it would
+     * be now. Background work (the safety-net session check) waits this long instead of
+     * sending a call that would be refused.
+     */
+    public long millisUntilAvailable(CallClass callClass, Priority priority) {
+        return buckets.get(callClass).millisUntilAvailable(priority);
+    }
+
+    /**
+     * Calls let through for a class since process start
+     */
+    public long getAllowedCount(CallClass callClass) {
+        Bucket bucket = buckets.get(callClass);
+        synchronized (bucket) {
+            return bucket.allowed;
+        }
+    }
+
+    /**
+     * Calls refused for a class since process start
+     */
+    public long getRejectedCount(CallClass callClass) {
+        Bucket bucket = buckets.get(callClass);
+        synchronized (bucket) {
+            return bucket.rejected;
+        }
+    }
+
+    /**
+     * Tokens left in a class's bucket as of its last call (not refilled by this read)
+     */
+    public double getRemaining(CallClass callClass) {
+        Bucket bucket = buckets.get(callClass);
+        synchronized (bucket) {
+            return bucket.tokens;
+        }
+    }
+
+    /**
+     * Application interceptor that charges every call to its class budget
+     */
+    static final class GovernorInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            if (request.tag(AlreadyCharged.class) != null) {
+                return chain.proceed(request);
+            }
+            CallClass callClass = classify(request);
+            Priority priority = request.tag(Priority.class);
+            getInstance().acquire(callClass, priority != null ? priority : callClass.defaultPriority);
+            return chain.proceed(request);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+/**
+ * Per-request phase timings (DNS, connect, TLS, time to first byte, body) from OkHttp's
+ * EventListener. Each call's listener keeps its timestamps in primitive fields; when the call
+ * ends they are copied into a preallocated ring buffer and into per-endpoint histograms
+ * ("http.phase.<action>.<phase>_ms" in MetricsRegistry), so recording allocates nothing per event.
+ * The request and response body bytes OkHttp reports are added to "api.bytes.<action>"; unlike
+ * Content-Length they are known for chunked and gzip bodies, and count what was actually transferred.
+ *
+ * exportJson() / exportToFile() give per-endpoint percentiles and the recent slow requests,
+ * for attaching to a bug report about slow logins.
+ */
+public final class RequestTimingRecorder {
+    private static final String TAG = "RequestTimingRecorder";
+    private static final String EXPORT_FILE = "nutrisaur_request_timings.json";
+
+    static final int PHASE_DNS = 0;
+    static final int PHASE_CONNECT = 1; // TCP only, TLS excluded
+    static final int PHASE_TLS = 2;
+    static final int PHASE_TTFB = 3;    // request sent until response headers (includes PHP time)
+    static final int PHASE_BODY = 4;
+    static final int PHASE_TOTAL = 5;
+    private static final int PHASES = 6;
+    private static final String[] PHASE_NAMES = {"dns", "connect", "tls", "ttfb", "body", "total"};
+
+    private static final int RING_SIZE = 128;
+    private static final int MAX_ENDPOINTS = 32;
+    private static final long SLOW_REQUEST_MILLIS = 2000;
+
+    private static final RequestTimingRecorder instance = new RequestTimingRecorder();
+
+    // Ring buffer: slot i holds phases at [i * PHASES, (i + 1) * PHASES)
+    private final long[] ringPhases = new long[RING_SIZE * PHASES];
+    private final int[] ringEndpoint = new int[RING_SIZE];
+    private final long[] ringStartedAt = new long[RING_SIZE];
+    private final boolean[] ringFailed = new boolean[RING_SIZE];
+    private final boolean[] ringReusedConnection = new boolean[RING_SIZE];
+    private int ringNext;
+    private int ringSize;
+
+    private final String[] endpointNames = new String[MAX_ENDPOINTS];
+    private final MetricsRegistry.LatencyHistogram[][] endpointPhases = new MetricsRegistry.LatencyHistogram[MAX_ENDPOINTS][];
+    private final AtomicLong[] endpointBytes = new AtomicLong[MAX_ENDPOINTS];
+    private volatile int endpointCount;
+
+    private RequestTimingRecorder() {
+    }
+
+    public static RequestTimingRecorder getInstance() {
+        return instance;
+    }
+
+    /**
+     * Listener factory for OkHttpClient.Builder.eventListenerFactory()
+     */
+    public EventListener.Factory factory() {
+        return call -> new CallTimer(endpointId(call.request()));
+    }
+
+    /**
+     * Small integer id per endpoint; registered once, then found without allocating
+     */
+    private int endpointId(Request request) {
+        String action = request.url().queryParameter("action");
+        String name = action != null ? action : request.url().encodedPath();
+
+        int count = endpointCount;
+        for (int i = 0; i < count; i++) {
+            if (endpointNames[i].equals(name)) {
+                return i;
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < endpointCount; i++) {
+                if (endpointNames[i].equals(name)) {
+                    return i;
+                }
+            }
+            if (endpointCount == MAX_ENDPOINTS) {
+                return MAX_ENDPOINTS - 1; // overflow shares the last slot
+            }
+            int id = endpointCount;
+            MetricsRegistry.LatencyHistogram[] phases = new MetricsRegistry.LatencyHistogram[PHASES];
+            for (int phase = 0; phase < PHASES; phase++) {
+                phases[phase] = MetricsRegistry.getInstance().histogram(
+                    MetricsRegistry.HTTP_PHASE_PREFIX + name + "." + PHASE_NAMES[phase] + "_ms");
+            }
+            endpointNames[id] = name;
+            endpointPhases[id] = phases;
+            endpointBytes[id] = MetricsRegistry.getInstance().counter(MetricsRegistry.API_BYTES_PREFIX + name);
+            endpointCount = id + 1;
+            return id;
+        }
+    }
+
+    private void record(int endpoint, long startedAt, boolean failed, boolean reusedConnection,
+                        long dns, long connect, long tls, long ttfb, long body, long total, long bytes) {
+        endpointBytes[endpoint].addAndGet(bytes);
+        if (!failed) {
+            MetricsRegistry.LatencyHistogram[] phases = endpointPhases[endpoint];
+            phases[PHASE_DNS].record(dns);
+            phases[PHASE_CONNECT].record(connect);
+            phases[PHASE_TLS].record(tls);
+            phases[PHASE_TTFB].record(ttfb);
+            phases[PHASE_BODY].record(body);
+            phases[PHASE_TOTAL].record(total);
+        }
+
+        synchronized (ringPhases) {
+            int slot = ringNext;
+            int base = slot * PHASES;
+            ringPhases[base + PHASE_DNS] = dns;
+            ringPhases[base + PHASE_CONNECT] = connect;
+            ringPhases[base + PHASE_TLS] = tls;
+            ringPhases[base + PHASE_TTFB] = ttfb;
+            ringPhases[base + PHASE_BODY] = body;
+            ringPhases[base + PHASE_TOTAL] = total;
+            ringEndpoint[slot] = endpoint;
+            ringStartedAt[slot] = startedAt;
+            ringFailed[slot] = failed;
+            ringReusedConnection[slot] = reusedConnection;
+            ringNext = (slot + 1) % RING_SIZE;
+            ringSize = Math.min(ringSize + 1, RING_SIZE);
+        }
+    }
+
+    /**
+     * Per-endpoint phase percentiles plus recent slow or failed requests (newest first)
+     */
+    public JSONObject exportJson() {
+        JSONObject json = new JSONObject();
+        try {
+            JSONObject endpoints = new JSONObject();
+            int count = endpointCount;
+            for (int i = 0; i < count; i++) {
+                JSONObject phases = new JSONObject();
+                for (int phase = 0; phase < PHASES; phase++) {
+                    phases.put(PHASE_NAMES[phase], endpointPhases[i][phase].toJson());
+                }
+                endpoints.put(endpointNames[i], phases);
+            }
+            json.put("endpoints", endpoints);
+
+            JSONArray slow = new JSONArray();
+            synchronized (ringPhases) {
+                for (int n = 0; n < ringSize; n++) {
+                    int slot = (ringNext - 1 - n + RING_SIZE) % RING_SIZE;
+                    int base = slot * PHASES;
+                    if (!ringFailed[slot] && ringPhases[base + PHASE_TOTAL] < SLOW_REQUEST_MILLIS) {
+                        continue;
+                    }
+                    JSONObject trace = new JSONObject();
+                    trace.put("endpoint", endpointNames[ringEndpoint[slot]]);
+                    trace.put("started_at", ringStartedAt[slot]);
+                    trace.put("failed", ringFailed[slot]);
+                    trace.put("reused_connection", ringReusedConnection[slot]);
+                    for (int phase = 0; phase < PHASES; phase++) {
+                        trace.put(PHASE_NAMES[phase] + "_ms", ringPhases[base + phase]);
+                    }
+                    slow.put(trace);
+                }
+            }
+            json.put("slow_requests", slow);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error building timing export: " + e.getMessage());
+        }
+        return json;
+    }
+
+    /**
+     * Write the export to the app's files dir so it can be attached to a bug report
+     */
+    public File exportToFile(Context context) {
+        File file = new File(context.getFilesDir(), EXPORT_FILE);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(exportJson().toString().getBytes(Charset.forName("UTF-8")));
+            Log.d(TAG, "Request timings exported to " + file.getAbsolutePath());
+        } catch (Exception e) {
+            Log.e(TAG, "Error exporting request timings: " + e.getMessage());
+        }
+        return file;
+    }
+
+    /**
+     * Timestamps for one call (System.nanoTime, 0 = event not seen). Retries and follow-ups
+     * keep the first start and the last end of each phase.
+     */
+    private final class CallTimer extends EventListener {
+        private final int endpoint;
+        private long startedAt;
+        private long callStart;
+        private long dnsStart;
+        private long dnsEnd;
+        private long connectStart;
+        private long connectEnd;
+        private long secureStart;
+        private long secureEnd;
+        private long requestStart;
+        private long responseHeadersStart;
+        private long responseBodyEnd;
+        private long requestBytes;
+        private long responseBytes;
+
+        CallTimer(int endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            startedAt = System.currentTimeMillis();
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            if (dnsStart == 0) {
+                dnsStart = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            dnsEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            if (connectStart == 0) {
+                connectStart = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            if (secureStart == 0) {
+                secureStart = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            secureEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            connectEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                                  Protocol protocol, IOException ioe) {
+            connectEnd = System.nanoTime();
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            if (requestStart == 0) {
+                requestStart = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            requestBytes += byteCount;
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            responseHeadersStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            responseBodyEnd = System.nanoTime();
+            responseBytes += byteCount;
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            finish(false);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            finish(true);
+        }
+
+        private void finish(boolean failed) {
+            long end = System.nanoTime();
+            long tls = span(secureStart, secureEnd);
+            record(endpoint, startedAt, failed, connectStart == 0,
+                span(dnsStart, dnsEnd),
+                Math.max(0, span(connectStart, connectEnd) - tls),
+                tls,
+                span(requestStart, responseHeadersStart),
+                span(responseHeadersStart, responseBodyEnd),
+                span(callStart, end),
+                requestBytes + responseBytes);
+        }
+    }
+
+    private static long span(long startNanos, long endNanos) {
+        return startNanos != 0 && endNanos >= startNanos ? (endNanos - startNanos) / 1_000_000 : 0;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.nutrisaur11;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of DatabaseAPI select replies, keyed by normalized table, columns, where
+ * clause and params. Within the table's TTL a reply is served without any request; after it,
+ * the stored ETag is sent in If-None-Match and a 304 renews the entry without a body.
+ * Writes through DatabaseApiClient or DatabaseApiBatcher invalidate the written table.
+ * Only DatabaseApiClient.select reads through the cache; selects queued on DatabaseApiBatcher
+ * bypass it and always go to the server.
+ */
+public final class SelectCache {
+    private static final int MAX_ENTRIES = 64;
+    private static final long DEFAULT_TTL = TimeUnit.SECONDS.toMillis(30);
+
+    static final class Entry {
+        final String table;
+        final byte[] body;
+        final boolean cbor;
+        final String etag;
+        volatile long freshUntil;
+
+        Entry(String table, byte[] body, boolean cbor, String etag, long freshUntil) {
+            this.table = table;
+            this.body = body;
+            this.cbor = cbor;
+            this.etag = etag;
+            this.freshUntil = freshUntil;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final ConcurrentHashMap<String, Long> tableTtls = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    SelectCache() {
+        // Account rows decide archive/delete logouts: never served locally, always revalidated
+        // with the ETag (a 304 still saves the body)
+        tableTtls.put("community_users", 0L);
+    }
+
+    /**
+     * TTL for one table; 0 turns off local serving (every read is revalidated)
+     */
+    public void setTtl(String table, long ttlMillis) {
+        tableTtls.put(normalize(table), Math.max(0, ttlMillis));
+    }
+
+    long ttlFor(String table) {
+        Long ttl = tableTtls.get(normalize(table));
+        return ttl != null ? ttl : DEFAULT_TTL;
+    }
+
+    static String key(String table, String[] columns, String where, Object[] params) {
+        StringBuilder key = new StringBuilder(normalize(table)).append('|');
+        for (String column : columns) {
+            key.append(normalize(column)).append(',');
+        }
+        // Only whitespace is folded in the where clause; it may hold case-sensitive literals
+        key.append('|').append(where != null ? where.trim().replaceAll("\\s+", " ") : "");
+        return key.append('|').append(Arrays.deepToString(params)).toString();
+    }
+
+    synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    /**
+     * Drop every entry for a table (call after writing to it)
+     */
+    public synchronized void invalidate(String table) {
+        String normalized = normalize(table);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().table.equals(normalized)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+        MetricsRegistry.getInstance().increment(MetricsRegistry.SELECT_CACHE_HIT);
+    }
+
+    void recordRevalidated() {
+        revalidated.incrementAndGet();
+        MetricsRegistry.getInstance().increment(MetricsRegistry.SELECT_CACHE_REVALIDATED);
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+        MetricsRegistry.getInstance().increment(MetricsRegistry.SELECT_CACHE_MISS);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getRevalidatedCount() {
+        return revalidated.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Share of reads answered without a response body (local hits plus 304 revalidations)
+     */
+    public double getHitRatio() {
+        long served = hits.get() + revalidated.get();
+        long total = served + misses.get();
+        return total > 0 ? (double) served / total : 0;
+    }
+
+    // Whitespace and case don't change a table or column name, so they shouldn't split the cache
+    static String normalize(String value) {
+        return value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+    }
+}
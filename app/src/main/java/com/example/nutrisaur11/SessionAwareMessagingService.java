@@ -0,0 +1,24 @@
+package com.example.nutrisaur11;
+
+import android.util.Log;
+
+import com.google.firebase.messaging.RemoteMessage;
+
+/**
+ * The app's FCM service (declared in AndroidManifest.xml for com.google.firebase.MESSAGING_EVENT).
+ * Session invalidation pushes (account archived or deleted, force logout) go to
+ * SessionInvalidationChannel; every other message is handled by MyFirebaseMessagingService
+ * as before.
+ */
+public class SessionAwareMessagingService extends MyFirebaseMessagingService {
+    private static final String TAG = "SessionAwareMessaging";
+
+    @Override
+    public void onMessageReceived(RemoteMessage remoteMessage) {
+        if (SessionInvalidationChannel.dispatch(this, remoteMessage.getData())) {
+            Log.d(TAG, "Session invalidation push handled");
+            return;
+        }
+        super.onMessageReceived(remoteMessage);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.Map;
+
+/**
+ * Entry point for server-pushed session invalidation events.
+ * SessionAwareMessagingService forwards FCM data messages here (the server sends them from
+ * sendSessionInvalidationNotification and sendAccountDeletedNotification), so SessionManager
+ * only revalidates when the server says something changed.
+ *
+ * Expected payload: {"type": "account_deleted" | "account_archived" | "force_logout" | "session_changed",
+ *                    "email": "<user email>"}
+ */
+public final class SessionInvalidationChannel {
+    private static final String TAG = "SessionInvalidation";
+
+    public static final String KEY_TYPE = "type";
+    public static final String KEY_EMAIL = "email";
+
+    public static final String TYPE_ACCOUNT_DELETED = "account_deleted";
+    public static final String TYPE_ACCOUNT_ARCHIVED = "account_archived";
+    public static final String TYPE_FORCE_LOGOUT = "force_logout";
+    public static final String TYPE_SESSION_CHANGED = "session_changed";
+
+    private SessionInvalidationChannel() {
+    }
+
+    /**
+     * Check if a data payload is a session invalidation event
+     */
+    public static boolean isInvalidationMessage(Map<String, String> data) {
+        if (data == null) {
+            return false;
+        }
+        String type = data.get(KEY_TYPE);
+        return TYPE_ACCOUNT_DELETED.equals(type)
+            || TYPE_ACCOUNT_ARCHIVED.equals(type)
+            || TYPE_FORCE_LOGOUT.equals(type)
+            || TYPE_SESSION_CHANGED.equals(type);
+    }
+
+    /**
+     * Dispatch a data payload to SessionManager.
+     * Called from SessionAwareMessagingService.onMessageReceived with remoteMessage.getData().
+     *
+     * @return true if the payload was a session event and has been handled
+     */
+    public static boolean dispatch(Context context, Map<String, String> data) {
+        if (!isInvalidationMessage(data)) {
+            return false;
+        }
+
+        String type = data.get(KEY_TYPE);
+        String email = data.get(KEY_EMAIL);
+        Log.d(TAG, "Dispatching " + type + " for " + email);
+
+        SessionManager.getInstance(context).onServerInvalidation(email, type);
+        return true;
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Signed, time-bounded session lease issued by DatabaseAPI.php?action=issue_session_lease.
+ * The lease is "<base64url payload>.<base64url RSA-SHA256 signature>" over {email, status, iat, exp}.
+ * Within its window, validation is a local signature/expiry check that also works offline;
+ * the server is only consulted to renew it or when a push revocation drops it.
+ *
+ * Leases are only trusted if they verify against the key pinned here (PINNED_PUBLIC_KEY, the
+ * public half of the server's SESSION_LEASE_PRIVATE_KEY). The server may rotate to a new key by
+ * sending it with an endorsement: a signature over the new key made with the currently trusted key.
+ * Renewal requires a credential: the current (possibly expired) lease or, for the first lease,
+ * the FCM token the server has acknowledged for the user ("Device <token>").
+ */
+public class SessionLease {
+    private static final String TAG = "SessionLease";
+    private static final String PREFS_NAME = "session_lease_prefs";
+    private static final String KEY_LEASE = "lease";
+    private static final String KEY_ROTATED_PUBLIC_KEY = "rotated_public_key";
+    private static final String LEASE_URL = Constants.API_BASE_URL + "api/DatabaseAPI.php?action=issue_session_lease";
+
+    // Public half of SESSION_LEASE_PRIVATE_KEY; a new key must be endorsed by this one
+    static final String PINNED_PUBLIC_KEY =
+        "-----BEGIN PUBLIC KEY-----\n"
+        + "MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA0YpiYZ+YX6fMYMu7pyw7\n"
+        + "+a/ytDMYbcsleIqh77VSijySAclXbSklpkmuXP5gApNHYL2aAKavHrCZZT6EG4UF\n"
+        + "NPZpIqx6WvohtyAJ82mmuIfJrHTpep7a93nZ8BaoplDbNj3pkTD3kz9Kxll/iOCk\n"
+        + "q/qZPt9otFuSOy1Byoe4PVEshxUCqZ3a4bjRpxPynkwFiCFc429CHWQrDKA8pHi7\n"
+        + "x2LQWo8bfKFBrjXejLGGpO+XJe30rB5lEm5BNwBKcSnWHAfAmupMqe0Ap2h/V9TW\n"
+        + "q4ONYtVYR2tRu4HDxhzFHC4d62kyI1TWskye3oqv+4CuNKJIcaffBrnMySqMVfC2\n"
+        + "cwIDAQAB\n"
+        + "-----END PUBLIC KEY-----";
+
+    // Renew once less than this fraction of the lease is left
+    private static final double RENEW_FRACTION = 0.25;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public enum RenewResult {
+        RENEWED,     // new lease stored
+        REVOKED,     // server says the user is gone or archived
+        UNSUPPORTED, // server has no signing key configured
+        UNAUTHORIZED, // no credential the server accepts (sign in again to get a lease)
+        ERROR        // network or server error
+    }
+
+    /**
+     * A lease whose signature has been verified
+     */
+    static final class VerifiedLease {
+        final String email;
+        final long issuedAtMillis;
+        final long expiresAtMillis;
+
+        VerifiedLease(String email, long issuedAtMillis, long expiresAtMillis) {
+            this.email = email;
+            this.issuedAtMillis = issuedAtMillis;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final OkHttpClient httpClient;
+    private final String leaseUrl;
+    private final String pinnedKey;
+    private volatile VerifiedLease current;
+
+    public SessionLease(Context context) {
+        this(context, HttpClientProvider.getFastClient(), LEASE_URL, PINNED_PUBLIC_KEY);
+    }
+
+    SessionLease(Context context, OkHttpClient httpClient, String leaseUrl, String pinnedKey) {
+        this.context = context.getApplicationContext();
+        this.prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.httpClient = httpClient;
+        this.leaseUrl = leaseUrl;
+        this.pinnedKey = pinnedKey;
+
+        // Verify the stored lease once; afterwards checks are a field read and a time compare
+        String token = prefs.getString(KEY_LEASE, null);
+        if (token != null) {
+            this.current = verify(token, trustedKey());
+            if (current == null) {
+                Log.w(TAG, "Stored lease failed verification, discarding");
+                clear();
+            }
+        }
+    }
+
+    /**
+     * True if a verified lease for this user has not expired (pure CPU, no I/O)
+     */
+    public boolean isValidFor(String email, long now) {
+        VerifiedLease lease = current;
+        return lease != null && lease.email.equalsIgnoreCase(email) && now < lease.expiresAtMillis;
+    }
+
+    /**
+     * True if the lease is missing, for another user, or close enough to expiry to renew
+     */
+    public boolean needsRenewal(String email, long now) {
+        VerifiedLease lease = current;
+        if (lease == null || !lease.email.equalsIgnoreCase(email)) {
+            return true;
+        }
+        long ttl = lease.expiresAtMillis - lease.issuedAtMillis;
+        return lease.expiresAtMillis - now < ttl * RENEW_FRACTION;
+    }
+
+    /**
+     * Ask the server for a fresh lease (blocking, call off the main thread).
+     * Doubles as a validation: REVOKED means the user no longer has a valid session.
+     */
+    public RenewResult renew(String email) {
+        try {
+            JSONObject requestData = new JSONObject();
+            requestData.put("email", email);
+
+            RequestBody body = RequestBody.create(
+                requestData.toString(),
+                MediaType.parse("application/json; charset=utf-8")
+            );
+
+            // Renewal is background work; it yields to probes when the session budget runs low
+            Request.Builder builder = new Request.Builder()
+                .url(leaseUrl)
+                .post(body)
+                .addHeader("Content-Type", "application/json")
+                .tag(NetworkGovernor.CallClass.class, NetworkGovernor.CallClass.SESSION)
+                .tag(NetworkGovernor.Priority.class, NetworkGovernor.Priority.LOW);
+            String credential = getCredential(email);
+            if (credential == null) {
+                Log.d(TAG, "No credential for a lease yet (token not acknowledged) for " + email);
+                return RenewResult.UNAUTHORIZED;
+            }
+            builder.addHeader("Authorization", credential);
+
+            try (Response response = httpClient.newCall(builder.build()).execute()) {
+                if (response.code() == 401) {
+                    Log.w(TAG, "Lease refused, no accepted session credential for " + email);
+                    return RenewResult.UNAUTHORIZED;
+                }
+                if (!response.isSuccessful()) {
+                    Log.w(TAG, "Lease renewal failed. HTTP " + response.code());
+                    return RenewResult.ERROR;
+                }
+
+                String responseBody = response.body() != null ? response.body().string() : "";
+                JSONObject json = new JSONObject(responseBody);
+
+                if (!json.optBoolean("success", false) || !json.has("exists")) {
+                    Log.d(TAG, "Server does not issue session leases: " + json.optString("message"));
+                    return RenewResult.UNSUPPORTED;
+                }
+
+                if (!json.optBoolean("exists", false)) {
+                    Log.d(TAG, "Lease refused, user missing or archived: " + email);
+                    clear();
+                    return RenewResult.REVOKED;
+                }
+
+                String token = json.optString("lease", null);
+                String publicKeyPem = json.optString("public_key", null);
+                if (token == null || publicKeyPem == null) {
+                    return RenewResult.ERROR;
+                }
+
+                // A served key is only used if it is the trusted key or endorsed by it
+                String trustedKey = trustedKey();
+                boolean rotated = !sameKey(trustedKey, publicKeyPem);
+                String endorsement = json.isNull("key_endorsement") ? null : json.optString("key_endorsement");
+                if (rotated && !isEndorsed(publicKeyPem, endorsement, trustedKey)) {
+                    Log.e(TAG, "Lease rejected: server key is not endorsed by the trusted key");
+                    return RenewResult.ERROR;
+                }
+                VerifiedLease lease = verify(token, rotated ? publicKeyPem : trustedKey);
+                if (lease == null || !lease.email.equalsIgnoreCase(email)) {
+                    Log.e(TAG, "Lease rejected: signature or email mismatch");
+                    return RenewResult.ERROR;
+                }
+
+                SharedPreferences.Editor editor = prefs.edit().putString(KEY_LEASE, token);
+                if (rotated) {
+                    Log.d(TAG, "Server key rotated, trusting the endorsed key");
+                    editor.putString(KEY_ROTATED_PUBLIC_KEY, publicKeyPem);
+                }
+                editor.apply();
+                current = lease;
+                Log.d(TAG, "Lease renewed for " + email + " until " + lease.expiresAtMillis);
+                return RenewResult.RENEWED;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Lease renewal error: " + e.getMessage());
+            return RenewResult.ERROR;
+        }
+    }
+
+    /**
+     * Credential for the server: "Lease <token>" with a stored lease (an expired one still
+     * counts, the server accepts it for renewal within a grace period), otherwise
+     * "Device <fcm token>" once the server has acknowledged that token for the user.
+     * Null if neither is available.
+     */
+    String getCredential(String email) {
+        String token = prefs.getString(KEY_LEASE, null);
+        if (token != null) {
+            return "Lease " + token;
+        }
+        FCMTokenManager tokenManager = FCMTokenManager.getInstance(context);
+        return tokenManager.isRegisteredFor(email) ? "Device " + tokenManager.getCurrentToken() : null;
+    }
+
+    /**
+     * Key leases must verify against: the key shipped in the app, or a rotation it endorsed
+     */
+    private String trustedKey() {
+        String rotatedKey = prefs.getString(KEY_ROTATED_PUBLIC_KEY, null);
+        return rotatedKey != null ? rotatedKey : pinnedKey;
+    }
+
+    /**
+     * True if the endorsement is a signature over the new key (DER bytes) made with the trusted key
+     */
+    static boolean isEndorsed(String newKeyPem, String endorsement, String trustedKeyPem) {
+        if (endorsement == null || endorsement.isEmpty()) {
+            return false;
+        }
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(parsePublicKey(trustedKeyPem));
+            signature.update(Base64.decode(stripPem(newKeyPem), Base64.DEFAULT));
+            return signature.verify(Base64.decode(endorsement, Base64.DEFAULT));
+        } catch (Exception e) {
+            Log.w(TAG, "Key endorsement error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean sameKey(String a, String b) {
+        return stripPem(a).equals(stripPem(b));
+    }
+
+    /**
+     * Drop the lease (logout or push revocation); a rotated key is kept
+     */
+    public void clear() {
+        current = null;
+        prefs.edit().remove(KEY_LEASE).apply();
+    }
+
+    /**
+     * Verify signature and decode the payload, or null if the lease is malformed or tampered with
+     */
+    static VerifiedLease verify(String token, String publicKeyPem) {
+        try {
+            int dot = token.indexOf('.');
+            if (dot <= 0 || dot == token.length() - 1) {
+                return null;
+            }
+            String encodedPayload = token.substring(0, dot);
+            byte[] signatureBytes = Base64.decode(token.substring(dot + 1), Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(parsePublicKey(publicKeyPem));
+            signature.update(encodedPayload.getBytes(UTF_8));
+            if (!signature.verify(signatureBytes)) {
+                return null;
+            }
+
+            byte[] payloadBytes = Base64.decode(encodedPayload, Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+            JSONObject payload = new JSONObject(new String(payloadBytes, UTF_8));
+            if ("0".equals(payload.optString("status", "1"))) {
+                return null;
+            }
+            return new VerifiedLease(
+                payload.getString("email"),
+                TimeUnit.SECONDS.toMillis(payload.getLong("iat")),
+                TimeUnit.SECONDS.toMillis(payload.getLong("exp"))
+            );
+        } catch (Exception e) {
+            Log.w(TAG, "Lease verification error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String stripPem(String pem) {
+        return pem
+            .replace("-----BEGIN PUBLIC KEY-----", "")
+            .replace("-----END PUBLIC KEY-----", "")
+            .replaceAll("\\s", "");
+    }
+
+    private static PublicKey parsePublicKey(String pem) throws Exception {
+        byte[] der = Base64.decode(stripPem(pem), Base64.DEFAULT);
+        return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(der));
+    }
+}
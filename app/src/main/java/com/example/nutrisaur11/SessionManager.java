@@ -7,20 +7,49 @@ import android.content.SharedPreferences;
 import android.util.Log;
 import androidx.appcompat.app.AlertDialog;
 import org.json.JSONObject;
-import java.util.Map;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import android.os.Handler;
 import android.os.Looper;
 
 public class SessionManager {
     private static final String TAG = "SessionManager";
     private static final String API_BASE_URL = "https://nutrisaur-production.up.railway.app/api/DatabaseAPI.php";
+    private static final String PREFS_NAME = "nutrisaur_prefs";
+    private static final String KEY_CURRENT_USER_EMAIL = "current_user_email";
+    private static final String KEY_IS_LOGGED_IN = "is_logged_in";
     
-    // Real-time validation: Check more frequently for immediate detection
-    private static final long SESSION_CHECK_INTERVAL = 3 * 1000; // 3 seconds for real-time detection
+    // Per-user session fields, in the user's partition prefs (see userPrefs)
+    private static final String KEY_SESSION_IS_VALID = "session_is_valid";
+    private static final String KEY_SESSION_LAST_CHECK = "session_last_check";
+    private static final String KEY_LAST_CONNECTION_TIME = "last_connection_time";
+    private static final String KEY_LAST_CONNECTION_DURATION = "last_connection_duration";
+    
+    private static final DatabaseApiClient.Template ACCOUNT_STATUS_QUERY =
+        DatabaseApiClient.selectTemplate("community_users", "email = ?", "email", "status");
+    private static final DatabaseApiClient.Template ACCOUNT_EXISTS_QUERY =
+        DatabaseApiClient.selectTemplate("community_users", "email = ?", "email");
+    
+    // Write-behind: state changes within this window are coalesced into one prefs write
+    private static final long PERSIST_DELAY = 500;
+    
+    // Real-time validation: archive/delete/force-logout events are pushed through
+    // SessionAwareMessagingService, so polling is only a safety net. Until the server has acked
+    // this device's FCM token the push can't arrive, and the shorter interval applies instead
+    private static final long SESSION_CHECK_INTERVAL = 15 * 60 * 1000; // 15 minutes with push delivery
+    private static final long UNPUSHED_CHECK_INTERVAL = 60 * 1000; // 1 minute without (2 session calls per check)
+    private static final long LEASE_RETRY_INTERVAL = 15 * 60 * 1000; // wait after a failed lease renewal
+    private static final long MAX_CHECK_INTERVAL = 2 * 60 * 60 * 1000; // 2 hours ceiling for backoff
+    private static final long LOGOUT_PURGE_DEADLINE = 800; // max wait for local stores before redirecting
     private static final long IDLE_TIMEOUT = 10 * 60 * 1000; // 10 minutes of inactivity
     private static final long CACHE_VALIDITY = 24 * 60 * 60 * 1000; // 24 hours
     
@@ -33,18 +62,68 @@ public class SessionManager {
     private boolean isUserActive = false;
     
     private Context context;
+    private SharedPreferences prefs;
     private static SessionManager instance;
     private ExecutorService executorService;
     private Handler mainHandler;
     private Handler validationHandler;
     private Runnable validationRunnable;
+    private ValidationScheduler validationScheduler;
+    private SessionProbe sessionProbe;
+    private SessionLease sessionLease;
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    private volatile LogoutPurgePipeline.Report lastLogoutReport;
+    
+    // Registered with each activated partition; closing it drops that user's cached selects
+    private final Closeable selectCacheHandle = () -> DatabaseApiClient.getInstance().getSelectCache().clear();
+    
+    // Single-flight: concurrent existence checks for the same email share one request
+    private final ConcurrentHashMap<String, FutureTask<Boolean>> inFlightChecks = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedChecks = new AtomicLong();
+    
+    // Only one stale-while-revalidate check is queued at a time (onCreate + onResume)
+    private final AtomicBoolean backgroundRevalidationPending = new AtomicBoolean(false);
+    private final AtomicBoolean validationDeferred = new AtomicBoolean(false);
+    private final AtomicBoolean leaseRenewalPending = new AtomicBoolean(false);
+    private volatile long nextLeaseRenewalAttempt = 0; // backoff after failed or unsupported renewals
+    
+    // In-memory session snapshot; reads are lock-free, writes go through publishState()
+    private volatile SessionState state = SessionState.LOGGED_OUT;
+    private SessionState persistedState = SessionState.LOGGED_OUT;
+    private final AtomicBoolean persistScheduled = new AtomicBoolean(false);
+    private final Runnable persistRunnable = this::persistState;
+    
+    // Login/logout is written to prefs by other screens; keep the snapshot in sync
+    private final SharedPreferences.OnSharedPreferenceChangeListener loginStateListener = (sharedPrefs, key) -> {
+        if (key == null || KEY_CURRENT_USER_EMAIL.equals(key) || KEY_IS_LOGGED_IN.equals(key)) {
+            reloadLoginState();
+        }
+    };
+    
+    // Activity currently in the foreground, used to surface server-pushed revocations
+    private java.lang.ref.WeakReference<Activity> foregroundActivity = new java.lang.ref.WeakReference<>(null);
     
     private SessionManager(Context context) {
         this.context = context.getApplicationContext();
         this.executorService = Executors.newSingleThreadExecutor();
         this.mainHandler = new Handler(Looper.getMainLooper());
         this.validationHandler = new Handler(Looper.getMainLooper());
+        this.validationScheduler = new ValidationScheduler(SESSION_CHECK_INTERVAL, MAX_CHECK_INTERVAL,
+            SLOW_CONNECTION_THRESHOLD, VERY_SLOW_CONNECTION_THRESHOLD, System::currentTimeMillis, new java.util.Random());
+        this.prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.sessionLease = new SessionLease(this.context);
+        this.sessionProbe = new SessionProbe(this.context, sessionLease);
+        this.state = loadState(prefs.getString(KEY_CURRENT_USER_EMAIL, null), prefs.getBoolean(KEY_IS_LOGGED_IN, false));
+        this.persistedState = state;
+        prefs.registerOnSharedPreferenceChangeListener(loginStateListener);
+        
+        // Open the pooled connection now so the first validation skips DNS/TLS setup
+        HttpClientProvider.warmUp(this.context);
         startPeriodicValidation();
+        if (state.isLoggedIn()) {
+            activatePartition(state.getEmail());
+            SyncJobService.scheduleSessionRenewal(this.context);
+        }
     }
     
     public static synchronized SessionManager getInstance(Context context) {
@@ -54,32 +133,163 @@ public class SessionManager {
         return instance;
     }
     
+    /**
+     * Current session snapshot (lock-free, safe from any thread)
+     */
+    public SessionState getSessionState() {
+        return state;
+    }
+    
+    /**
+     * Read the persisted session fields for a user (once per login change, not per check)
+     */
+    private SessionState loadState(String email, boolean isLoggedIn) {
+        if (email == null) {
+            return SessionState.LOGGED_OUT.withLogin(null, isLoggedIn);
+        }
+        SharedPreferences userPrefs = userPrefs(email);
+        return new SessionState(
+            email,
+            isLoggedIn,
+            userPrefs.getBoolean(KEY_SESSION_IS_VALID, false),
+            userPrefs.getLong(KEY_SESSION_LAST_CHECK, 0),
+            userPrefs.getLong(KEY_LAST_CONNECTION_TIME, 0),
+            userPrefs.getLong(KEY_LAST_CONNECTION_DURATION, 0)
+        );
+    }
+    
+    /**
+     * Per-user session fields, kept in the user's partition so dropping it removes them
+     */
+    private SharedPreferences userPrefs(String email) {
+        return context.getSharedPreferences(UserPartition.preferencesName(email, "session"), Context.MODE_PRIVATE);
+    }
+    
+    /**
+     * Activate the user's partition; the select cache holds that user's rows, so it is
+     * cleared whenever the partition is switched or dropped
+     */
+    private void activatePartition(String email) {
+        UserPartition.activate(context, email).register(selectCacheHandle);
+    }
+    
+    private synchronized void reloadLoginState() {
+        String email = prefs.getString(KEY_CURRENT_USER_EMAIL, null);
+        boolean isLoggedIn = prefs.getBoolean(KEY_IS_LOGGED_IN, false);
+        SessionState current = state;
+        
+        if (email != null && email.equals(current.getEmail())) {
+            state = current.withLogin(email, isLoggedIn);
+        } else {
+            // Different user: flush pending writes for the old one before switching
+            persistState();
+            state = loadState(email, isLoggedIn);
+            persistedState = state;
+        }
+        
+        // Login or account switch: the user's local stores now resolve to their own partition
+        if (email != null && isLoggedIn) {
+            activatePartition(email);
+        }
+    }
+    
+    /**
+     * Publish a new snapshot and schedule a coalesced write if anything changed
+     */
+    private synchronized void publishState(SessionState newState) {
+        if (newState.equals(state)) {
+            return;
+        }
+        state = newState;
+        if (persistScheduled.compareAndSet(false, true)) {
+            mainHandler.postDelayed(persistRunnable, PERSIST_DELAY);
+        }
+    }
+    
+    /**
+     * Record a validation result for a user, ignoring results for a user that has since logged out.
+     * checkTime must be a real timestamp: an invalid result is kept as invalid, never as "never checked".
+     */
+    private synchronized void recordValidation(String email, boolean isValid, long checkTime) {
+        SessionState current = state;
+        if (email != null && email.equals(current.getEmail())) {
+            publishState(current.withValidation(isValid, checkTime));
+        }
+    }
+    
+    /**
+     * Forget the user's validation result so the next check goes to the server
+     */
+    private synchronized void forgetValidation(String email) {
+        SessionState current = state;
+        if (email != null && email.equals(current.getEmail())) {
+            publishState(current.withoutValidation());
+        }
+    }
+    
+    private synchronized void recordConnection(String email, long connectionTime, long duration) {
+        SessionState current = state;
+        if (email != null && email.equals(current.getEmail())) {
+            publishState(current.withConnection(connectionTime, duration));
+        }
+    }
+    
+    /**
+     * Write only the fields that differ from what is already on disk
+     */
+    private synchronized void persistState() {
+        persistScheduled.set(false);
+        mainHandler.removeCallbacks(persistRunnable);
+        
+        SessionState current = state;
+        SessionState last = persistedState;
+        String email = current.getEmail();
+        if (email == null || current.equals(last)) {
+            persistedState = current;
+            return;
+        }
+        
+        boolean sameUser = email.equals(last.getEmail());
+        SharedPreferences.Editor editor = userPrefs(email).edit();
+        if (!sameUser || current.isValid() != last.isValid()) {
+            editor.putBoolean(KEY_SESSION_IS_VALID, current.isValid());
+        }
+        if (!sameUser || current.getLastCheck() != last.getLastCheck()) {
+            editor.putLong(KEY_SESSION_LAST_CHECK, current.getLastCheck());
+        }
+        if (!sameUser || current.getLastConnectionTime() != last.getLastConnectionTime()) {
+            editor.putLong(KEY_LAST_CONNECTION_TIME, current.getLastConnectionTime());
+        }
+        if (!sameUser || current.getLastConnectionDuration() != last.getLastConnectionDuration()) {
+            editor.putLong(KEY_LAST_CONNECTION_DURATION, current.getLastConnectionDuration());
+        }
+        editor.apply();
+        persistedState = current;
+    }
+    
     /**
      * Check if user is logged in and exists in database (BATTERY OPTIMIZED)
      */
     public boolean isUserValid() {
-        SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-        String email = prefs.getString("current_user_email", null);
-        boolean isLoggedIn = prefs.getBoolean("is_logged_in", false);
+        SessionState current = state;
         
-        if (email == null || !isLoggedIn) {
+        if (!current.isLoggedIn()) {
             Log.d(TAG, "User not logged in");
             return false;
         }
         
         // Battery optimization: Check cache first, only hit database if needed
-        return isUserValidCached(email);
+        return isUserValidCached(current.getEmail());
     }
     
     /**
      * Async version of isUserValid for background validation
      */
     public void isUserValidAsync(ValidationCallback callback) {
-        SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-        String email = prefs.getString("current_user_email", null);
-        boolean isLoggedIn = prefs.getBoolean("is_logged_in", false);
+        SessionState current = state;
+        String email = current.getEmail();
         
-        if (email == null || !isLoggedIn) {
+        if (!current.isLoggedIn()) {
             Log.d(TAG, "User not logged in");
             if (callback != null) {
                 mainHandler.post(() -> callback.onValidationResult(false));
@@ -87,18 +297,10 @@ public class SessionManager {
             return;
         }
         
-        // Check cache first
-        boolean cachedResult = isUserValidCached(email);
-        if (cachedResult) {
-            if (callback != null) {
-                mainHandler.post(() -> callback.onValidationResult(true));
-            }
-            return;
-        }
-        
-        // If cache is invalid, check database in background
+        // Check cache first, in background: a stale cache falls through to the database
         executorService.execute(() -> {
-            boolean isValid = checkUserExistsInDatabase(email);
+            boolean cachedResult = isUserValidCached(email);
+            boolean isValid = cachedResult || checkUserExistsInDatabase(email);
             if (callback != null) {
                 mainHandler.post(() -> callback.onValidationResult(isValid));
             }
@@ -109,8 +311,14 @@ public class SessionManager {
      * Battery-optimized user validation with interaction-based checking
      */
     private boolean isUserValidCached(String email) {
-        SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
+        SessionState current = state;
         long currentTime = System.currentTimeMillis();
+        long checkInterval = checkIntervalFor(email);
+        
+        // A verified lease answers without touching the network
+        if (hasValidLease(email, currentTime)) {
+            return true;
+        }
         
         // Check if user is idle (no interaction for 10+ minutes)
         if (currentTime - lastUserInteraction > IDLE_TIMEOUT) {
@@ -119,31 +327,26 @@ public class SessionManager {
         }
         
         // Check if we have a recent validation result
-        long lastCheck = prefs.getLong("session_last_check_" + email, 0);
+        long lastCheck = current.getLastCheck();
         
-        // If we checked recently (within 5 minutes) and user is active, use cached result
-        if (currentTime - lastCheck < SESSION_CHECK_INTERVAL && isUserActive) {
-            boolean cachedResult = prefs.getBoolean("session_is_valid_" + email, false);
-            Log.d(TAG, "Using cached session validation result: " + cachedResult);
+        // If we checked recently (within the safety-net interval) and user is active, use cached result
+        if (currentTime - lastCheck < checkInterval && isUserActive) {
+            boolean cachedResult = current.isValid();
+            metrics.increment(MetricsRegistry.SESSION_CACHE_HIT);
+            Log.d(TAG, cachedResult ? "Using cached valid session" : "Using cached invalid session");
             return cachedResult;
         }
         
         // Only check database if user is active and enough time has passed
         if (isUserActive) {
             Log.d(TAG, "User is active, validating with database");
-            boolean isValid = checkUserExistsInDatabase(email);
-            
-            // Cache the result
-            prefs.edit()
-                .putBoolean("session_is_valid_" + email, isValid)
-                .putLong("session_last_check_" + email, currentTime)
-                .apply();
-                
-            return isValid;
+            metrics.increment(MetricsRegistry.SESSION_CACHE_MISS);
+            return checkAndRecord(email);
         }
         
-        // If user is not active, return cached result
-        return prefs.getBoolean("session_is_valid_" + email, true);
+        // If user is not active, return cached result (never checked counts as valid,
+        // a recorded invalid result never does)
+        return !current.isChecked() || current.isValid();
     }
     
     /**
@@ -153,6 +356,13 @@ public class SessionManager {
         lastUserInteraction = System.currentTimeMillis();
         isUserActive = true;
         Log.d(TAG, "User interaction recorded at: " + lastUserInteraction);
+        
+        // Back in the foreground: resume the safety-net schedule right away
+        if (validationScheduler.isParked() && validationRunnable != null) {
+            long delay = Math.min(validationScheduler.resume(), checkIntervalFor(state.getEmail()));
+            validationHandler.removeCallbacks(validationRunnable);
+            validationHandler.postDelayed(validationRunnable, delay);
+        }
     }
     
     /**
@@ -161,55 +371,142 @@ public class SessionManager {
     public void markUserAsIdle() {
         isUserActive = false;
         Log.d(TAG, "User marked as idle");
+        
+        // Park the safety-net schedule while nothing is on screen
+        validationScheduler.park();
+        if (validationRunnable != null) {
+            validationHandler.removeCallbacks(validationRunnable);
+        }
     }
     
     /**
-     * Check if user exists in community_users database with timeout handling
+     * Check if user exists in community_users database.
+     * Callers that arrive while a check for the same email is in flight join it
+     * instead of starting their own; nothing is cached once the request completes.
+     * A check the network budget refused answers from the last recorded result.
      */
     public boolean checkUserExistsInDatabase(String email) {
+        Boolean exists = checkUser(email);
+        return exists != null ? exists : lastKnownValid(email);
+    }
+    
+    /**
+     * Check with the server and record the result. A throttled check records nothing, so it
+     * can never refresh a session as valid; it answers from the last recorded result.
+     */
+    private boolean checkAndRecord(String email) {
+        Boolean exists = checkUser(email);
+        if (exists == null) {
+            return lastKnownValid(email);
+        }
+        recordValidation(email, exists, System.currentTimeMillis());
+        return exists;
+    }
+    
+    /**
+     * Last recorded result for the user; never checked counts as valid, a recorded invalid
+     * result never does
+     */
+    private boolean lastKnownValid(String email) {
+        SessionState current = state;
+        return !email.equals(current.getEmail()) || !current.isChecked() || current.isValid();
+    }
+    
+    /**
+     * Single-flight existence check: the server's answer, or null if the session budget
+     * refused the request (nothing is known about the user then)
+     */
+    private Boolean checkUser(String email) {
+        FutureTask<Boolean> task = new FutureTask<>(() -> fetchUserExistsFromDatabase(email));
+        FutureTask<Boolean> inFlight = inFlightChecks.putIfAbsent(email, task);
+        
+        if (inFlight != null) {
+            coalescedChecks.incrementAndGet();
+            metrics.increment(MetricsRegistry.SESSION_COALESCED);
+            Log.d(TAG, "Joining in-flight existence check for: " + email);
+            task = inFlight;
+        } else {
+            try {
+                task.run();
+            } finally {
+                inFlightChecks.remove(email, task);
+            }
+        }
+        
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Interrupted while waiting for in-flight check: " + e.getMessage());
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "In-flight existence check failed: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Number of existence checks that were served by joining an in-flight request
+     */
+    public long getCoalescedCheckCount() {
+        return coalescedChecks.get();
+    }
+    
+    /**
+     * Validate the user with one network call: the session probe (usually a body-less 304),
+     * or the status select when there is no credential for the probe (then no probe is sent),
+     * or the server has no probe action or refuses it
+     */
+    private Boolean fetchUserExistsFromDatabase(String email) {
+        long startTime = System.currentTimeMillis();
+        metrics.increment(MetricsRegistry.SESSION_NETWORK_CHECK);
+        SessionProbe.Result result = sessionProbe.probe(email);
+        long duration = System.currentTimeMillis() - startTime;
+        
+        if (result == SessionProbe.Result.THROTTLED) {
+            // Not a failure of the link, so the scheduler doesn't back off on it
+            Log.d(TAG, "Session check throttled by the network budget, keeping the last result");
+            return null;
+        }
+        
+        if (result == SessionProbe.Result.UNSUPPORTED || result == SessionProbe.Result.UNAUTHORIZED) {
+            Log.d(TAG, "Session probe unavailable (" + result + "), using status select");
+            Boolean exists = fetchUserStatusFromDatabase(email);
+            metrics.recordLatency(MetricsRegistry.SESSION_VALIDATION, System.currentTimeMillis() - startTime);
+            return exists;
+        }
+        
+        metrics.recordLatency(MetricsRegistry.SESSION_VALIDATION, duration);
+        Log.d(TAG, "Session probe completed in " + duration + "ms: " + result);
+        recordConnection(email, System.currentTimeMillis(), duration);
+        validationScheduler.recordResult(duration, result != SessionProbe.Result.ERROR);
+        
+        // Network errors are temporary: don't log the user out on a slow connection
+        return result != SessionProbe.Result.INVALID;
+    }
+    
+    /**
+     * Query community_users for the user's status (fallback when the server can't probe).
+     * Goes through the batcher so it shares a request with other session checks queued
+     * at the same time. Null if the session budget refused the request.
+     */
+    private Boolean fetchUserStatusFromDatabase(String email) {
         try {
             Log.d(TAG, "Checking user existence in database: " + email);
             long startTime = System.currentTimeMillis();
             
-            CommunityUserManager userManager = new CommunityUserManager(context);
-            
-            // Use a synchronous approach for session validation
-            // We need to wait for the result to determine if user exists
-            final boolean[] userExists = {false};
-            final CountDownLatch latch = new CountDownLatch(1);
-            
-            userManager.getCurrentUserDataFromDatabaseAsync(new CommunityUserManager.UserDataCallback() {
-                @Override
-                public void onUserDataReceived(Map<String, String> userData) {
-                    // Check if user is archived
-                    if (userData.containsKey("status") && "0".equals(userData.get("status"))) {
-                        Log.d(TAG, "User is archived, invalidating session");
-                        userExists[0] = false;
-                    } else {
-                        // Check if we have essential user data
-                        boolean hasEssentialData = userData.containsKey("name") || userData.containsKey("email");
-                        userExists[0] = !userData.isEmpty() && hasEssentialData;
-                    }
-                    latch.countDown();
-                }
-            });
-            
-            // Wait for the result (max 5 seconds)
-            try {
-                latch.await(5, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                Log.e(TAG, "Interrupted while waiting for user data: " + e.getMessage());
-                return false;
-            }
+            DatabaseApiClient.SelectResult<String> result = DatabaseApiBatcher.await(
+                DatabaseApiBatcher.getInstance().select(NetworkGovernor.CallClass.SESSION,
+                    ACCOUNT_STATUS_QUERY, SessionManager::readAccountStatus, email));
             
             long duration = System.currentTimeMillis() - startTime;
             Log.d(TAG, "Database check completed in " + duration + "ms");
             
-            // Store connection duration for cache optimization
-            SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-            prefs.edit().putLong("last_connection_duration_" + email, duration).apply();
+            // Store connection timing for cache optimization
+            recordConnection(email, System.currentTimeMillis(), duration);
             
-            // Adjust validation frequency based on connection quality
+            // Feed the scheduler so slow or failing links stretch the validation interval
+            validationScheduler.recordResult(duration, result.success);
             if (duration > VERY_SLOW_CONNECTION_THRESHOLD) {
                 Log.d(TAG, "Very slow connection detected (" + duration + "ms), reducing validation frequency");
                 // For very slow connections, we'll be more lenient with validation
@@ -217,19 +514,32 @@ public class SessionManager {
                 Log.d(TAG, "Slow connection detected (" + duration + "ms), monitoring connection quality");
             }
             
-            if (!userExists[0]) {
+            if (!result.success) {
+                // Server-side error, not an answer about the user
+                Log.w(TAG, "User check failed: " + result.message);
+                return true;
+            }
+            if (result.rows.isEmpty()) {
                 Log.d(TAG, "User not found in database: " + email);
                 return false;
             }
+            if ("0".equals(result.rows.get(0))) {
+                Log.d(TAG, "User is archived, invalidating session");
+                return false;
+            }
             
             Log.d(TAG, "User exists and is valid: " + email);
             return true;
             
+        } catch (NetworkGovernor.BudgetExceededException e) {
+            Log.d(TAG, "Status select throttled by the network budget, keeping the last result");
+            return null;
         } catch (Exception e) {
             Log.e(TAG, "Error checking user existence: " + e.getMessage());
+            validationScheduler.recordResult(0, false);
             
-            // If it's a timeout or network error, don't immediately fail
-            if (e.getMessage() != null && 
+            // If it's a timeout, network error or an open circuit, don't immediately fail
+            if (e instanceof IOException || e.getMessage() != null && 
                 (e.getMessage().contains("timeout") || 
                  e.getMessage().contains("network") ||
                  e.getMessage().contains("connection"))) {
@@ -242,6 +552,24 @@ public class SessionManager {
         }
     }
     
+    /**
+     * Status column of one community_users row ("" when the column is absent)
+     */
+    private static String readAccountStatus(ApiReader reader) throws IOException {
+        String status = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("status".equals(reader.nextName())) {
+                String value = DatabaseApiClient.nextString(reader);
+                status = value != null ? value : "";
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return status;
+    }
+    
     /**
      * Validate session and handle invalid sessions
      */
@@ -249,59 +577,53 @@ public class SessionManager {
         Log.d(TAG, "=== REAL-TIME SESSION VALIDATION ===");
         
         // For immediate validation, use cached result only
-        SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-        String email = prefs.getString("current_user_email", null);
-        boolean isLoggedIn = prefs.getBoolean("is_logged_in", false);
+        SessionState current = state;
+        String email = current.getEmail();
         
-        if (email == null || !isLoggedIn) {
+        if (!current.isLoggedIn()) {
             Log.d(TAG, "User not logged in");
             handleInvalidSession(activity);
             return false;
         }
         
         // Check if we have a recent valid session in cache
-        long lastCheck = prefs.getLong("session_last_check_" + email, 0);
         long currentTime = System.currentTimeMillis();
         
+        if (hasValidLease(email, currentTime)) {
+            Log.d(TAG, "Using signed session lease");
+            return true;
+        }
+        
         // For slow connections, extend cache validity to reduce network calls
-        long cacheInterval = SESSION_CHECK_INTERVAL;
-        long lastConnectionTime = prefs.getLong("last_connection_time_" + email, 0);
+        long cacheInterval = checkIntervalFor(email);
+        long lastConnectionTime = current.getLastConnectionTime();
         if (lastConnectionTime > 0 && (currentTime - lastConnectionTime) < 60000) { // If last connection was slow within 1 minute
-            long lastConnectionDuration = prefs.getLong("last_connection_duration_" + email, 0);
+            long lastConnectionDuration = current.getLastConnectionDuration();
             if (lastConnectionDuration > SLOW_CONNECTION_THRESHOLD) {
-                cacheInterval = SESSION_CHECK_INTERVAL * 3; // Extend cache to 9 seconds for slow connections
+                cacheInterval *= 3; // Extend cache for slow connections
                 Log.d(TAG, "Extending cache validity due to slow connection history");
             }
         }
         
-        boolean hasRecentValidSession = (currentTime - lastCheck < cacheInterval) && 
-                                       prefs.getBoolean("session_is_valid_" + email, false);
-        
-        if (hasRecentValidSession) {
+        if (current.hasRecentValidSession(currentTime, cacheInterval)) {
+            metrics.increment(MetricsRegistry.SESSION_CACHE_HIT);
             Log.d(TAG, "Using cached valid session");
             return true;
         }
+        metrics.increment(MetricsRegistry.SESSION_CACHE_MISS);
         
         // REAL-TIME VALIDATION: Check database immediately for critical validation
         Log.d(TAG, "No recent valid session found, performing real-time database check");
         
-        // First check if device is online
+        // Offline: keep the last known session and revalidate as soon as the network returns
         if (!isNetworkAvailable()) {
-            Log.d(TAG, "Device is offline, showing offline dialog");
-            handleOfflineSession(activity);
-            return false;
+            Log.d(TAG, "Device is offline, deferring validation until reconnect");
+            deferValidationUntilOnline(email);
+            return true;
         }
         
-        boolean isValid = checkUserExistsInDatabase(email);
-        
-        // Store connection timing for future cache decisions
-        long connectionDuration = prefs.getLong("last_connection_duration_" + email, 0);
-        prefs.edit()
-            .putBoolean("session_is_valid_" + email, isValid)
-            .putLong("session_last_check_" + email, currentTime)
-            .putLong("last_connection_time_" + email, currentTime)
-            .putLong("last_connection_duration_" + email, connectionDuration)
-            .apply();
+        // Connection timing was recorded by the check itself
+        boolean isValid = checkAndRecord(email);
         
         if (!isValid) {
             Log.d(TAG, "Real-time validation failed, user not found in database");
@@ -319,32 +641,24 @@ public class SessionManager {
     public boolean forceRealTimeValidation(Activity activity) {
         Log.d(TAG, "=== FORCE REAL-TIME VALIDATION ===");
         
-        SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-        String email = prefs.getString("current_user_email", null);
-        boolean isLoggedIn = prefs.getBoolean("is_logged_in", false);
+        SessionState current = state;
+        String email = current.getEmail();
         
-        if (email == null || !isLoggedIn) {
+        if (!current.isLoggedIn()) {
             Log.d(TAG, "User not logged in");
             handleInvalidSession(activity);
             return false;
         }
         
-        // First check if device is online
+        // Offline: keep the last known session and revalidate as soon as the network returns
         if (!isNetworkAvailable()) {
-            Log.d(TAG, "Device is offline, showing offline dialog");
-            handleOfflineSession(activity);
-            return false;
+            Log.d(TAG, "Device is offline, deferring validation until reconnect");
+            deferValidationUntilOnline(email);
+            return true;
         }
         
-        // Force database check - bypass cache
-        boolean isValid = checkUserExistsInDatabase(email);
-        
-        // Update cache with result
-        long currentTime = System.currentTimeMillis();
-        prefs.edit()
-            .putBoolean("session_is_valid_" + email, isValid)
-            .putLong("session_last_check_" + email, currentTime)
-            .apply();
+        // Force database check - bypass cache, update cache with result
+        boolean isValid = checkAndRecord(email);
         
         if (!isValid) {
             Log.d(TAG, "Force validation failed, user not found in database");
@@ -357,22 +671,213 @@ public class SessionManager {
     }
     
     /**
-     * Async session validation
+     * Non-blocking session validation for activity lifecycle callbacks (stale-while-revalidate).
+     * Answers immediately from the last known session state; a stale cache is revalidated in the
+     * background and an invalid result triggers the logout flow afterwards. Never waits on the network.
      */
-    private void validateSessionAsync(Activity activity) {
-        isUserValidAsync(new ValidationCallback() {
-            @Override
-            public void onValidationResult(boolean isValid) {
+    public boolean validateSessionAsync(Activity activity) {
+        SessionState current = state;
+        
+        if (!current.isLoggedIn()) {
+            Log.d(TAG, "User not logged in");
+            handleInvalidSession(activity);
+            return false;
+        }
+        
+        long currentTime = System.currentTimeMillis();
+        if (hasValidLease(current.getEmail(), currentTime)) {
+            Log.d(TAG, "Using signed session lease");
+        } else if (current.hasRecentValidSession(currentTime, checkIntervalFor(current.getEmail()))) {
+            metrics.increment(MetricsRegistry.SESSION_CACHE_HIT);
+        } else {
+            metrics.increment(MetricsRegistry.SESSION_CACHE_MISS);
+            revalidateInBackground(activity, current.getEmail());
+        }
+        
+        // Render from last known-good state
+        return true;
+    }
+    
+    /**
+     * Revalidate with the database off the main thread, logging out if the user is no longer valid.
+     * The activity is held weakly so a slow check doesn't keep a destroyed screen alive; if it is
+     * gone by then, the result goes to whichever activity is in the foreground.
+     */
+    private void revalidateInBackground(Activity activity, String email) {
+        if (!backgroundRevalidationPending.compareAndSet(false, true)) {
+            Log.d(TAG, "Background revalidation already queued");
+            return;
+        }
+        
+        java.lang.ref.WeakReference<Activity> activityRef = new java.lang.ref.WeakReference<>(activity);
+        executorService.execute(() -> {
+            try {
+                // Offline: keep the last known-good state and retry on reconnect
+                if (!isNetworkAvailable()) {
+                    Log.d(TAG, "Background revalidation deferred, device offline");
+                    deferValidationUntilOnline(email);
+                    return;
+                }
+                
+                boolean isValid = checkAndRecord(email);
+                
                 if (!isValid) {
                     Log.d(TAG, "Background validation failed, redirecting to login");
-                    handleInvalidSession(activity);
+                    Activity target = activityRef.get();
+                    handleInvalidSession(target != null && !target.isFinishing() ? target : foregroundActivity.get());
                 } else {
                     Log.d(TAG, "Background validation successful");
                 }
+            } finally {
+                backgroundRevalidationPending.set(false);
+            }
+        });
+    }
+    
+    /**
+     * Screen-resume account checks (archived, still exists), as CommunityUserManager used to
+     * send them, queued on the batcher instead: both go out in one request, together with the
+     * revalidation's status select when that is queued in the same window. Logs out if either
+     * check fails; network errors are ignored.
+     */
+    public void checkAccountOnResume(Activity activity) {
+        SessionState current = state;
+        String email = current.getEmail();
+        if (!current.isLoggedIn() || email == null || !isNetworkAvailable()) {
+            return;
+        }
+        
+        DatabaseApiBatcher batcher = DatabaseApiBatcher.getInstance();
+        Future<DatabaseApiClient.SelectResult<String>> archiveCheck = batcher.select(
+            NetworkGovernor.CallClass.SESSION, ACCOUNT_STATUS_QUERY, SessionManager::readAccountStatus, email);
+        Future<DatabaseApiClient.SelectResult<String>> existsCheck = batcher.select(
+            NetworkGovernor.CallClass.SESSION, ACCOUNT_EXISTS_QUERY, SessionManager::readAccountStatus, email);
+        
+        java.lang.ref.WeakReference<Activity> activityRef = new java.lang.ref.WeakReference<>(activity);
+        executorService.execute(() -> {
+            try {
+                DatabaseApiClient.SelectResult<String> status = DatabaseApiBatcher.await(archiveCheck);
+                DatabaseApiClient.SelectResult<String> exists = DatabaseApiBatcher.await(existsCheck);
+                boolean archived = status.success && !status.rows.isEmpty() && "0".equals(status.rows.get(0));
+                boolean missing = exists.success && exists.rows.isEmpty();
+                if (!archived && !missing) {
+                    return;
+                }
+                
+                // The revalidation may have found the same thing already; show one dialog only
+                SessionState latest = state;
+                if (!email.equals(latest.getEmail()) || (latest.isChecked() && !latest.isValid())) {
+                    return;
+                }
+                Log.d(TAG, "Resume check: user " + (archived ? "archived" : "not found") + ", logging out");
+                recordValidation(email, false, System.currentTimeMillis());
+                Activity target = activityRef.get();
+                handleInvalidSession(target != null && !target.isFinishing() ? target : foregroundActivity.get());
+            } catch (IOException e) {
+                Log.d(TAG, "Resume account check failed, keeping the session: " + e.getMessage());
             }
         });
     }
     
+    /**
+     * How long a validation result stays fresh: the safety-net interval once pushes can reach
+     * this device for the user, the shorter unpushed interval until then
+     */
+    private long checkIntervalFor(String email) {
+        return email != null && FCMTokenManager.getInstance(context).isRegisteredFor(email)
+            ? SESSION_CHECK_INTERVAL : UNPUSHED_CHECK_INTERVAL;
+    }
+    
+    /**
+     * True if a verified, unexpired lease covers this user; kicks off a background
+     * renewal when the lease is missing or close to expiry. The lease only answers while
+     * pushes can reach this device, since a revocation within its window arrives by push.
+     */
+    private boolean hasValidLease(String email, long now) {
+        if (email == null) {
+            return false;
+        }
+        if (sessionLease.needsRenewal(email, now)) {
+            renewLeaseInBackground(email);
+        }
+        if (sessionLease.isValidFor(email, now) && FCMTokenManager.getInstance(context).isRegisteredFor(email)) {
+            metrics.increment(MetricsRegistry.SESSION_LEASE_HIT);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * The server acknowledged this device's FCM token for the user: pushes can now arrive and
+     * the token is the credential for a first lease, so ask for one right away
+     */
+    void onPushRegistered(String email) {
+        if (email == null || !email.equalsIgnoreCase(getCurrentUserEmail())) {
+            return;
+        }
+        nextLeaseRenewalAttempt = 0;
+        if (sessionLease.needsRenewal(email, System.currentTimeMillis())) {
+            renewLeaseInBackground(email);
+        }
+    }
+    
+    /**
+     * Renew the lease off the main thread; a refused renewal is treated as a failed validation
+     */
+    private void renewLeaseInBackground(String email) {
+        if (System.currentTimeMillis() < nextLeaseRenewalAttempt || !isNetworkAvailable()
+                || !leaseRenewalPending.compareAndSet(false, true)) {
+            return;
+        }
+        
+        executorService.execute(() -> renewLease(email));
+    }
+    
+    /**
+     * Renew the lease if it is close to expiry (blocking, called from SyncJobService so the
+     * lease stays fresh while the app is in the background)
+     */
+    public void renewLeaseIfNeeded() {
+        SessionState current = state;
+        String email = current.getEmail();
+        if (!current.isLoggedIn() || email == null) {
+            SyncJobService.cancel(context, SyncJobService.JOB_SESSION_RENEWAL);
+            return;
+        }
+        if (!sessionLease.needsRenewal(email, System.currentTimeMillis())
+                || System.currentTimeMillis() < nextLeaseRenewalAttempt
+                || !leaseRenewalPending.compareAndSet(false, true)) {
+            return;
+        }
+        renewLease(email);
+    }
+    
+    /**
+     * Renew now and apply the result; the caller must have claimed leaseRenewalPending
+     */
+    private void renewLease(String email) {
+        try {
+            SessionLease.RenewResult result = sessionLease.renew(email);
+            Log.d(TAG, "Lease renewal for " + email + ": " + result);
+            if (result == SessionLease.RenewResult.RENEWED) {
+                nextLeaseRenewalAttempt = 0;
+                recordValidation(email, true, System.currentTimeMillis());
+            } else if (result == SessionLease.RenewResult.UNSUPPORTED
+                    || result == SessionLease.RenewResult.UNAUTHORIZED) {
+                // No signing key, or no credential until the next login: fall back to probes
+                // and ask again much later (markSessionAsValid resets this after login)
+                nextLeaseRenewalAttempt = System.currentTimeMillis() + MAX_CHECK_INTERVAL;
+            } else if (result == SessionLease.RenewResult.ERROR) {
+                nextLeaseRenewalAttempt = System.currentTimeMillis() + LEASE_RETRY_INTERVAL;
+            } else {
+                recordValidation(email, false, System.currentTimeMillis());
+                handleInvalidSession(foregroundActivity.get());
+            }
+        } finally {
+            leaseRenewalPending.set(false);
+        }
+    }
+    
     /**
      * Handle invalid session - show dialog and redirect to login
      */
@@ -394,177 +899,210 @@ public class SessionManager {
                 .setCancelable(false)
                 .setPositiveButton("OK", (dialog, which) -> {
                     Log.d(TAG, "User clicked OK on logout dialog");
-                    clearUserSession();
-                    redirectToLogin(activity);
+                    logoutAndRedirect(activity);
                 })
                 .show();
         });
     }
     
     /**
-     * Handle offline session - show dialog and redirect to login
+     * Check if network is available (cached snapshot from ConnectivityMonitor, no IPC)
      */
-    private void handleOfflineSession(Activity activity) {
-        Log.d(TAG, "=== HANDLING OFFLINE SESSION ===");
-        Log.d(TAG, "Activity: " + (activity != null ? activity.getClass().getSimpleName() : "null"));
-        Log.d(TAG, "Activity finishing: " + (activity != null ? activity.isFinishing() : "null"));
-        
-        if (activity == null || activity.isFinishing()) {
-            Log.d(TAG, "Activity is null or finishing, skipping dialog");
-            return;
-        }
-        
-        Log.d(TAG, "Showing offline dialog");
-        activity.runOnUiThread(() -> {
-            new AlertDialog.Builder(activity)
-                .setTitle("You went offline")
-                .setMessage("No internet connection detected. Please check your network and try again.")
-                .setCancelable(false)
-                .setPositiveButton("OK", (dialog, which) -> {
-                    Log.d(TAG, "User clicked OK on offline dialog");
-                    clearUserSession();
-                    redirectToLogin(activity);
-                })
-                .show();
-        });
+    private boolean isNetworkAvailable() {
+        return ConnectivityMonitor.getInstance(context).isOnline();
     }
     
     /**
-     * Check if network is available
+     * Revalidate once connectivity returns, against whichever activity is in front at that time
      */
-    private boolean isNetworkAvailable() {
-        try {
-            android.net.ConnectivityManager connectivityManager = 
-                (android.net.ConnectivityManager) context.getSystemService(android.content.Context.CONNECTIVITY_SERVICE);
-            
-            if (connectivityManager != null) {
-                // Use modern API for Android 6.0+ (API 23+)
-                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-                    android.net.Network activeNetwork = connectivityManager.getActiveNetwork();
-                    if (activeNetwork != null) {
-                        android.net.NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(activeNetwork);
-                        return capabilities != null && (
-                            capabilities.hasTransport(android.net.NetworkCapabilities.TRANSPORT_WIFI) ||
-                            capabilities.hasTransport(android.net.NetworkCapabilities.TRANSPORT_CELLULAR) ||
-                            capabilities.hasTransport(android.net.NetworkCapabilities.TRANSPORT_ETHERNET)
-                        );
-                    }
-                } else {
-                    // Fallback for older Android versions
-                    android.net.NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
-                    return activeNetwork != null && activeNetwork.isConnected();
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking network availability: " + e.getMessage());
+    private void deferValidationUntilOnline(String email) {
+        if (!validationDeferred.compareAndSet(false, true)) {
+            return;
         }
-        return false;
+        ConnectivityMonitor.getInstance(context).runWhenOnline(() -> {
+            validationDeferred.set(false);
+            revalidateInBackground(foregroundActivity.get(), email);
+        });
     }
     
     /**
-     * Start periodic validation to check session every 30 seconds
+     * Start periodic validation (the safety net once pushed revocations are delivered).
+     * The interval adapts to measured latency and failures, see ValidationScheduler.
      */
     private void startPeriodicValidation() {
         validationRunnable = new Runnable() {
             @Override
             public void run() {
                 Log.d(TAG, "=== PERIODIC SESSION VALIDATION ===");
+                validationScheduler.onWakeup();
                 
-                // Only validate if user is active and logged in
-                if (isUserActive && isUserValid()) {
-                    // Check if user is still valid in database
-                    SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-                    String email = prefs.getString("current_user_email", null);
+                // Database work runs off the main thread; the next tick is scheduled when it finishes
+                executorService.execute(() -> {
+                    // Background check: only sent while the session budget is above the reserve
+                    // kept for user-facing checks, otherwise it waits for the refill
+                    long budgetWait = 0;
                     
-                    if (email != null) {
-                        // Check network first
-                        if (!isNetworkAvailable()) {
+                    // Only validate if user is active and logged in
+                    String email = state.getEmail();
+                    if (isUserActive && isLoggedIn() && email != null) {
+                        if (hasValidLease(email, System.currentTimeMillis())) {
+                            Log.d(TAG, "Periodic validation: covered by session lease");
+                        } else if (!isNetworkAvailable()) {
                             Log.d(TAG, "Periodic validation: Device offline detected");
-                            // Don't show dialog here, let the next activity resume handle it
-                            return;
-                        }
-                        
-                        // Check database
-                        boolean isValid = checkUserExistsInDatabase(email);
-                        if (!isValid) {
+                            // Back off like a failed check instead of waking every interval
+                            // with no link; the reconnect check resets the backoff
+                            validationScheduler.recordResult(0, false);
+                            deferValidationUntilOnline(email);
+                        } else if ((budgetWait = NetworkGovernor.getInstance().millisUntilAvailable(
+                                NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.LOW)) > 0) {
+                            Log.d(TAG, "Periodic validation: session budget low, waiting " + budgetWait + "ms");
+                        } else if (Boolean.FALSE.equals(checkUser(email))) {
                             Log.d(TAG, "Periodic validation: User not found in database");
-                            // Clear the cache to force validation on next activity
-                            prefs.edit()
-                                .putBoolean("session_is_valid_" + email, false)
-                                .putLong("session_last_check_" + email, 0)
-                                .apply();
+                            // Keep the invalid result so the next activity acts on it
+                            recordValidation(email, false, System.currentTimeMillis());
                         }
                     }
-                }
-                
-                // Schedule next validation in 3 seconds
-                validationHandler.postDelayed(this, 3000);
+                    
+                    scheduleNextValidation(budgetWait);
+                });
             }
         };
         
-        // Start the first validation after 3 seconds
-        validationHandler.postDelayed(validationRunnable, 3000);
+        // Start the first safety-net validation after one interval
+        validationHandler.postDelayed(validationRunnable, validationScheduler.nextDelay(checkIntervalFor(state.getEmail())));
+    }
+    
+    /**
+     * Schedule the next safety-net validation, at least minDelay from now, unless the app is
+     * in the background
+     */
+    private void scheduleNextValidation(long minDelay) {
+        if (validationScheduler.isParked()) {
+            Log.d(TAG, "Periodic validation parked (app in background)");
+            return;
+        }
+        long delay = Math.max(validationScheduler.nextDelay(checkIntervalFor(state.getEmail())), minDelay);
+        Log.d(TAG, "Next periodic validation in " + delay + "ms");
+        validationHandler.removeCallbacks(validationRunnable);
+        validationHandler.postDelayed(validationRunnable, delay);
+    }
+    
+    /**
+     * Remember the activity in the foreground so pushed revocations can show the logout dialog
+     */
+    public void attachForegroundActivity(Activity activity) {
+        foregroundActivity = new java.lang.ref.WeakReference<>(activity);
+    }
+    
+    /**
+     * Forget the foreground activity (call from onPause)
+     */
+    public void detachForegroundActivity(Activity activity) {
+        if (foregroundActivity.get() == activity) {
+            foregroundActivity = new java.lang.ref.WeakReference<>(null);
+        }
+    }
+    
+    /**
+     * Handle a server-pushed invalidation event (account deleted, archived, force logout, changed).
+     * Only this path and the safety-net check hit the database for session validation.
+     */
+    public void onServerInvalidation(String targetEmail, String type) {
+        String email = getCurrentUserEmail();
+        if (email == null || (targetEmail != null && !targetEmail.isEmpty() && !targetEmail.equalsIgnoreCase(email))) {
+            Log.d(TAG, "Ignoring invalidation for other user: " + targetEmail);
+            return;
+        }
+        
+        Log.d(TAG, "Server invalidation received: " + type + " for " + email);
+        
+        // Drop the cached result, lease and cached user rows so the next check cannot reuse them
+        sessionLease.clear();
+        clearSessionCache();
+        DatabaseApiClient.getInstance().getSelectCache().invalidate("community_users");
+        
+        // Forced logout needs no confirmation: clear now, even with nothing on screen, and
+        // tell the user if an activity is in front
+        if (SessionInvalidationChannel.TYPE_FORCE_LOGOUT.equals(type)) {
+            executorService.execute(() -> {
+                clearUserSession();
+                mainHandler.post(() -> forceLogout(foregroundActivity.get(), "You have been signed out. Please log in again."));
+            });
+            return;
+        }
+        
+        // Confirm with one database check, then apply the result immediately
+        executorService.execute(() -> confirmServerInvalidation(email));
+    }
+    
+    /**
+     * Check the user after a pushed invalidation. A throttled check is retried once the budget
+     * allows, so the push is never dropped or answered from the cleared cache.
+     */
+    private void confirmServerInvalidation(String email) {
+        if (!email.equals(getCurrentUserEmail())) {
+            return;
+        }
+        Boolean exists = checkUser(email);
+        if (exists == null) {
+            long wait = Math.max(NetworkGovernor.getInstance().millisUntilAvailable(
+                NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.HIGH), 1000);
+            Log.d(TAG, "Pushed invalidation check throttled, retrying in " + wait + "ms");
+            validationHandler.postDelayed(() -> executorService.execute(() -> confirmServerInvalidation(email)), wait);
+            return;
+        }
+        recordValidation(email, exists, System.currentTimeMillis());
+        
+        if (!exists) {
+            Log.d(TAG, "Pushed invalidation confirmed, logging out");
+            handleInvalidSession(foregroundActivity.get());
+        }
     }
     
     /**
      * Stop periodic validation
      */
     public void stopPeriodicValidation() {
+        validationScheduler.park();
         if (validationHandler != null && validationRunnable != null) {
             validationHandler.removeCallbacks(validationRunnable);
         }
     }
     
     /**
-     * Clear user session data
+     * Clear user session data (blocks up to LOGOUT_PURGE_DEADLINE; call off the main thread)
      */
     public void clearUserSession() {
         try {
-            SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-            String currentUserEmail = prefs.getString("current_user_email", null);
+            String currentUserEmail = state.getEmail();
             
-            // Clear user-specific data
+            // Drop the in-memory snapshot and any pending write-behind first, so nothing
+            // rewrites the user's partition prefs after the partition is dropped
+            synchronized (this) {
+                mainHandler.removeCallbacks(persistRunnable);
+                persistScheduled.set(false);
+                state = SessionState.LOGGED_OUT;
+                persistedState = SessionState.LOGGED_OUT;
+            }
+            
+            // Clear user-specific data: the partition (session state, probe versions, cached
+            // selects) and the remaining local stores in parallel, FCM clear queued durably
             if (currentUserEmail != null) {
-                Log.d(TAG, "=== SESSION CLEARING DEBUG START ===");
-                Log.d(TAG, "Current user email: " + currentUserEmail);
-                
-                Log.d(TAG, "Step 1: Clearing AddedFoodManager data");
-                AddedFoodManager.clearUserData(context, currentUserEmail);
-                Log.d(TAG, "Step 1.1: AddedFoodManager cleared");
-                
-                Log.d(TAG, "Step 2: Clearing CalorieTracker data");
-                CalorieTracker.clearUserData(context, currentUserEmail);
-                Log.d(TAG, "Step 2.1: CalorieTracker cleared");
-                
-                Log.d(TAG, "Step 3: Clearing GeminiCacheManager data");
-                GeminiCacheManager.clearUserData(context, currentUserEmail);
-                Log.d(TAG, "Step 3.1: GeminiCacheManager cleared");
+                Log.d(TAG, "=== SESSION CLEARING START === " + currentUserEmail);
                 
-                Log.d(TAG, "Step 4: Clearing FavoritesManager data");
-                FavoritesManager.clearUserData(context, currentUserEmail);
-                Log.d(TAG, "Step 4.1: FavoritesManager cleared");
+                sessionLease.clear();
+                HttpClientProvider.clearCookies();
+                SyncJobService.cancel(context, SyncJobService.JOB_SESSION_RENEWAL);
+                lastLogoutReport = LogoutPurgePipeline.forUser(context, currentUserEmail)
+                    .run(LOGOUT_PURGE_DEADLINE);
                 
-                Log.d(TAG, "Step 5: Creating FCMTokenManager instance");
-                FCMTokenManager fcmManager = new FCMTokenManager(context);
-                Log.d(TAG, "Step 5.1: FCMTokenManager created");
-                
-                Log.d(TAG, "Step 6: Calling clearFCMTokenForUser");
-                fcmManager.clearFCMTokenForUser(currentUserEmail);
-                Log.d(TAG, "Step 6.1: clearFCMTokenForUser call completed");
-                
-                Log.d(TAG, "Step 7: Clearing CommunityUserManager cache");
-                CommunityUserManager userManager = new CommunityUserManager(context);
-                userManager.clearUserCache(currentUserEmail);
-                Log.d(TAG, "Step 7.1: CommunityUserManager cache cleared");
-                
-                Log.d(TAG, "SUCCESS: Cleared user-specific data for: " + currentUserEmail);
-                Log.d(TAG, "=== SESSION CLEARING DEBUG END ===");
+                Log.d(TAG, "=== SESSION CLEARING END === " + lastLogoutReport);
             }
             
             // Clear all user data from main preferences
             SharedPreferences.Editor editor = prefs.edit();
             editor.clear();
-            editor.putBoolean("is_logged_in", false);
+            editor.putBoolean(KEY_IS_LOGGED_IN, false);
             editor.apply();
             
             Log.d(TAG, "User session cleared");
@@ -574,6 +1112,38 @@ public class SessionManager {
         }
     }
     
+    /**
+     * Session and FCM metrics as JSON (counters, latency percentiles, cache hit ratio)
+     */
+    public String exportMetrics() {
+        return metrics.exportJson();
+    }
+    
+    /**
+     * Per-endpoint request phase timings and recent slow requests, for slow-login reports
+     */
+    public String exportNetworkTimings() {
+        return RequestTimingRecorder.getInstance().exportJson().toString();
+    }
+    
+    /**
+     * Per-step timings of the most recent logout purge (null if none yet)
+     */
+    public LogoutPurgePipeline.Report getLastLogoutReport() {
+        return lastLogoutReport;
+    }
+    
+    /**
+     * Clear the session in the background (the purge may wait up to LOGOUT_PURGE_DEADLINE for
+     * local stores), then redirect to login on the main thread
+     */
+    private void logoutAndRedirect(Activity activity) {
+        executorService.execute(() -> {
+            clearUserSession();
+            mainHandler.post(() -> redirectToLogin(activity));
+        });
+    }
+    
     /**
      * Redirect to login activity
      */
@@ -601,10 +1171,7 @@ public class SessionManager {
                 .setTitle("Account Issue")
                 .setMessage(message)
                 .setCancelable(false)
-                .setPositiveButton("OK", (dialog, which) -> {
-                    clearUserSession();
-                    redirectToLogin(activity);
-                })
+                .setPositiveButton("OK", (dialog, which) -> logoutAndRedirect(activity))
                 .show();
         });
     }
@@ -613,18 +1180,14 @@ public class SessionManager {
      * Check if user is logged in (basic check)
      */
     public boolean isLoggedIn() {
-        SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-        String email = prefs.getString("current_user_email", null);
-        boolean isLoggedIn = prefs.getBoolean("is_logged_in", false);
-        return email != null && isLoggedIn;
+        return state.isLoggedIn();
     }
     
     /**
      * Get current user email
      */
     public String getCurrentUserEmail() {
-        SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-        return prefs.getString("current_user_email", null);
+        return state.getEmail();
     }
     
     /**
@@ -635,13 +1198,7 @@ public class SessionManager {
         String email = getCurrentUserEmail();
         if (email != null) {
             Log.d(TAG, "Force refreshing session validation for: " + email);
-            boolean isValid = checkUserExistsInDatabase(email);
-            
-            SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-            prefs.edit()
-                .putBoolean("session_is_valid_" + email, isValid)
-                .putLong("session_last_check_" + email, System.currentTimeMillis())
-                .apply();
+            checkAndRecord(email);
         }
     }
     
@@ -649,14 +1206,17 @@ public class SessionManager {
      * Mark session as valid (useful after successful signup or login)
      */
     public void markSessionAsValid() {
+        // Login may have just written the email; pick it up before recording
+        reloadLoginState();
         String email = getCurrentUserEmail();
         if (email != null) {
             Log.d(TAG, "Marking session as valid for: " + email);
-            SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-            prefs.edit()
-                .putBoolean("session_is_valid_" + email, true)
-                .putLong("session_last_check_" + email, System.currentTimeMillis())
-                .apply();
+            recordValidation(email, true, System.currentTimeMillis());
+            
+            // Fetch a lease for the new session so later checks can stay offline
+            nextLeaseRenewalAttempt = 0;
+            renewLeaseInBackground(email);
+            SyncJobService.scheduleSessionRenewal(context);
         }
     }
     
@@ -666,11 +1226,7 @@ public class SessionManager {
     public void clearSessionCache() {
         String email = getCurrentUserEmail();
         if (email != null) {
-            SharedPreferences prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
-            prefs.edit()
-                .remove("session_is_valid_" + email)
-                .remove("session_last_check_" + email)
-                .apply();
+            forgetValidation(email);
             Log.d(TAG, "Session cache cleared for: " + email);
         }
     }
@@ -0,0 +1,164 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Lightweight session check against DatabaseAPI.php?action=session_probe.
+ * Sends the last known account version in If-None-Match; the server answers 304 with
+ * no body when status/name/email are unchanged, so a routine check costs a few hundred bytes
+ * instead of a full community_users row. The server only answers a caller with a session
+ * credential for that email (the current lease, or the acknowledged FCM token, see
+ * SessionLease.getCredential). Without one, or with one the server already refused, the probe
+ * is not sent, so the caller's status select is the only request. The version is kept in the
+ * user's partition prefs, so logout drops it with the partition.
+ */
+public class SessionProbe {
+    private static final String TAG = "SessionProbe";
+    private static final String PREFS_NAME = "session_probe";
+    private static final String KEY_VERSION = "version";
+    private static final String PROBE_URL = Constants.API_BASE_URL + "api/DatabaseAPI.php?action=session_probe";
+
+    public enum Result {
+        VALID,       // user exists and is active
+        INVALID,     // user deleted or archived
+        UNSUPPORTED, // server without the probe action
+        UNAUTHORIZED, // no credential the server accepts for this email
+        THROTTLED,   // not sent: the session budget is spent (says nothing about the user)
+        ERROR        // network or server error
+    }
+
+    private final Context context;
+    private final OkHttpClient httpClient;
+    private final SessionLease sessionLease;
+    private final String probeUrl;
+
+    // Last credential answered with 401; not retried until the credential changes
+    private volatile String refusedCredential;
+
+    // Counters for measuring probe cost
+    private final AtomicLong probeCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public SessionProbe(Context context, SessionLease sessionLease) {
+        this(context, sessionLease, HttpClientProvider.getFastClient(), PROBE_URL);
+    }
+
+    SessionProbe(Context context, SessionLease sessionLease, OkHttpClient httpClient, String probeUrl) {
+        this.context = context.getApplicationContext();
+        this.httpClient = httpClient;
+        this.sessionLease = sessionLease;
+        this.probeUrl = probeUrl;
+    }
+
+    /**
+     * Probe the server for the user's session state (blocking, call off the main thread)
+     */
+    public Result probe(String email) {
+        String credential = sessionLease.getCredential(email);
+        if (credential == null || credential.equals(refusedCredential)) {
+            // The server would answer 401; leave the check to the status select
+            return Result.UNAUTHORIZED;
+        }
+
+        probeCount.incrementAndGet();
+        SharedPreferences prefs = prefsFor(email);
+        String cachedVersion = prefs.getString(KEY_VERSION, null);
+
+        try {
+            JSONObject requestData = new JSONObject();
+            requestData.put("email", email);
+
+            RequestBody body = RequestBody.create(
+                requestData.toString(),
+                MediaType.parse("application/json; charset=utf-8")
+            );
+
+            Request.Builder builder = new Request.Builder()
+                .url(probeUrl)
+                .post(body)
+                .addHeader("Content-Type", "application/json")
+                .tag(NetworkGovernor.CallClass.class, NetworkGovernor.CallClass.SESSION);
+            if (cachedVersion != null) {
+                builder.addHeader("If-None-Match", cachedVersion);
+            }
+            builder.addHeader("Authorization", credential);
+
+            // Hedged after the probe's p95 latency so one stalled connection doesn't stall validation
+            try (Response response = HedgedCall.execute(httpClient, builder.build())) {
+                if (response.code() == 304) {
+                    notModifiedCount.incrementAndGet();
+                    Log.d(TAG, "Session unchanged for: " + email);
+                    return Result.VALID;
+                }
+
+                if (response.code() == 401) {
+                    Log.w(TAG, "Session probe refused, no accepted credential for: " + email);
+                    refusedCredential = credential;
+                    return Result.UNAUTHORIZED;
+                }
+
+                if (!response.isSuccessful()) {
+                    Log.w(TAG, "Session probe failed. HTTP " + response.code());
+                    return Result.ERROR;
+                }
+
+                String responseBody = response.body() != null ? response.body().string() : "";
+                bytesReceived.addAndGet(responseBody.length());
+                JSONObject json = new JSONObject(responseBody);
+
+                // Older servers fall through to the default action and have no "exists" field
+                if (!json.has("exists")) {
+                    return json.optBoolean("success", false) ? Result.UNSUPPORTED : Result.ERROR;
+                }
+
+                if (!json.optBoolean("exists", false)) {
+                    Log.d(TAG, "User missing or archived: " + email);
+                    prefs.edit().remove(KEY_VERSION).apply();
+                    return Result.INVALID;
+                }
+
+                // Only remember versions for valid sessions so a 304 always means valid
+                String version = json.optString("version", null);
+                if (version != null && !version.equals(cachedVersion)) {
+                    prefs.edit().putString(KEY_VERSION, version).apply();
+                }
+                return Result.VALID;
+            }
+        } catch (NetworkGovernor.BudgetExceededException e) {
+            Log.w(TAG, "Session probe not sent: " + e.getMessage());
+            return Result.THROTTLED;
+        } catch (Exception e) {
+            Log.w(TAG, "Session probe error: " + e.getMessage());
+            return e instanceof org.json.JSONException ? Result.UNSUPPORTED : Result.ERROR;
+        }
+    }
+
+    private SharedPreferences prefsFor(String email) {
+        return context.getSharedPreferences(UserPartition.preferencesName(email, PREFS_NAME), Context.MODE_PRIVATE);
+    }
+
+    public long getProbeCount() {
+        return probeCount.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+}
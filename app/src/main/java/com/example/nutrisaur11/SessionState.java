@@ -0,0 +1,117 @@
+package com.example.nutrisaur11;
+
+/**
+ * Immutable snapshot of the current session as seen by SessionManager.
+ * A new instance is published on every change, so readers on any thread
+ * get a consistent view without locking or touching SharedPreferences.
+ */
+public final class SessionState {
+    // lastCheck of a session with no validation result (never checked, or the result was forgotten)
+    public static final long NEVER_CHECKED = 0;
+
+    public static final SessionState LOGGED_OUT = new SessionState(null, false, false, NEVER_CHECKED, 0, 0);
+
+    private final String email;
+    private final boolean loggedIn;
+    private final boolean valid;
+    private final long lastCheck;
+    private final long lastConnectionTime;
+    private final long lastConnectionDuration;
+
+    public SessionState(String email, boolean loggedIn, boolean valid, long lastCheck,
+                        long lastConnectionTime, long lastConnectionDuration) {
+        this.email = email;
+        this.loggedIn = loggedIn;
+        this.valid = valid;
+        this.lastCheck = lastCheck;
+        this.lastConnectionTime = lastConnectionTime;
+        this.lastConnectionDuration = lastConnectionDuration;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Logged in with a known email (same rule as the old prefs check)
+     */
+    public boolean isLoggedIn() {
+        return loggedIn && email != null;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public long getLastCheck() {
+        return lastCheck;
+    }
+
+    public boolean isChecked() {
+        return lastCheck != NEVER_CHECKED;
+    }
+
+    public long getLastConnectionTime() {
+        return lastConnectionTime;
+    }
+
+    public long getLastConnectionDuration() {
+        return lastConnectionDuration;
+    }
+
+    /**
+     * True if the last database check said valid and is younger than the interval
+     */
+    public boolean hasRecentValidSession(long now, long interval) {
+        return valid && now - lastCheck < interval;
+    }
+
+    public SessionState withLogin(String email, boolean loggedIn) {
+        return new SessionState(email, loggedIn, valid, lastCheck, lastConnectionTime, lastConnectionDuration);
+    }
+
+    public SessionState withValidation(boolean valid, long checkTime) {
+        return new SessionState(email, loggedIn, valid, checkTime, lastConnectionTime, lastConnectionDuration);
+    }
+
+    /**
+     * Forget the validation result; the session reads as never checked
+     */
+    public SessionState withoutValidation() {
+        return new SessionState(email, loggedIn, false, NEVER_CHECKED, lastConnectionTime, lastConnectionDuration);
+    }
+
+    public SessionState withConnection(long connectionTime, long connectionDuration) {
+        return new SessionState(email, loggedIn, valid, lastCheck, connectionTime, connectionDuration);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SessionState)) return false;
+        SessionState other = (SessionState) o;
+        return loggedIn == other.loggedIn
+            && valid == other.valid
+            && lastCheck == other.lastCheck
+            && lastConnectionTime == other.lastConnectionTime
+            && lastConnectionDuration == other.lastConnectionDuration
+            && (email == null ? other.email == null : email.equals(other.email));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = email != null ? email.hashCode() : 0;
+        result = 31 * result + (loggedIn ? 1 : 0);
+        result = 31 * result + (valid ? 1 : 0);
+        result = 31 * result + (int) (lastCheck ^ (lastCheck >>> 32));
+        result = 31 * result + (int) (lastConnectionTime ^ (lastConnectionTime >>> 32));
+        result = 31 * result + (int) (lastConnectionDuration ^ (lastConnectionDuration >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionState{email=" + email + ", loggedIn=" + loggedIn + ", valid=" + valid
+            + ", lastCheck=" + lastCheck + ", lastConnectionDuration=" + lastConnectionDuration + "}";
+    }
+}
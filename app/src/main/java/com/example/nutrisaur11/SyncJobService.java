@@ -0,0 +1,171 @@
+package com.example.nutrisaur11;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background sync on the platform JobScheduler, so token sync, queued token writes and session
+ * lease renewal survive process death and are batched with other wakeups by the system.
+ * Each kind of work has a fixed job id, so scheduling it again replaces rather than duplicates it.
+ *
+ * Declared in AndroidManifest.xml with android.permission.BIND_JOB_SERVICE.
+ */
+public class SyncJobService extends JobService {
+    private static final String TAG = "SyncJobService";
+
+    public static final int JOB_TOKEN_SYNC = 1101;
+    public static final int JOB_OUTBOX_DRAIN = 1102;
+    public static final int JOB_SESSION_RENEWAL = 1103;
+
+    private static final long TOKEN_SYNC_PERIOD = TimeUnit.HOURS.toMillis(24);
+    private static final long SESSION_RENEWAL_PERIOD = TimeUnit.HOURS.toMillis(1);
+    private static final long OUTBOX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+    // Longest a queued token write waits for an unmetered network before it goes out on any link
+    private static final long CLEAR_MAX_DEFERRAL = TimeUnit.MINUTES.toMillis(15);
+    private static final long REGISTER_MAX_DEFERRAL = TimeUnit.HOURS.toMillis(1);
+    private static final long WORK_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
+    private static final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Daily token sync: unmetered network only, while the device is idle and the battery isn't
+     * low (the app also syncs on start, so a day without Wi-Fi costs nothing)
+     */
+    public static void scheduleTokenSync(Context context) {
+        JobInfo.Builder builder = newJob(context, JOB_TOKEN_SYNC)
+            .setPeriodic(TOKEN_SYNC_PERIOD)
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+            .setRequiresDeviceIdle(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setRequiresBatteryNotLow(true);
+        }
+        scheduleUnique(context, builder.build(), true);
+    }
+
+    /**
+     * Drain the token outbox on an unmetered network once at least delayMillis has passed.
+     * Queued writes must not wait for Wi-Fi indefinitely (a device may only ever be on cellular),
+     * so the job also runs on whatever network there is after CLEAR_MAX_DEFERRAL with a pending
+     * clear (logout), or REGISTER_MAX_DEFERRAL otherwise. Offline at that point, the drain
+     * waits for the next connection itself.
+     */
+    public static void scheduleOutboxDrain(Context context, long delayMillis, boolean clearPending) {
+        long delay = Math.max(0, delayMillis);
+        JobInfo job = newJob(context, JOB_OUTBOX_DRAIN)
+            .setMinimumLatency(delay)
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+            .setOverrideDeadline(delay + (clearPending ? CLEAR_MAX_DEFERRAL : REGISTER_MAX_DEFERRAL))
+            .setBackoffCriteria(OUTBOX_BACKOFF, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+            .build();
+        // A newer drain request replaces the pending one
+        scheduleUnique(context, job, false);
+    }
+
+    /**
+     * Hourly lease check while logged in; renewal itself only hits the network near expiry
+     */
+    public static void scheduleSessionRenewal(Context context) {
+        JobInfo job = newJob(context, JOB_SESSION_RENEWAL)
+            .setPeriodic(SESSION_RENEWAL_PERIOD)
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+            .build();
+        scheduleUnique(context, job, true);
+    }
+
+    public static void cancel(Context context, int jobId) {
+        JobScheduler scheduler = getScheduler(context);
+        if (scheduler != null) {
+            scheduler.cancel(jobId);
+        }
+    }
+
+    private static JobInfo.Builder newJob(Context context, int jobId) {
+        return new JobInfo.Builder(jobId, new ComponentName(context.getApplicationContext(), SyncJobService.class));
+    }
+
+    /**
+     * Schedule a job by id; with keepExisting an already pending job is left alone (periodic jobs
+     * keep their phase instead of being pushed back on every app start)
+     */
+    private static void scheduleUnique(Context context, JobInfo job, boolean keepExisting) {
+        JobScheduler scheduler = getScheduler(context);
+        if (scheduler == null) {
+            return;
+        }
+        if (keepExisting && isPending(scheduler, job.getId())) {
+            return;
+        }
+        try {
+            int result = scheduler.schedule(job);
+            Log.d(TAG, "Scheduled job " + job.getId() + (result == JobScheduler.RESULT_SUCCESS ? "" : " (failed)"));
+        } catch (Exception e) {
+            // e.g. the service isn't declared in the manifest
+            Log.e(TAG, "Error scheduling job " + job.getId() + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isPending(JobScheduler scheduler, int jobId) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return scheduler.getPendingJob(jobId) != null;
+        }
+        for (JobInfo pending : scheduler.getAllPendingJobs()) {
+            if (pending.getId() == jobId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static JobScheduler getScheduler(Context context) {
+        return (JobScheduler) context.getApplicationContext().getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        Log.d(TAG, "Starting job " + params.getJobId());
+        Context context = getApplicationContext();
+
+        jobExecutor.execute(() -> {
+            boolean needsReschedule = false;
+            try {
+                switch (params.getJobId()) {
+                    case JOB_TOKEN_SYNC:
+                        needsReschedule = !FCMTokenManager.getInstance(context).syncNow(WORK_TIMEOUT);
+                        break;
+                    case JOB_OUTBOX_DRAIN:
+                        FCMTokenOutbox.getInstance(context).drain().get(WORK_TIMEOUT, TimeUnit.MILLISECONDS);
+                        break;
+                    case JOB_SESSION_RENEWAL:
+                        SessionManager.getInstance(context).renewLeaseIfNeeded();
+                        break;
+                    default:
+                        Log.w(TAG, "Unknown job " + params.getJobId());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Job " + params.getJobId() + " failed: " + e.getMessage());
+                needsReschedule = true;
+            }
+            jobFinished(params, needsReschedule);
+        });
+
+        // Work continues on jobExecutor
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Constraints no longer met; the work is idempotent, so just try again later
+        Log.d(TAG, "Stopping job " + params.getJobId());
+        return true;
+    }
+}
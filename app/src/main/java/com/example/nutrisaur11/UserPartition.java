@@ -0,0 +1,275 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Per-user local storage partition, keyed by a hash of the email:
+ * files/users/<key>/ (files and databases), cache/users/<key>/ and shared prefs named
+ * "user_<key>_<name>". Stores that keep a user's data here are purged on logout by dropping
+ * the partition: the directories are renamed out of the way (constant time, whatever the
+ * amount of data) and unlinked on a background thread. Login and account switching just
+ * activate another partition.
+ *
+ * Stores open their databases on getDatabaseFile(name).getPath() and register the open
+ * helper with register(), so it is closed before its files go away. In-memory caches of the
+ * user's data register a handle that clears them. Session state and probe versions live in
+ * the partition's prefs and the select cache is registered as a handle; the food, calorie,
+ * favorites and Gemini stores don't use a partition yet and are still cleared one by one
+ * (see LogoutPurgePipeline.forUser). The token outbox stays shared, since a logout's token
+ * clear has to outlive the partition.
+ */
+public final class UserPartition {
+    private static final String TAG = "UserPartition";
+    private static final String ROOT_DIR = "users";
+    private static final String TRASH_PREFIX = ".trash-";
+    private static final String PREFS_PREFIX = "user_";
+    private static final int MAX_TRASH_RENAMES = 3;
+
+    private static final ExecutorService unlinkExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-partition-unlink");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static UserPartition active;
+    private static boolean trashSwept;
+
+    private final Context context;
+    private final String key;
+    private final Set<Closeable> handles = new LinkedHashSet<>();
+
+    private UserPartition(Context context, String key) {
+        this.context = context;
+        this.key = key;
+    }
+
+    /**
+     * Make the user's partition the active one (login or account switch); cheap, no I/O
+     * beyond closing the previous partition's registered handles
+     */
+    public static synchronized UserPartition activate(Context context, String email) {
+        String key = keyFor(email);
+        if (active != null && active.key.equals(key)) {
+            return active;
+        }
+        if (active != null) {
+            active.closeHandles();
+        }
+        active = new UserPartition(context.getApplicationContext(), key);
+        Log.d(TAG, "Activated partition " + key);
+
+        if (!trashSwept) {
+            // Finish unlinking partitions dropped before the process last died
+            trashSwept = true;
+            sweepTrash(active.context);
+        }
+        return active;
+    }
+
+    /**
+     * Active partition, or null while logged out
+     */
+    public static synchronized UserPartition current() {
+        return active;
+    }
+
+    /**
+     * Drop a user's partition (blocking only for the renames, the unlink runs in the background)
+     *
+     * @return time taken in ms
+     */
+    public static long drop(Context context, String email) {
+        long startTime = System.currentTimeMillis();
+        Context appContext = context.getApplicationContext();
+        String key = keyFor(email);
+
+        synchronized (UserPartition.class) {
+            if (active != null && active.key.equals(key)) {
+                active.closeHandles();
+                active = null;
+            }
+        }
+
+        long stamp = System.nanoTime();
+        List<File> trash = new ArrayList<>();
+        moveToTrash(new File(appContext.getFilesDir(), ROOT_DIR), key, stamp, trash);
+        moveToTrash(new File(appContext.getCacheDir(), ROOT_DIR), key, stamp, trash);
+        deletePreferences(appContext, key);
+
+        long duration = System.currentTimeMillis() - startTime;
+        MetricsRegistry.getInstance().recordLatency(MetricsRegistry.STORAGE_PARTITION_DROP, duration);
+        Log.d(TAG, "Dropped partition " + key + " in " + duration + "ms");
+
+        if (!trash.isEmpty()) {
+            unlinkExecutor.execute(() -> unlink(trash));
+        }
+        return duration;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public File getFilesDir() {
+        return ensureDir(new File(new File(new File(context.getFilesDir(), ROOT_DIR), key), "files"));
+    }
+
+    /**
+     * Path for a per-user database; pass getPath() as the SQLiteOpenHelper name
+     */
+    public File getDatabaseFile(String name) {
+        File dir = ensureDir(new File(new File(new File(context.getFilesDir(), ROOT_DIR), key), "databases"));
+        return new File(dir, name);
+    }
+
+    public File getCacheDir() {
+        return ensureDir(new File(new File(context.getCacheDir(), ROOT_DIR), key));
+    }
+
+    /**
+     * Name for per-user SharedPreferences; removed with the partition
+     */
+    public String getPreferencesName(String name) {
+        return PREFS_PREFIX + key + "_" + name;
+    }
+
+    /**
+     * Name of a user's per-partition SharedPreferences, without activating the partition
+     */
+    public static String preferencesName(String email, String name) {
+        return PREFS_PREFIX + keyFor(email) + "_" + name;
+    }
+
+    /**
+     * Track an open handle (e.g. a SQLiteOpenHelper) to close when the partition is deactivated;
+     * registering the same handle again is a no-op
+     */
+    public <T extends Closeable> T register(T handle) {
+        synchronized (handles) {
+            handles.add(handle);
+        }
+        return handle;
+    }
+
+    static String keyFor(String email) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(email.trim().toLowerCase(Locale.US).getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i] & 0xFF));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    private void closeHandles() {
+        synchronized (handles) {
+            for (Closeable handle : handles) {
+                try {
+                    handle.close();
+                } catch (Exception e) {
+                    Log.w(TAG, "Error closing partition handle: " + e.getMessage());
+                }
+            }
+            handles.clear();
+        }
+    }
+
+    private static File ensureDir(File dir) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "Could not create " + dir);
+        }
+        return dir;
+    }
+
+    private static void moveToTrash(File root, String key, long stamp, List<File> trash) {
+        File dir = new File(root, key);
+        if (!dir.exists()) {
+            return;
+        }
+        // Never unlink the live path: a login right after the drop reuses it
+        for (int attempt = 0; attempt < MAX_TRASH_RENAMES; attempt++) {
+            File target = new File(root, TRASH_PREFIX + key + "-" + stamp + "-" + attempt);
+            if (!target.exists() && dir.renameTo(target)) {
+                trash.add(target);
+                return;
+            }
+        }
+        Log.e(TAG, "Could not move " + dir + " to trash, leaving it in place");
+    }
+
+    private static void deletePreferences(Context context, String key) {
+        File prefsDir = new File(context.getApplicationInfo().dataDir, "shared_prefs");
+        String prefix = PREFS_PREFIX + key + "_";
+        File[] files = prefsDir.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".xml"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName().substring(0, file.getName().length() - ".xml".length());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                context.deleteSharedPreferences(name);
+            } else {
+                // Clear the in-memory copy too, then remove the file
+                context.getSharedPreferences(name, Context.MODE_PRIVATE).edit().clear().commit();
+                if (!file.delete()) {
+                    Log.w(TAG, "Could not delete " + file);
+                }
+            }
+        }
+    }
+
+    private static void sweepTrash(Context context) {
+        List<File> trash = new ArrayList<>();
+        for (File root : new File[]{new File(context.getFilesDir(), ROOT_DIR), new File(context.getCacheDir(), ROOT_DIR)}) {
+            File[] leftovers = root.listFiles((dir, name) -> name.startsWith(TRASH_PREFIX));
+            if (leftovers != null) {
+                for (File leftover : leftovers) {
+                    trash.add(leftover);
+                }
+            }
+        }
+        if (!trash.isEmpty()) {
+            unlinkExecutor.execute(() -> unlink(trash));
+        }
+    }
+
+    private static void unlink(List<File> trash) {
+        long startTime = System.currentTimeMillis();
+        for (File dir : trash) {
+            deleteRecursively(dir);
+        }
+        long duration = System.currentTimeMillis() - startTime;
+        MetricsRegistry.getInstance().recordLatency(MetricsRegistry.STORAGE_PARTITION_UNLINK, duration);
+        Log.d(TAG, "Unlinked " + trash.size() + " dropped partition dirs in " + duration + "ms");
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete() && file.exists()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.nutrisaur11;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Process-wide access to the user preferences database for hot lookups. One
+ * UserPreferencesDbHelper is kept open for the life of the process, the table schema is
+ * read once and cached, and frequent lookups use precompiled statements instead of building
+ * a query per call.
+ *
+ * The journal mode is left as is: other code still opens its own UserPreferencesDbHelper on
+ * the same file, and switching it to WAL from here would flip the mode under those
+ * connections.
+ */
+public final class UserPreferencesStore {
+    private static final String TAG = "UserPreferencesStore";
+
+    private static UserPreferencesStore instance;
+
+    private final UserPreferencesDbHelper dbHelper;
+
+    // Schema cache: null until first use; the helper upgrades the schema on open, so it's fixed per process
+    private Set<String> columns;
+    private SQLiteStatement barangayByEmail;
+
+    private UserPreferencesStore(Context context) {
+        this.dbHelper = new UserPreferencesDbHelper(context.getApplicationContext());
+    }
+
+    public static synchronized UserPreferencesStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new UserPreferencesStore(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Columns of the preferences table, empty if the table doesn't exist (read once per process)
+     */
+    public synchronized Set<String> getColumns() {
+        if (columns == null) {
+            columns = readColumns(dbHelper.getReadableDatabase());
+        }
+        return columns;
+    }
+
+    /**
+     * Stored barangay for a user, or "" if the user, table or column is missing
+     * (blocking, call off the main thread)
+     */
+    public String getBarangay(String userEmail) {
+        if (!getColumns().contains(UserPreferencesDbHelper.COL_BARANGAY)) {
+            return "";
+        }
+
+        synchronized (this) {
+            try {
+                if (barangayByEmail == null) {
+                    barangayByEmail = dbHelper.getReadableDatabase().compileStatement(
+                        "SELECT " + UserPreferencesDbHelper.COL_BARANGAY
+                            + " FROM " + UserPreferencesDbHelper.TABLE_NAME
+                            + " WHERE " + UserPreferencesDbHelper.COL_USER_EMAIL + " = ? LIMIT 1");
+                }
+                barangayByEmail.bindString(1, userEmail);
+                String barangay = barangayByEmail.simpleQueryForString();
+                return barangay != null ? barangay : "";
+            } catch (SQLiteDoneException e) {
+                return ""; // no row for this user
+            } finally {
+                if (barangayByEmail != null) {
+                    barangayByEmail.clearBindings();
+                }
+            }
+        }
+    }
+
+    private static Set<String> readColumns(SQLiteDatabase db) {
+        Set<String> names = new HashSet<>();
+        // PRAGMA table_info returns no rows for a missing table, so one query covers both checks
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + UserPreferencesDbHelper.TABLE_NAME + ")", null)) {
+            int nameIndex = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(nameIndex));
+            }
+        }
+        if (names.isEmpty()) {
+            Log.w(TAG, "Table " + UserPreferencesDbHelper.TABLE_NAME + " does not exist");
+        }
+        return names;
+    }
+}
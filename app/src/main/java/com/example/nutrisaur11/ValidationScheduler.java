@@ -0,0 +1,132 @@
+package com.example.nutrisaur11;
+
+import java.util.Random;
+
+/**
+ * Decides when the next safety-net session validation should run.
+ * Keeps an EWMA of validation latency and failure rate, backs off exponentially
+ * (with jitter) on slow or failing links, and parks while the app is in the background.
+ *
+ * Plain Java with an injectable clock and random source so wakeup counts can be
+ * checked against a virtual clock.
+ */
+public class ValidationScheduler {
+    private static final double EWMA_ALPHA = 0.3;
+    private static final double JITTER_FRACTION = 0.2;
+    private static final int MAX_BACKOFF_EXPONENT = 5;
+
+    /**
+     * Time source (System::currentTimeMillis in the app, a virtual clock in tests)
+     */
+    public interface Clock {
+        long now();
+    }
+
+    private final long baseInterval;
+    private final long maxInterval;
+    private final long slowThreshold;
+    private final long verySlowThreshold;
+    private final Clock clock;
+    private final Random random;
+
+    private double latencyEwma = 0;
+    private double failureEwma = 0;
+    private int consecutiveFailures = 0;
+    private boolean parked = false;
+    private long lastWakeup = 0;
+    private long wakeupCount = 0;
+
+    public ValidationScheduler(long baseInterval, long maxInterval, long slowThreshold,
+                               long verySlowThreshold, Clock clock, Random random) {
+        this.baseInterval = baseInterval;
+        this.maxInterval = maxInterval;
+        this.slowThreshold = slowThreshold;
+        this.verySlowThreshold = verySlowThreshold;
+        this.clock = clock;
+        this.random = random;
+        this.lastWakeup = clock.now();
+    }
+
+    /**
+     * Record the outcome of one validation request
+     */
+    public synchronized void recordResult(long latencyMs, boolean success) {
+        latencyEwma = latencyEwma == 0 ? latencyMs : EWMA_ALPHA * latencyMs + (1 - EWMA_ALPHA) * latencyEwma;
+        failureEwma = EWMA_ALPHA * (success ? 0 : 1) + (1 - EWMA_ALPHA) * failureEwma;
+        consecutiveFailures = success ? 0 : consecutiveFailures + 1;
+    }
+
+    /**
+     * Mark that the periodic validation fired
+     */
+    public synchronized void onWakeup() {
+        lastWakeup = clock.now();
+        wakeupCount++;
+    }
+
+    /**
+     * Delay until the next validation, stretched by latency, failures and jitter
+     */
+    public long nextDelay() {
+        return nextDelay(baseInterval);
+    }
+
+    /**
+     * Same as nextDelay(), from a different base interval (e.g. a shorter one while pushes
+     * can't reach the device)
+     */
+    public synchronized long nextDelay(long baseInterval) {
+        double delay = baseInterval;
+
+        if (latencyEwma > verySlowThreshold) {
+            delay *= 4;
+        } else if (latencyEwma > slowThreshold) {
+            delay *= 2;
+        }
+
+        if (failureEwma > 0.5) {
+            delay *= 2;
+        }
+
+        delay *= 1L << Math.min(consecutiveFailures, MAX_BACKOFF_EXPONENT);
+        delay = Math.min(delay, maxInterval);
+
+        // Spread devices apart so they don't wake in lockstep
+        double jitter = (random.nextDouble() * 2 - 1) * JITTER_FRACTION;
+        return Math.max(0, (long) (delay * (1 + jitter)));
+    }
+
+    /**
+     * Stop scheduling while the app is in the background
+     */
+    public synchronized void park() {
+        parked = true;
+    }
+
+    /**
+     * Leave the parked state (app in foreground again)
+     *
+     * @return delay until the next validation is due, 0 if it is already overdue
+     */
+    public synchronized long resume() {
+        parked = false;
+        long due = lastWakeup + nextDelay();
+        return Math.max(0, due - clock.now());
+    }
+
+    public synchronized boolean isParked() {
+        return parked;
+    }
+
+    public synchronized long getWakeupCount() {
+        return wakeupCount;
+    }
+
+    public synchronized double getLatencyEwma() {
+        return latencyEwma;
+    }
+
+    public synchronized double getFailureRate() {
+        return failureEwma;
+    }
+}
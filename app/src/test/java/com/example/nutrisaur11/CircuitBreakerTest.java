@@ -0,0 +1,161 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Breaker and hedging against a local stand-in for DatabaseAPI.php that injects latency and errors
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CircuitBreakerTest {
+    private static final long FAST_MILLIS = 20;
+    private static final long STALL_MILLIS = 1_500;
+    private static final int STALL_EVERY = 25; // 4% of requests stall, below the p95
+    private static final int CALLS = 50;
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile boolean failing;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int number = requests.incrementAndGet();
+                if (failing) {
+                    Thread.sleep(200);
+                    return new MockResponse().setResponseCode(503);
+                }
+                Thread.sleep(number % STALL_EVERY == 0 ? STALL_MILLIS : FAST_MILLIS);
+                return new MockResponse().setBody("{\"success\":true,\"exists\":true}");
+            }
+        });
+        server.start();
+        client = new OkHttpClient.Builder()
+            .addInterceptor(new CircuitBreaker.BreakerInterceptor())
+            .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * A call to its own endpoint, so breaker and latency state don't leak between tests
+     */
+    private Request call(String endpoint) {
+        return new Request.Builder()
+            .url(server.url("/api/DatabaseAPI.php?action=" + endpoint))
+            .post(RequestBody.create(new byte[0], null))
+            .build();
+    }
+
+    private static long timeMillis(IoCall call) throws IOException {
+        long start = System.nanoTime();
+        call.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private interface IoCall {
+        void run() throws IOException;
+    }
+
+    private static long percentile(long[] millis, double percentile) {
+        long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(percentile / 100 * sorted.length) - 1];
+    }
+
+    @Test
+    public void hedgingCutsTheStalledTail() throws Exception {
+        String endpoint = "session_probe_hedged";
+        long[] single = new long[CALLS];
+        long[] hedged = new long[CALLS];
+
+        // The first calls go out alone and give the endpoint its latency samples
+        for (int i = 0; i < CALLS; i++) {
+            single[i] = timeMillis(() -> client.newCall(call(endpoint)).execute().close());
+        }
+        long hedgeDelay = HedgedCall.hedgeDelay(endpoint);
+        assertTrue("hedge delay " + hedgeDelay, hedgeDelay > 0 && hedgeDelay < STALL_MILLIS);
+
+        for (int i = 0; i < CALLS; i++) {
+            hedged[i] = timeMillis(() -> {
+                try (Response response = HedgedCall.execute(client, call(endpoint))) {
+                    assertTrue(response.isSuccessful());
+                }
+            });
+        }
+
+        System.out.println("probe with " + 100 / STALL_EVERY + "% stalls of " + STALL_MILLIS + "ms, hedge after "
+            + hedgeDelay + "ms: single p50 " + percentile(single, 50) + "ms / max " + percentile(single, 100)
+            + "ms, hedged p50 " + percentile(hedged, 50) + "ms / max " + percentile(hedged, 100) + "ms, "
+            + MetricsRegistry.getInstance().getCount(MetricsRegistry.HTTP_HEDGE_WON) + " hedge(s) won");
+        assertTrue(percentile(single, 100) >= STALL_MILLIS);
+        assertTrue(percentile(hedged, 100) < STALL_MILLIS);
+    }
+
+    @Test
+    public void openCircuitFailsFastWithoutSending() throws Exception {
+        String endpoint = "session_probe_failing";
+        failing = true;
+
+        long sentMillis = 0;
+        int sent = 0;
+        int rejected = 0;
+        long rejectedMillis = 0;
+        for (int i = 0; i < 30; i++) {
+            long start = System.nanoTime();
+            try (Response response = client.newCall(call(endpoint)).execute()) {
+                assertEquals(503, response.code());
+                sent++;
+                sentMillis += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            } catch (CircuitBreaker.OpenException e) {
+                rejected++;
+                rejectedMillis += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+        }
+
+        System.out.println("failing endpoint, 30 calls: " + sent + " sent (mean " + sentMillis / Math.max(sent, 1)
+            + "ms), " + rejected + " failed fast (mean " + rejectedMillis / Math.max(rejected, 1) + "ms)");
+        // Opens once the minimum window of calls has failed
+        assertEquals(10, sent);
+        assertEquals(10, server.getRequestCount());
+        assertEquals(CircuitBreaker.State.OPEN, CircuitBreaker.forEndpoint(endpoint).getState());
+        assertTrue(rejectedMillis / rejected < 20);
+
+        // Hedging stays off while the circuit isn't closed
+        assertEquals(0, HedgedCall.hedgeDelay(endpoint));
+        try {
+            HedgedCall.execute(client, call(endpoint)).close();
+            fail("expected the open circuit to reject the call");
+        } catch (CircuitBreaker.OpenException expected) {
+            assertEquals(10, server.getRequestCount());
+        }
+    }
+}
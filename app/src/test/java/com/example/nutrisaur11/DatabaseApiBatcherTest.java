@@ -0,0 +1,156 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Batching against a local stand-in for DatabaseAPI.php (select, update and batch actions)
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseApiBatcherTest {
+    private static final String EMAIL = "user@example.com";
+    private static final DatabaseApiClient.Template STATUS_QUERY =
+        DatabaseApiClient.selectTemplate("community_users", "email = ?", "email", "status");
+    private static final DatabaseApiClient.Template EXISTS_QUERY =
+        DatabaseApiClient.selectTemplate("community_users", "email = ?", "email");
+    private static final DatabaseApiClient.Template UPDATE_NAME =
+        DatabaseApiClient.updateTemplate("community_users", "email = ?", "name");
+
+    private MockWebServer server;
+    private DatabaseApiBatcher batcher;
+    private final List<String> actions = new ArrayList<>();
+    private final CountDownLatch releaseWrites = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String action = request.getRequestUrl().queryParameter("action");
+                synchronized (actions) {
+                    actions.add(action);
+                }
+                try {
+                    if ("batch".equals(action)) {
+                        JSONArray operations = new JSONObject(request.getBody().readUtf8()).getJSONArray("operations");
+                        JSONArray results = new JSONArray();
+                        for (int i = 0; i < operations.length(); i++) {
+                            results.put(new JSONObject(answer(operations.getJSONObject(i).getString("action"))));
+                        }
+                        return new MockResponse().setBody(new JSONObject().put("success", true).put("results", results).toString());
+                    }
+                    return new MockResponse().setBody(answer(action));
+                } catch (org.json.JSONException e) {
+                    return new MockResponse().setResponseCode(400);
+                }
+            }
+
+            private String answer(String action) throws InterruptedException {
+                if ("update".equals(action)) {
+                    // A slow data write, held until the test releases it
+                    releaseWrites.await(5, TimeUnit.SECONDS);
+                    return "{\"success\":true,\"message\":\"updated\"}";
+                }
+                return "{\"success\":true,\"data\":[{\"email\":\"" + EMAIL + "\",\"status\":\"1\"}]}";
+            }
+        });
+        server.start();
+
+        // Requests go to DatabaseAPI.php on Constants.API_BASE_URL; point them at the stand-in
+        HttpUrl standIn = server.url("/");
+        OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                .url(chain.request().url().newBuilder().scheme("http").host(standIn.host()).port(standIn.port()).build())
+                .build()))
+            .build();
+        batcher = new DatabaseApiBatcher(new DatabaseApiClient(client));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        releaseWrites.countDown();
+        server.shutdown();
+    }
+
+    private static String readRow(ApiReader reader) throws IOException {
+        reader.skipValue();
+        return EMAIL;
+    }
+
+    private Future<DatabaseApiClient.SelectResult<String>> sessionSelect(DatabaseApiClient.Template template) {
+        return batcher.select(NetworkGovernor.CallClass.SESSION, template, DatabaseApiBatcherTest::readRow, EMAIL);
+    }
+
+    @Test
+    public void resumeBurstIsOneRoundTrip() throws Exception {
+        // BaseActivity.onResume: the revalidation's status select, then the archive and existence checks
+        List<Future<DatabaseApiClient.SelectResult<String>>> checks = new ArrayList<>();
+        checks.add(sessionSelect(STATUS_QUERY));
+        checks.add(sessionSelect(STATUS_QUERY));
+        checks.add(sessionSelect(EXISTS_QUERY));
+
+        for (Future<DatabaseApiClient.SelectResult<String>> check : checks) {
+            DatabaseApiClient.SelectResult<String> result = DatabaseApiBatcher.await(check);
+            assertTrue(result.success);
+            assertEquals(1, result.rows.size());
+        }
+
+        int roundTrips = server.getRequestCount();
+        System.out.println("onResume burst: " + checks.size() + " operations, " + roundTrips
+            + " round trip(s), " + (checks.size() - roundTrips) + " saved per transition");
+        assertEquals(1, roundTrips);
+        assertEquals("batch", actions.get(0));
+    }
+
+    @Test
+    public void loneOperationGoesOutAsPlainActionAfterWindow() throws Exception {
+        long start = System.nanoTime();
+        assertTrue(DatabaseApiBatcher.await(sessionSelect(STATUS_QUERY)).success);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals("select", actions.get(0));
+        assertTrue("elapsed=" + elapsed, elapsed >= 20);
+    }
+
+    @Test
+    public void sessionSelectDoesNotWaitBehindSlowDataWrite() throws Exception {
+        Future<DatabaseApiClient.WriteResult> write = batcher.write(UPDATE_NAME, new Object[]{"New Name"}, EMAIL);
+        // Let the write go out and stall on the server
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (server.getRequestCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        Future<DatabaseApiClient.SelectResult<String>> check = sessionSelect(STATUS_QUERY);
+        assertTrue(check.get(2, TimeUnit.SECONDS).success);
+        assertFalse(write.isDone());
+
+        releaseWrites.countDown();
+        assertTrue(DatabaseApiBatcher.await(write).success);
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.Okio;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Byte accounting, the JSON/CBOR wire formats and the streaming reader, for the request and
+ * reply shapes the app sends
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseApiClientTest {
+    private static final String EMAIL = "user@example.com";
+    private static final String BYTES_SELECT = MetricsRegistry.API_BYTES_PREFIX + "select";
+    private static final String FCM_TOKEN = "dGVzdC1kZXZpY2U6APA91bHxQz3f0kLmN8pR2sT5vW7yZ1aB3cD5eF7gH9iJ1kL3mN5oP7qR9sT1uV3wX5yZ7aB9"
+        + "cD1eF3gH5iJ7kL9mN1oP3qR5sT7uV9wX1yZ3aB5cD7eF9gH1iJ3kL5mN7oP9qR1sT3uV5wX7yZ9aB1cD3eF5gH7i";
+    private static final int ITERATIONS = 2_000;
+
+    private MockWebServer server;
+    private DatabaseApiClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        // Requests go to DatabaseAPI.php on Constants.API_BASE_URL; point them at the stand-in
+        HttpUrl standIn = server.url("/");
+        client = new DatabaseApiClient(new OkHttpClient.Builder()
+            .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                .url(chain.request().url().newBuilder().scheme("http").host(standIn.host()).port(standIn.port()).build())
+                .build()))
+            .eventListenerFactory(RequestTimingRecorder.getInstance().factory())
+            .build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static String rowsJson(int rows) {
+        StringBuilder json = new StringBuilder("{\"success\":true,\"data\":[");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(1000 + i).append("\",\"email\":\"").append(EMAIL)
+                .append("\",\"name\":\"Juan Dela Cruz\",\"barangay\":\"Barangay 1\",\"municipality\":\"Balanga\"")
+                .append(",\"sex\":\"Male\",\"birthday\":\"1990-01-01\",\"weight\":\"62.5\",\"height\":\"165\"")
+                .append(",\"bmi\":\"22.96\",\"risk_score\":\"3\",\"status\":\"1\",\"fcm_token\":\"").append(FCM_TOKEN)
+                .append("\",\"screening_date\":\"2025-01-15 08:30:00\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static Map<String, String> readRow(ApiReader reader) throws IOException {
+        Map<String, String> row = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            row.put(reader.nextName(), reader.nextString());
+        }
+        reader.endObject();
+        return row;
+    }
+
+    private DatabaseApiClient.SelectResult<Map<String, String>> selectStatus() throws IOException {
+        return client.select(DatabaseApiClient.selectTemplate("community_users", "email = ?", "email", "status"),
+            DatabaseApiClientTest::readRow, EMAIL);
+    }
+
+    private static byte[] gzip(String body) throws IOException {
+        Buffer compressed = new Buffer();
+        try (okio.BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+            sink.writeUtf8(body);
+        }
+        return compressed.readByteArray();
+    }
+
+    @Test
+    public void chunkedAndGzipRepliesAreCountedAsTransferred() throws Exception {
+        String body = rowsJson(1);
+        byte[] gzipped = gzip(body);
+        // Neither reply has a Content-Length, so contentLength() would have been -1
+        server.enqueue(new MockResponse().setChunkedBody(body, 64));
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip")
+            .setChunkedBody(new Buffer().write(gzipped), 64));
+
+        long before = MetricsRegistry.getInstance().getCount(BYTES_SELECT);
+        assertEquals(1, selectStatus().rows.size());
+        RecordedRequest chunked = server.takeRequest();
+        long afterChunked = MetricsRegistry.getInstance().getCount(BYTES_SELECT);
+        assertEquals(chunked.getBodySize() + body.length(), afterChunked - before);
+
+        assertEquals(1, selectStatus().rows.size());
+        RecordedRequest compressed = server.takeRequest();
+        long afterGzip = MetricsRegistry.getInstance().getCount(BYTES_SELECT);
+        // The compressed size, which is what the user's data plan pays for
+        assertEquals(compressed.getBodySize() + gzipped.length, afterGzip - afterChunked);
+
+        System.out.println("select reply " + body.length() + " B as JSON, " + gzipped.length + " B gzipped on the wire");
+    }
+
+    @Test
+    public void requestShapesAreSmallerAsCbor() throws Exception {
+        Map<String, byte[]> shapes = new LinkedHashMap<>();
+        shapes.put("sync_fcm_token", DatabaseApiClient.writeBody(writer -> writer
+            .name("email").value(EMAIL)
+            .name("fcm_token").value(FCM_TOKEN)
+            .name("barangay").value("Barangay 1")
+            .name("digest").value(FCMTokenManager.registrationDigest(FCM_TOKEN, EMAIL, "Barangay 1"))));
+        shapes.put("select status", DatabaseApiClient.writeBody(DatabaseApiClient.selectRequest(
+            DatabaseApiClient.selectTemplate("community_users", "email = ?", "email", "status"), new Object[]{EMAIL})));
+        shapes.put("update clear token", DatabaseApiClient.writeBody(DatabaseApiClient.writeRequest(
+            DatabaseApiClient.updateTemplate("community_users", "email = ?", "fcm_token"), new Object[]{""}, new Object[]{EMAIL})));
+
+        for (Map.Entry<String, byte[]> shape : shapes.entrySet()) {
+            byte[] json = shape.getValue();
+            byte[] cbor = DatabaseApiClient.toCbor(json);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                DatabaseApiClient.toCbor(json);
+            }
+            long encodeNanos = (System.nanoTime() - start) / ITERATIONS;
+
+            System.out.println("request " + shape.getKey() + ": JSON " + json.length + " B, CBOR " + cbor.length
+                + " B (" + (100 - cbor.length * 100 / json.length) + "% smaller), encode " + encodeNanos / 1000.0 + " us");
+            assertTrue(shape.getKey(), cbor.length < json.length);
+        }
+    }
+
+    @Test
+    public void repliesDecodeToTheSameRowsFromCbor() throws Exception {
+        for (int rows : new int[]{1, 50}) {
+            byte[] json = rowsJson(rows).getBytes("UTF-8");
+            byte[] cbor = DatabaseApiClient.toCbor(json);
+
+            List<Map<String, String>> fromJson = decode(json, false);
+            List<Map<String, String>> fromCbor = decode(cbor, true);
+            assertEquals(rows, fromJson.size());
+            assertEquals(fromJson, fromCbor);
+
+            long jsonNanos = timeDecode(json, false);
+            long cborNanos = timeDecode(cbor, true);
+            System.out.println("select reply, " + rows + " row(s): JSON " + json.length + " B decoded in "
+                + jsonNanos / 1000.0 + " us, CBOR " + cbor.length + " B decoded in " + cborNanos / 1000.0 + " us");
+            assertTrue(cbor.length < json.length);
+        }
+    }
+
+    private static List<Map<String, String>> decode(byte[] body, boolean cbor) throws IOException {
+        try (ApiReader reader = DatabaseApiClient.openReader(body, cbor)) {
+            DatabaseApiClient.SelectResult<Map<String, String>> result =
+                DatabaseApiClient.selectReader(DatabaseApiClientTest::readRow).read(reader);
+            assertTrue(result.success);
+            return new ArrayList<>(result.rows);
+        }
+    }
+
+    private static long timeDecode(byte[] body, boolean cbor) throws IOException {
+        // Warm up, then time
+        for (int i = 0; i < ITERATIONS / 4; i++) {
+            decode(body, cbor);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decode(body, cbor);
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    /**
+     * The status select as the session paths read it before the typed client: the body as a
+     * String, parsed into a JSONObject tree, then the field picked out of each row
+     */
+    private static List<String> statusViaJsonObject(byte[] body) throws Exception {
+        String text = new okio.Buffer().write(body).readUtf8(); // response.body().string()
+        JSONObject json = new JSONObject(text);
+        List<String> statuses = new ArrayList<>();
+        if (json.optBoolean("success", false)) {
+            JSONArray data = json.getJSONArray("data");
+            for (int i = 0; i < data.length(); i++) {
+                statuses.add(data.getJSONObject(i).optString("status", ""));
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * The same select through the streaming reader, pulling only the status field
+     */
+    private static List<String> statusViaStreamingReader(byte[] body) throws IOException {
+        try (ApiReader reader = DatabaseApiClient.openReader(body, false)) {
+            return DatabaseApiClient.selectReader(DatabaseApiClientTest::readStatus).read(reader).rows;
+        }
+    }
+
+    private static String readStatus(ApiReader reader) throws IOException {
+        String status = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("status".equals(reader.nextName())) {
+                status = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return status;
+    }
+
+    private interface Decoder {
+        List<String> decode(byte[] body) throws Exception;
+    }
+
+    /**
+     * Mean CPU nanoseconds and allocated bytes per decode on this thread, after a warm-up
+     */
+    private static long[] measure(Decoder decoder, byte[] body) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < ITERATIONS / 4; i++) {
+            decoder.decode(body);
+        }
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long allocatedStart = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            decoder.decode(body);
+        }
+        return new long[]{
+            (threads.getCurrentThreadCpuTime() - cpuStart) / ITERATIONS,
+            (threads.getThreadAllocatedBytes(thread) - allocatedStart) / ITERATIONS
+        };
+    }
+
+    @Test
+    public void streamingReaderAllocatesLessThanJsonObjectTree() throws Exception {
+        // A one-row reply is dominated by the reader's fixed buffers, so only the list is asserted
+        for (int rows : new int[]{1, 50}) {
+            byte[] body = rowsJson(rows).getBytes("UTF-8");
+            assertEquals(statusViaJsonObject(body), statusViaStreamingReader(body));
+
+            long[] tree = measure(DatabaseApiClientTest::statusViaJsonObject, body);
+            long[] streaming = measure(DatabaseApiClientTest::statusViaStreamingReader, body);
+            System.out.println("status select, " + rows + " row(s), " + body.length + " B: org.json "
+                + tree[0] / 1000 + " us CPU / " + tree[1] + " B allocated, streaming "
+                + streaming[0] / 1000 + " us CPU / " + streaming[1] + " B allocated");
+            if (rows > 1) {
+                assertTrue("tree=" + tree[1] + "B streaming=" + streaming[1] + "B", streaming[1] * 4 < tree[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Token registration under concurrent callers, against a local stand-in for sync_fcm_token
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FCMTokenManagerTest {
+    private static final String EMAIL = "user@example.com";
+    private static final int CALLERS = 32;
+
+    private Context context;
+    private MockWebServer server;
+    private FCMTokenManager manager;
+    private final AtomicInteger registrations = new AtomicInteger();
+    private final AtomicInteger clears = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String action = request.getRequestUrl().queryParameter("action");
+                if ("sync_fcm_token".equals(action)) {
+                    registrations.incrementAndGet();
+                    // Slow enough for every caller to arrive while the first attempt is in flight
+                    Thread.sleep(200);
+                    return new MockResponse().setBody("{\"success\":true,\"updated\":true,\"exists\":true}");
+                }
+                clears.incrementAndGet();
+                return new MockResponse().setBody("{\"success\":true,\"message\":\"updated\"}");
+            }
+        });
+        server.start();
+
+        // Requests go to DatabaseAPI.php on Constants.API_BASE_URL; point them at the stand-in
+        HttpUrl standIn = server.url("/");
+        OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                .url(chain.request().url().newBuilder().scheme("http").host(standIn.host()).port(standIn.port()).build())
+                .build()))
+            .build();
+        manager = new FCMTokenManager(context, new Handler(Looper.getMainLooper()),
+            new DatabaseApiBatcher(new DatabaseApiClient(client)));
+
+        // Each test gets a new application; bind the singletons to it and to the stand-in
+        setStatic(FCMTokenManager.class, "instance", manager);
+        setStatic(FCMTokenOutbox.class, "instance", null);
+        setStatic(SessionManager.class, "instance", null);
+        goOnline();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static void setStatic(Class<?> type, String name, Object value) throws Exception {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+
+    /**
+     * Report a validated Wi-Fi network, as the default-network callback would
+     */
+    private void goOnline() throws Exception {
+        setStatic(ConnectivityMonitor.class, "instance", null);
+        ConnectivityMonitor monitor = ConnectivityMonitor.getInstance(context);
+        for (String name : new String[]{"callbackRegistered", "snapshot"}) {
+            Field field = ConnectivityMonitor.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(monitor, name.equals("snapshot")
+                ? new ConnectivityMonitor.Snapshot(true, true, false, ConnectivityMonitor.TRANSPORT_WIFI) : true);
+        }
+    }
+
+    private void awaitSettled() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (manager.getRegistrationState() == FCMTokenManager.RegistrationState.IN_FLIGHT
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void concurrentCallersShareOneRegistration() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < CALLERS; i++) {
+            boolean login = i % 2 == 0;
+            callers.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (login) {
+                    manager.initializeWithUser(EMAIL);
+                } else {
+                    manager.registerTokenAfterScreening(EMAIL, "Barangay 1");
+                }
+            });
+        }
+        start.countDown();
+        callers.shutdown();
+        assertTrue(callers.awaitTermination(5, TimeUnit.SECONDS));
+        awaitSettled();
+
+        System.out.println("token registration: " + CALLERS + " concurrent callers, "
+            + registrations.get() + " sync_fcm_token request(s)");
+        // The first attempt, plus at most one follow-up for callers that changed the barangay mid-flight
+        assertTrue("registrations=" + registrations.get(), registrations.get() >= 1 && registrations.get() <= 2);
+        assertEquals(FCMTokenManager.RegistrationState.IDLE, manager.getRegistrationState());
+        assertTrue(manager.isRegisteredFor(EMAIL));
+
+        // Everyone is satisfied now: more callers send nothing
+        manager.initializeWithUser(EMAIL);
+        awaitSettled();
+        Thread.sleep(100);
+        assertTrue(registrations.get() <= 2);
+    }
+
+    @Test
+    public void clearReturnsWithoutWaitingForTheServer() throws Exception {
+        manager.initializeWithUser(EMAIL);
+        awaitSettled();
+
+        long start = System.nanoTime();
+        Future<?> sent = manager.clearFCMTokenForUser(EMAIL);
+        long returnedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("clear blocked for " + returnedMillis + "ms", returnedMillis < 100);
+        assertFalse(manager.isRegisteredFor(EMAIL));
+
+        sent.get(5, TimeUnit.SECONDS);
+        assertEquals(1, clears.get());
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class FCMTokenOutboxTest {
+    private static final String EMAIL = "user@example.com";
+
+    private Context context;
+    private final List<FCMTokenOutbox.Operation> delivered = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+    }
+
+    /**
+     * Report the default network as the connectivity callback would
+     */
+    private void setOnline(boolean online) throws Exception {
+        Field instance = ConnectivityMonitor.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+        ConnectivityMonitor monitor = ConnectivityMonitor.getInstance(context);
+        Field registered = ConnectivityMonitor.class.getDeclaredField("callbackRegistered");
+        registered.setAccessible(true);
+        registered.set(monitor, true);
+        Field snapshot = ConnectivityMonitor.class.getDeclaredField("snapshot");
+        snapshot.setAccessible(true);
+        snapshot.set(monitor, online
+            ? new ConnectivityMonitor.Snapshot(true, true, false, ConnectivityMonitor.TRANSPORT_WIFI)
+            : ConnectivityMonitor.Snapshot.OFFLINE);
+    }
+
+    private FCMTokenOutbox newProcess() {
+        return new FCMTokenOutbox(context, operation -> delivered.add(operation));
+    }
+
+    @Test
+    public void registrationSurvivesProcessDeath() throws Exception {
+        setOnline(false);
+        FCMTokenOutbox beforeDeath = newProcess();
+        beforeDeath.enqueueRegister(EMAIL, "token-1", "Barangay 1").get(5, TimeUnit.SECONDS);
+        assertTrue(beforeDeath.hasPendingRegister(EMAIL).get(5, TimeUnit.SECONDS));
+        assertTrue(delivered.isEmpty());
+
+        // The process is killed; a new one opens the same database once the network is back
+        setOnline(true);
+        FCMTokenOutbox afterRestart = newProcess();
+        assertEquals(1, (int) afterRestart.getPendingCount().get(5, TimeUnit.SECONDS));
+        afterRestart.drain().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, delivered.size());
+        FCMTokenOutbox.Operation operation = delivered.get(0);
+        assertEquals(FCMTokenOutbox.OP_REGISTER, operation.type);
+        assertEquals(EMAIL, operation.email);
+        assertEquals("token-1", operation.token);
+        assertEquals("Barangay 1", operation.barangay);
+        assertFalse(afterRestart.hasPendingRegister(EMAIL).get(5, TimeUnit.SECONDS));
+        assertEquals(0, (int) afterRestart.getPendingCount().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void clearQueuedBeforeDeathReplacesTheRegistration() throws Exception {
+        setOnline(false);
+        FCMTokenOutbox beforeDeath = newProcess();
+        beforeDeath.enqueueRegister(EMAIL, "token-1", "Barangay 1");
+        beforeDeath.enqueueClear(EMAIL).get(5, TimeUnit.SECONDS);
+
+        setOnline(true);
+        FCMTokenOutbox afterRestart = newProcess();
+        afterRestart.drain().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, delivered.size());
+        assertEquals(FCMTokenOutbox.OP_CLEAR, delivered.get(0).type);
+    }
+}
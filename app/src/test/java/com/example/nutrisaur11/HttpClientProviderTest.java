@@ -0,0 +1,108 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * First-request latency on the shared stack, against a local TLS stand-in for the API host
+ */
+@RunWith(RobolectricTestRunner.class)
+public class HttpClientProviderTest {
+    private static final int ROUNDS = 10;
+
+    private MockWebServer server;
+    private HandshakeCertificates clientCertificates;
+
+    @Before
+    public void setUp() throws Exception {
+        HeldCertificate localhost = new HeldCertificate.Builder()
+            .addSubjectAlternativeName("localhost")
+            .build();
+        server = new MockWebServer();
+        server.useHttps(new HandshakeCertificates.Builder()
+            .heldCertificate(localhost)
+            .build().sslSocketFactory(), false);
+        server.start();
+        clientCertificates = new HandshakeCertificates.Builder()
+            .addTrustedCertificate(localhost.certificate())
+            .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * The shared client as a new process sees it: same settings, nothing pooled yet. The budget
+     * and breaker interceptors are left out, so traffic from other tests can't throttle it.
+     */
+    private OkHttpClient newProcessClient() {
+        OkHttpClient.Builder builder = HttpClientProvider.getClient().newBuilder();
+        builder.interceptors().clear();
+        return builder
+            .connectionPool(new ConnectionPool())
+            .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+            .build();
+    }
+
+    private long timeRequest(OkHttpClient client, Request request) throws Exception {
+        long start = System.nanoTime();
+        try (Response response = client.newCall(request).execute()) {
+            response.body().string();
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void warmUpTakesTheHandshakeOffTheFirstValidation() throws Exception {
+        Request validation = new Request.Builder()
+            .url(server.url("/api/DatabaseAPI.php?action=session_probe"))
+            .post(okhttp3.RequestBody.create(new byte[0], null))
+            .build();
+        // What HttpClientProvider.warmUp sends at start
+        Request warmUp = new Request.Builder().url(server.url("/")).head().build();
+
+        long coldNanos = 0;
+        long warmNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            server.enqueue(new MockResponse().setBody("{\"success\":true}"));
+            coldNanos += timeRequest(newProcessClient(), validation);
+            RecordedRequest cold = server.takeRequest();
+            assertEquals(0, cold.getSequenceNumber());
+
+            OkHttpClient warmed = newProcessClient();
+            server.enqueue(new MockResponse());
+            server.enqueue(new MockResponse().setBody("{\"success\":true}"));
+            timeRequest(warmed, warmUp);
+            warmNanos += timeRequest(warmed, validation);
+            server.takeRequest();
+            // The validation went out on the connection the warm-up opened
+            assertEquals(1, server.takeRequest().getSequenceNumber());
+        }
+
+        long coldMicros = TimeUnit.NANOSECONDS.toMicros(coldNanos / ROUNDS);
+        long warmMicros = TimeUnit.NANOSECONDS.toMicros(warmNanos / ROUNDS);
+        System.out.println("first validation over TLS, mean of " + ROUNDS + ": cold " + coldMicros
+            + " us (TCP + TLS + request), warm " + warmMicros + " us (pooled connection)");
+        assertTrue("cold=" + coldMicros + "us warm=" + warmMicros + "us", warmMicros < coldMicros);
+    }
+}
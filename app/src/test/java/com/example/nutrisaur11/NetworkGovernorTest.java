@@ -0,0 +1,109 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class NetworkGovernorTest {
+    private static final long TICK = 3_000; // the 3-second safety-net schedule
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final int CALLS_PER_CHECK = 2; // probe refused with 401, then the status select
+
+    private long now;
+    private NetworkGovernor governor;
+
+    @Before
+    public void setUp() {
+        now = 1_000_000;
+        governor = new NetworkGovernor(() -> now);
+    }
+
+    /**
+     * One safety-net check as SessionManager sends it: skipped while the LOW share is spent,
+     * otherwise charged at the class default priority. Returns false if any call was refused.
+     */
+    private boolean runCheck() {
+        try {
+            for (int i = 0; i < CALLS_PER_CHECK; i++) {
+                governor.acquire(NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.HIGH);
+            }
+            return true;
+        } catch (NetworkGovernor.BudgetExceededException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void unshapedThreeSecondScheduleRunsDryWithinAMinute() {
+        long start = now;
+        while (runCheck()) {
+            now += TICK;
+        }
+        assertTrue("refused after " + (now - start) + "ms", now - start <= TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @Test
+    public void shapedThreeSecondScheduleNeverHitsTheBudget() {
+        int checks = 0;
+        long nextTick = now;
+        long end = now + HOUR;
+        while (now < end) {
+            // A user-facing (HIGH) check must always find the reserve
+            assertEquals(0, governor.millisUntilAvailable(NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.HIGH));
+
+            long wait = governor.millisUntilAvailable(NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.LOW);
+            if (wait == 0) {
+                if (!runCheck()) {
+                    fail("Check refused after " + checks + " checks");
+                }
+                checks++;
+            }
+            // scheduleNextValidation(budgetWait): the next tick is the later of the two
+            now += Math.max(TICK, wait);
+        }
+
+        assertEquals(0, governor.getRejectedCount(NetworkGovernor.CallClass.SESSION));
+        // The initial burst down to the reserve, then the hourly refill, two calls per check
+        int capacity = NetworkGovernor.CallClass.SESSION.capacity;
+        int perHour = NetworkGovernor.CallClass.SESSION.perHour;
+        assertTrue("checks=" + checks, checks <= (capacity + perHour) / CALLS_PER_CHECK);
+        assertTrue("checks=" + checks, checks >= perHour / CALLS_PER_CHECK - 2);
+    }
+
+    @Test
+    public void lowPriorityStopsAtReserveAndWaitsForRefill() {
+        int capacity = NetworkGovernor.CallClass.SESSION.capacity;
+        int lowCalls = 0;
+        while (governor.millisUntilAvailable(NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.LOW) == 0) {
+            try {
+                governor.acquire(NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.LOW);
+            } catch (NetworkGovernor.BudgetExceededException e) {
+                fail("Refused although reported available");
+            }
+            lowCalls++;
+        }
+        assertTrue(lowCalls < capacity);
+
+        long wait = governor.millisUntilAvailable(NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.LOW);
+        long refillInterval = HOUR / NetworkGovernor.CallClass.SESSION.perHour;
+        assertTrue("wait=" + wait, wait > 0 && wait <= refillInterval);
+
+        try {
+            governor.acquire(NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.LOW);
+            fail("LOW call allowed into the reserve");
+        } catch (NetworkGovernor.BudgetExceededException expected) {
+            // refused
+        }
+
+        now += wait;
+        assertEquals(0, governor.millisUntilAvailable(NetworkGovernor.CallClass.SESSION, NetworkGovernor.Priority.LOW));
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Select caching against a local stand-in for DatabaseAPI.php that sends ETags
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SelectCacheTest {
+    private static final String EMAIL = "user@example.com";
+    private static final String ETAG = "\"v1\"";
+    private static final String ROWS = "{\"success\":true,\"data\":[{\"email\":\"" + EMAIL + "\",\"status\":\"1\"}]}";
+
+    private MockWebServer server;
+    private DatabaseApiClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        // Requests go to DatabaseAPI.php on Constants.API_BASE_URL; point them at the stand-in
+        HttpUrl standIn = server.url("/");
+        client = new DatabaseApiClient(new OkHttpClient.Builder()
+            .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                .url(chain.request().url().newBuilder().scheme("http").host(standIn.host()).port(standIn.port()).build())
+                .build()))
+            .build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static String readRow(ApiReader reader) throws IOException {
+        reader.skipValue();
+        return EMAIL;
+    }
+
+    private DatabaseApiClient.SelectResult<String> select(String table) throws IOException {
+        return client.select(DatabaseApiClient.selectTemplate(table, "email = ?", "email", "status"),
+            SelectCacheTest::readRow, EMAIL);
+    }
+
+    @Test
+    public void communityUsersIsRevalidatedOnEveryRead() throws Exception {
+        server.enqueue(new MockResponse().setHeader("ETag", ETAG).setBody(ROWS));
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", ETAG));
+
+        assertEquals(1, select("community_users").rows.size());
+        assertEquals(1, select("community_users").rows.size());
+
+        assertEquals(2, server.getRequestCount());
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(ETAG, server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(0, client.getSelectCache().getHitCount());
+        assertEquals(1, client.getSelectCache().getRevalidatedCount());
+    }
+
+    @Test
+    public void otherTablesAreServedLocallyWithinTtl() throws Exception {
+        server.enqueue(new MockResponse().setHeader("ETag", ETAG).setBody(ROWS));
+
+        assertTrue(select("events").success);
+        assertTrue(select("events").success);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, client.getSelectCache().getHitCount());
+    }
+
+    @Test
+    public void batchedSelectsBypassTheCache() throws Exception {
+        server.enqueue(new MockResponse().setHeader("ETag", ETAG).setBody(ROWS));
+        server.enqueue(new MockResponse().setHeader("ETag", ETAG).setBody(ROWS));
+        assertTrue(select("events").success);
+
+        DatabaseApiBatcher batcher = new DatabaseApiBatcher(client);
+        assertTrue(DatabaseApiBatcher.await(batcher.select(
+            DatabaseApiClient.selectTemplate("events", "email = ?", "email", "status"), SelectCacheTest::readRow, EMAIL)).success);
+
+        assertEquals(2, server.getRequestCount());
+        server.takeRequest();
+        RecordedRequest batched = server.takeRequest();
+        assertNull(batched.getHeader("If-None-Match"));
+    }
+}
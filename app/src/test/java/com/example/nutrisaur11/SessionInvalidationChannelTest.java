@@ -0,0 +1,94 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.firebase.messaging.RemoteMessage;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+@RunWith(RobolectricTestRunner.class)
+public class SessionInvalidationChannelTest {
+    private static final String EMAIL = "user@example.com";
+    private static final long TIMEOUT = 5_000;
+
+    private Context context;
+    private SharedPreferences prefs;
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+        prefs = context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE);
+        prefs.edit()
+            .putString("current_user_email", EMAIL)
+            .putBoolean("is_logged_in", true)
+            .commit();
+
+        // Each test gets a new application; drop the manager bound to the previous one
+        Field instance = SessionManager.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+    }
+
+    private static Map<String, String> payload(String type, String email) {
+        Map<String, String> data = new HashMap<>();
+        data.put(SessionInvalidationChannel.KEY_TYPE, type);
+        data.put(SessionInvalidationChannel.KEY_EMAIL, email);
+        return data;
+    }
+
+    private static void push(Map<String, String> data) {
+        SessionAwareMessagingService service = Robolectric.setupService(SessionAwareMessagingService.class);
+        service.onMessageReceived(new RemoteMessage.Builder("nutrisaur@fcm.googleapis.com").setData(data).build());
+    }
+
+    @Test
+    public void onlySessionEventsAreClaimed() {
+        assertTrue(SessionInvalidationChannel.isInvalidationMessage(payload(SessionInvalidationChannel.TYPE_ACCOUNT_DELETED, EMAIL)));
+        assertTrue(SessionInvalidationChannel.isInvalidationMessage(payload(SessionInvalidationChannel.TYPE_FORCE_LOGOUT, EMAIL)));
+        assertFalse(SessionInvalidationChannel.isInvalidationMessage(payload("new_recommendation", EMAIL)));
+        assertFalse(SessionInvalidationChannel.isInvalidationMessage(null));
+        assertFalse(SessionInvalidationChannel.dispatch(context, payload("new_recommendation", EMAIL)));
+    }
+
+    @Test
+    public void forceLogoutPushLogsOutWithoutForegroundActivity() throws InterruptedException {
+        SessionManager sessionManager = SessionManager.getInstance(context);
+        assertTrue(sessionManager.isLoggedIn());
+
+        push(payload(SessionInvalidationChannel.TYPE_FORCE_LOGOUT, EMAIL));
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        // The snapshot drops at once; prefs are cleared after the local stores are purged
+        while (prefs.getBoolean("is_logged_in", true) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertFalse(sessionManager.isLoggedIn());
+        assertFalse(prefs.getBoolean("is_logged_in", true));
+    }
+
+    @Test
+    public void pushForAnotherUserIsIgnored() {
+        SessionManager sessionManager = SessionManager.getInstance(context);
+
+        push(payload(SessionInvalidationChannel.TYPE_FORCE_LOGOUT, "someone.else@example.com"));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertTrue(sessionManager.isLoggedIn());
+    }
+}
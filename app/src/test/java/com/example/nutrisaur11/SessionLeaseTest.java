@@ -0,0 +1,206 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class SessionLeaseTest {
+    private static final String EMAIL = "user@example.com";
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static KeyPair serverKey;
+    private static String serverKeyPem;
+
+    private Context context;
+    private MockWebServer server;
+
+    @BeforeClass
+    public static void generateKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        serverKey = generator.generateKeyPair();
+        serverKeyPem = "-----BEGIN PUBLIC KEY-----\n"
+            + Base64.getMimeEncoder().encodeToString(serverKey.getPublic().getEncoded())
+            + "\n-----END PUBLIC KEY-----";
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+        server = new MockWebServer();
+        server.start();
+
+        // Each test gets a new application; drop the token manager bound to the previous one
+        Field instance = FCMTokenManager.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * A lease as issue_session_lease signs it
+     */
+    private static String sign(String email, long issuedAtMillis, long expiresAtMillis) throws Exception {
+        JSONObject payload = new JSONObject()
+            .put("email", email)
+            .put("status", "1")
+            .put("iat", TimeUnit.MILLISECONDS.toSeconds(issuedAtMillis))
+            .put("exp", TimeUnit.MILLISECONDS.toSeconds(expiresAtMillis));
+        String encodedPayload = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(serverKey.getPrivate());
+        signature.update(encodedPayload.getBytes(StandardCharsets.UTF_8));
+        return encodedPayload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature.sign());
+    }
+
+    private SessionLease newLease() {
+        return new SessionLease(context, new OkHttpClient(), server.url("/lease").toString(), serverKeyPem);
+    }
+
+    private MockResponse issued(String token) throws Exception {
+        JSONObject body = new JSONObject()
+            .put("success", true)
+            .put("exists", true)
+            .put("lease", token)
+            .put("public_key", serverKeyPem)
+            .put("key_endorsement", JSONObject.NULL);
+        return new MockResponse().setBody(body.toString());
+    }
+
+    /**
+     * Store a lease the way a completed renewal does
+     */
+    private void storeLease(String token) {
+        context.getSharedPreferences("session_lease_prefs", Context.MODE_PRIVATE).edit()
+            .putString("lease", token)
+            .commit();
+    }
+
+    /**
+     * Mark the device's FCM token as acknowledged by the server for the user
+     */
+    private void registerToken(String token) {
+        context.getSharedPreferences("fcm_prefs", Context.MODE_PRIVATE).edit()
+            .putString("user_email", EMAIL)
+            .putString("fcm_token", token)
+            .putString("acked_registration_digest", "digest")
+            .commit();
+    }
+
+    @Test
+    public void leaseIsValidUntilExpiryAndRenewsInTheLastQuarter() throws Exception {
+        long now = System.currentTimeMillis();
+        storeLease(sign(EMAIL, now, now + 6 * HOUR));
+        SessionLease lease = newLease();
+
+        assertTrue(lease.isValidFor(EMAIL, now));
+        assertTrue(lease.isValidFor(EMAIL.toUpperCase(), now + 5 * HOUR));
+        assertFalse(lease.isValidFor("other@example.com", now));
+        assertFalse(lease.isValidFor(EMAIL, now + 6 * HOUR));
+
+        assertFalse(lease.needsRenewal(EMAIL, now + 4 * HOUR));
+        assertTrue(lease.needsRenewal(EMAIL, now + 5 * HOUR));
+    }
+
+    @Test
+    public void tamperedLeaseIsRejected() throws Exception {
+        long now = System.currentTimeMillis();
+        String token = sign(EMAIL, now, now + 6 * HOUR);
+        assertNotNull(SessionLease.verify(token, serverKeyPem));
+
+        // Same signature over a payload for another user
+        String forged = sign("attacker@example.com", now, now + 6 * HOUR);
+        String swapped = forged.substring(0, forged.indexOf('.')) + token.substring(token.indexOf('.'));
+        assertNull(SessionLease.verify(swapped, serverKeyPem));
+
+        // Flipped signature byte (not the last character, whose low bits may be padding)
+        int flip = token.indexOf('.') + 10;
+        char original = token.charAt(flip);
+        assertNull(SessionLease.verify(token.substring(0, flip) + (original == 'A' ? 'B' : 'A') + token.substring(flip + 1),
+            serverKeyPem));
+
+        // Valid lease, but not signed with the pinned key
+        assertNull(SessionLease.verify(token, SessionLease.PINNED_PUBLIC_KEY));
+
+        // A tampered stored lease is discarded on load
+        storeLease(swapped);
+        assertFalse(newLease().isValidFor(EMAIL, now));
+    }
+
+    @Test
+    public void expiredLeaseRenewsWithLeaseCredential() throws Exception {
+        long now = System.currentTimeMillis();
+        String expired = sign(EMAIL, now - 7 * HOUR, now - HOUR);
+        storeLease(expired);
+        SessionLease lease = newLease();
+        assertFalse(lease.isValidFor(EMAIL, now));
+
+        server.enqueue(issued(sign(EMAIL, now, now + 6 * HOUR)));
+        assertEquals(SessionLease.RenewResult.RENEWED, lease.renew(EMAIL));
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("Lease " + expired, request.getHeader("Authorization"));
+        assertTrue(lease.isValidFor(EMAIL, now + HOUR));
+    }
+
+    @Test
+    public void firstLeaseUsesAcknowledgedDeviceToken() throws Exception {
+        SessionLease lease = newLease();
+
+        // Nothing the server would accept yet: no request is sent
+        assertEquals(SessionLease.RenewResult.UNAUTHORIZED, lease.renew(EMAIL));
+        assertEquals(0, server.getRequestCount());
+
+        registerToken("device-token");
+        long now = System.currentTimeMillis();
+        server.enqueue(issued(sign(EMAIL, now, now + 6 * HOUR)));
+        assertEquals(SessionLease.RenewResult.RENEWED, lease.renew(EMAIL));
+        assertEquals("Device device-token", server.takeRequest().getHeader("Authorization"));
+    }
+
+    @Test
+    public void leaseSignedWithUnendorsedKeyIsNotStored() throws Exception {
+        long now = System.currentTimeMillis();
+        registerToken("device-token");
+        SessionLease lease = new SessionLease(context, new OkHttpClient(), server.url("/lease").toString(),
+            SessionLease.PINNED_PUBLIC_KEY);
+
+        // The server answers with a key the pinned one never endorsed
+        server.enqueue(issued(sign(EMAIL, now, now + 6 * HOUR)));
+        assertEquals(SessionLease.RenewResult.ERROR, lease.renew(EMAIL));
+        assertFalse(lease.isValidFor(EMAIL, now));
+    }
+}
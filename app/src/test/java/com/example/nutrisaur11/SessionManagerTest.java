@@ -0,0 +1,131 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Existence checks against a local stand-in for DatabaseAPI.php?action=session_probe
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SessionManagerTest {
+    private static final String EMAIL = "user@example.com";
+    private static final String DEVICE_TOKEN = "device-token";
+    private static final int CALLERS = 16;
+
+    private Context context;
+    private MockWebServer server;
+    private SessionManager sessionManager;
+    private final CountDownLatch releaseProbe = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+        context.getSharedPreferences("nutrisaur_prefs", Context.MODE_PRIVATE).edit()
+            .putString("current_user_email", EMAIL)
+            .putBoolean("is_logged_in", true)
+            .commit();
+        context.getSharedPreferences("fcm_prefs", Context.MODE_PRIVATE).edit()
+            .putString("user_email", EMAIL)
+            .putString("fcm_token", DEVICE_TOKEN)
+            .putString("acked_registration_digest", "digest")
+            .commit();
+
+        // Each test gets a new application; drop the managers bound to the previous one
+        setStatic(SessionManager.class, "instance", null);
+        setStatic(FCMTokenManager.class, "instance", null);
+
+        // The probe is held until the test has every caller waiting on it
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                releaseProbe.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setHeader("ETag", "\"v1\"")
+                    .setBody("{\"success\":true,\"exists\":true,\"version\":\"\\\"v1\\\"\"}");
+            }
+        });
+        server.start();
+
+        sessionManager = SessionManager.getInstance(context);
+        SessionLease lease = new SessionLease(context, new OkHttpClient(), server.url("/lease").toString(),
+            SessionLease.PINNED_PUBLIC_KEY);
+        Field probe = SessionManager.class.getDeclaredField("sessionProbe");
+        probe.setAccessible(true);
+        probe.set(sessionManager, new SessionProbe(context, lease, new OkHttpClient(), server.url("/probe").toString()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        releaseProbe.countDown();
+        server.shutdown();
+    }
+
+    private static void setStatic(Class<?> type, String name, Object value) throws Exception {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+
+    @Test
+    public void parallelChecksForOneEmailShareOneRequest() throws Exception {
+        Method checkUser = SessionManager.class.getDeclaredMethod("checkUser", String.class);
+        checkUser.setAccessible(true);
+
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(callers.submit(() -> {
+                start.await();
+                return checkUser.invoke(sessionManager, EMAIL);
+            }));
+        }
+        start.countDown();
+
+        // Every caller but the first must have joined the held request before it is answered
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sessionManager.getCoalescedCheckCount() < CALLERS - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        releaseProbe.countDown();
+
+        for (Future<Object> result : results) {
+            assertEquals(Boolean.TRUE, result.get(5, TimeUnit.SECONDS));
+        }
+        callers.shutdown();
+
+        System.out.println("existence check: " + CALLERS + " parallel callers, " + server.getRequestCount()
+            + " request(s), " + sessionManager.getCoalescedCheckCount() + " joined");
+        assertEquals(1, server.getRequestCount());
+        assertEquals(CALLERS - 1, sessionManager.getCoalescedCheckCount());
+
+        // The flight is over: the next check is a request of its own
+        assertTrue((Boolean) checkUser.invoke(sessionManager, EMAIL));
+        assertEquals(2, server.getRequestCount());
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Probe traffic against a local stand-in for DatabaseAPI.php?action=session_probe
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SessionProbeTest {
+    private static final String EMAIL = "user@example.com";
+    private static final String DEVICE_TOKEN = "device-token";
+    private static final String VERSION = "\"5d41402abc4b2a76b9719d911017c592\"";
+    private static final int CHECKS = 20;
+
+    private Context context;
+    private MockWebServer server;
+    private final AtomicLong bodyBytesServed = new AtomicLong();
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+
+        // Each test gets a new application; drop the token manager bound to the previous one
+        Field instance = FCMTokenManager.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+
+        // Same contract as the PHP action: 401 without an accepted credential, 304 on a matching version
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (!("Device " + DEVICE_TOKEN).equals(request.getHeader("Authorization"))) {
+                    return serve(new MockResponse().setResponseCode(401)
+                        .setBody("{\"success\":false,\"message\":\"Session credential required\"}"));
+                }
+                if (VERSION.equals(request.getHeader("If-None-Match"))) {
+                    return new MockResponse().setResponseCode(304).setHeader("ETag", VERSION);
+                }
+                return serve(new MockResponse().setHeader("ETag", VERSION)
+                    .setBody("{\"success\":true,\"exists\":true,\"version\":\"" + VERSION.replace("\"", "\\\"") + "\"}"));
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private MockResponse serve(MockResponse response) {
+        bodyBytesServed.addAndGet(response.getBody() != null ? response.getBody().size() : 0);
+        return response;
+    }
+
+    private SessionProbe newProbe() {
+        SessionLease lease = new SessionLease(context, new OkHttpClient(), server.url("/lease").toString(),
+            SessionLease.PINNED_PUBLIC_KEY);
+        return new SessionProbe(context, lease, new OkHttpClient(), server.url("/probe").toString());
+    }
+
+    private void registerToken(String token) {
+        context.getSharedPreferences("fcm_prefs", Context.MODE_PRIVATE).edit()
+            .putString("user_email", EMAIL)
+            .putString("fcm_token", token)
+            .putString("acked_registration_digest", "digest")
+            .commit();
+    }
+
+    @Test
+    public void noCredentialSendsNoProbe() {
+        SessionProbe probe = newProbe();
+        for (int i = 0; i < CHECKS; i++) {
+            assertEquals(SessionProbe.Result.UNAUTHORIZED, probe.probe(EMAIL));
+        }
+        // Each check is left to the status select alone, as before the probe existed
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void deviceCredentialGetsNotModifiedAfterFirstCheck() {
+        registerToken(DEVICE_TOKEN);
+        SessionProbe probe = newProbe();
+        for (int i = 0; i < CHECKS; i++) {
+            assertEquals(SessionProbe.Result.VALID, probe.probe(EMAIL));
+        }
+
+        assertEquals(CHECKS, server.getRequestCount());
+        assertEquals(CHECKS - 1, probe.getNotModifiedCount());
+        System.out.println("session_probe stand-in: " + CHECKS + " checks, " + server.getRequestCount()
+            + " requests, " + probe.getNotModifiedCount() + " x 304, " + bodyBytesServed.get() + " body bytes");
+        assertTrue(bodyBytesServed.get() < 100);
+    }
+
+    @Test
+    public void refusedCredentialIsNotRetried() {
+        registerToken("revoked-token");
+        SessionProbe probe = newProbe();
+        for (int i = 0; i < CHECKS; i++) {
+            assertEquals(SessionProbe.Result.UNAUTHORIZED, probe.probe(EMAIL));
+        }
+        assertEquals(1, server.getRequestCount());
+
+        // A new credential is tried again
+        registerToken(DEVICE_TOKEN);
+        assertEquals(SessionProbe.Result.VALID, probe.probe(EMAIL));
+        assertEquals(2, server.getRequestCount());
+    }
+}
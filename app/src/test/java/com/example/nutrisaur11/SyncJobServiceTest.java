@@ -0,0 +1,77 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.Context;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class SyncJobServiceTest {
+    private Context context;
+    private JobScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    private JobInfo pending(int jobId) {
+        JobInfo job = scheduler.getPendingJob(jobId);
+        assertNotNull("job " + jobId + " not scheduled", job);
+        return job;
+    }
+
+    @Test
+    public void registerRetryRunsOnAnyNetworkWithinTheHour() {
+        long delay = TimeUnit.SECONDS.toMillis(30);
+        SyncJobService.scheduleOutboxDrain(context, delay, false);
+
+        JobInfo job = pending(SyncJobService.JOB_OUTBOX_DRAIN);
+        assertEquals(JobInfo.NETWORK_TYPE_UNMETERED, job.getNetworkType());
+        assertEquals(delay, job.getMinLatencyMillis());
+        // Cellular-only devices still get the retry once the deadline passes
+        assertEquals(delay + TimeUnit.HOURS.toMillis(1), job.getMaxExecutionDelayMillis());
+    }
+
+    @Test
+    public void pendingClearWaitsAtMostFifteenMinutes() {
+        SyncJobService.scheduleOutboxDrain(context, 0, true);
+
+        JobInfo job = pending(SyncJobService.JOB_OUTBOX_DRAIN);
+        assertEquals(TimeUnit.MINUTES.toMillis(15), job.getMaxExecutionDelayMillis());
+    }
+
+    @Test
+    public void newerDrainReplacesPendingOne() {
+        SyncJobService.scheduleOutboxDrain(context, TimeUnit.MINUTES.toMillis(10), false);
+        SyncJobService.scheduleOutboxDrain(context, 0, true);
+
+        assertEquals(1, scheduler.getAllPendingJobs().size());
+        assertEquals(0, pending(SyncJobService.JOB_OUTBOX_DRAIN).getMinLatencyMillis());
+    }
+
+    @Test
+    public void periodicJobsKeepTheirPhase() {
+        SyncJobService.scheduleSessionRenewal(context);
+        JobInfo first = pending(SyncJobService.JOB_SESSION_RENEWAL);
+        SyncJobService.scheduleSessionRenewal(context);
+
+        assertSame(first, pending(SyncJobService.JOB_SESSION_RENEWAL));
+        assertEquals(JobInfo.NETWORK_TYPE_ANY, first.getNetworkType());
+
+        SyncJobService.cancel(context, SyncJobService.JOB_SESSION_RENEWAL);
+        assertEquals(0, scheduler.getAllPendingJobs().size());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class UserPartitionTest {
+    private static final String EMAIL = "user@example.com";
+    private static final int FILES = 2_000;
+    private static final int FILE_SIZE = 4_096;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+    }
+
+    private static void fill(File dir, int count) throws IOException {
+        byte[] data = new byte[FILE_SIZE];
+        for (int i = 0; i < count; i++) {
+            try (FileOutputStream out = new FileOutputStream(new File(dir, "entry-" + i))) {
+                out.write(data);
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void dropRemovesFilesAndPrefsOfThatUserOnly() throws IOException {
+        UserPartition partition = UserPartition.activate(context, EMAIL);
+        fill(partition.getFilesDir(), 3);
+        File database = partition.getDatabaseFile("store.db");
+        assertTrue(database.createNewFile());
+        SharedPreferences prefs = context.getSharedPreferences(partition.getPreferencesName("session"), Context.MODE_PRIVATE);
+        prefs.edit().putBoolean("session_is_valid", true).commit();
+
+        UserPartition other = UserPartition.activate(context, "other@example.com");
+        fill(other.getFilesDir(), 1);
+
+        UserPartition.drop(context, EMAIL);
+
+        assertFalse(database.exists());
+        assertFalse(new File(partition.getFilesDir(), "entry-0").exists());
+        assertFalse(context.getSharedPreferences(UserPartition.preferencesName(EMAIL, "session"), Context.MODE_PRIVATE)
+            .contains("session_is_valid"));
+        assertTrue(new File(other.getFilesDir(), "entry-0").exists());
+    }
+
+    @Test
+    public void dropIsConstantTimeComparedToDeletingInPlace() throws IOException {
+        File inPlace = new File(context.getFilesDir(), "shared-store");
+        assertTrue(inPlace.mkdirs());
+        fill(inPlace, FILES);
+        long start = System.nanoTime();
+        deleteRecursively(inPlace);
+        long deleteMillis = (System.nanoTime() - start) / 1_000_000;
+
+        UserPartition partition = UserPartition.activate(context, EMAIL);
+        fill(partition.getFilesDir(), FILES);
+        long dropMillis = UserPartition.drop(context, EMAIL);
+
+        System.out.println("logout purge of " + FILES + " x " + FILE_SIZE + " B: in-place delete "
+            + deleteMillis + "ms, partition drop " + dropMillis + "ms");
+        assertTrue("drop=" + dropMillis + "ms delete=" + deleteMillis + "ms", dropMillis <= deleteMillis);
+    }
+
+    @Test
+    public void pipelineReportsEachStep() {
+        LogoutPurgePipeline.Report report = new LogoutPurgePipeline()
+            .addStep("UserPartition", () -> UserPartition.drop(context, EMAIL))
+            .addStep("Slow", () -> Thread.sleep(2_000))
+            .run(200);
+
+        assertTrue(report.getStepTimings().containsKey("UserPartition"));
+        assertEquals(1, report.getPendingSteps().size());
+        assertEquals("Slow", report.getPendingSteps().get(0));
+        assertTrue(report.getTotalMillis() < 2_000);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class UserPreferencesStoreTest {
+    private static final String EMAIL = "user@example.com";
+    private static final String BARANGAY = "Barangay 1";
+    private static final int LOOKUPS = 200;
+
+    private Context context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+
+        // Each test gets a new application; drop the store bound to the previous one
+        Field instance = UserPreferencesStore.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+
+        UserPreferencesDbHelper helper = new UserPreferencesDbHelper(context);
+        ContentValues row = new ContentValues();
+        row.put(UserPreferencesDbHelper.COL_USER_EMAIL, EMAIL);
+        row.put(UserPreferencesDbHelper.COL_BARANGAY, BARANGAY);
+        helper.getWritableDatabase().insertWithOnConflict(UserPreferencesDbHelper.TABLE_NAME, null, row,
+            SQLiteDatabase.CONFLICT_REPLACE);
+        helper.close();
+    }
+
+    /**
+     * The lookup FCMTokenManager made before the store: open a helper, check the table and the
+     * column, query, close
+     */
+    private String barangayPerCallHelper(String userEmail) {
+        UserPreferencesDbHelper dbHelper = new UserPreferencesDbHelper(context);
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            try (Cursor tableCheck = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' AND name=?",
+                    new String[]{UserPreferencesDbHelper.TABLE_NAME})) {
+                if (!tableCheck.moveToFirst()) {
+                    return "";
+                }
+            }
+            boolean hasBarangayColumn = false;
+            try (Cursor columnCheck = db.rawQuery("PRAGMA table_info(" + UserPreferencesDbHelper.TABLE_NAME + ")", null)) {
+                while (columnCheck.moveToNext()) {
+                    if (UserPreferencesDbHelper.COL_BARANGAY.equals(columnCheck.getString(columnCheck.getColumnIndex("name")))) {
+                        hasBarangayColumn = true;
+                        break;
+                    }
+                }
+            }
+            if (!hasBarangayColumn) {
+                return "";
+            }
+            try (Cursor cursor = db.query(UserPreferencesDbHelper.TABLE_NAME, new String[]{UserPreferencesDbHelper.COL_BARANGAY},
+                    UserPreferencesDbHelper.COL_USER_EMAIL + " = ?", new String[]{userEmail}, null, null, null)) {
+                return cursor.moveToFirst() ? cursor.getString(0) : "";
+            }
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void lookupsMatchThePerCallHelper() {
+        UserPreferencesStore store = UserPreferencesStore.getInstance(context);
+        assertEquals(BARANGAY, store.getBarangay(EMAIL));
+        assertEquals(barangayPerCallHelper(EMAIL), store.getBarangay(EMAIL));
+        assertEquals("", store.getBarangay("unknown@example.com"));
+        assertEquals(barangayPerCallHelper("unknown@example.com"), store.getBarangay("unknown@example.com"));
+    }
+
+    @Test
+    public void longLivedStoreIsFasterThanPerCallHelper() {
+        UserPreferencesStore store = UserPreferencesStore.getInstance(context);
+        // Warm up both paths (class loading, statement compilation, schema cache)
+        for (int i = 0; i < 20; i++) {
+            barangayPerCallHelper(EMAIL);
+            store.getBarangay(EMAIL);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            barangayPerCallHelper(EMAIL);
+        }
+        long perCallMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / LOOKUPS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            store.getBarangay(EMAIL);
+        }
+        long storeMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / LOOKUPS;
+
+        System.out.println("barangay by email, mean of " + LOOKUPS + ": per-call helper " + perCallMicros
+            + " us (open + 3 queries + close), long-lived store " + storeMicros + " us (compiled statement)");
+        assertTrue("perCall=" + perCallMicros + "us store=" + storeMicros + "us", storeMicros < perCallMicros);
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.nutrisaur11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValidationSchedulerTest {
+    private static final long BASE = 3_000;
+    private static final long MAX = 3_600_000;
+    private static final long SLOW = 2_000;
+    private static final long VERY_SLOW = 5_000;
+    private static final long FAST = 100;
+
+    // SessionManager's production settings
+    private static final long HOUR = 3_600_000;
+    private static final long PUSHED_INTERVAL = 15 * 60_000;
+    private static final long UNPUSHED_INTERVAL = 60_000;
+    private static final long MAX_CHECK_INTERVAL = 2 * HOUR;
+    private static final long SLOW_CONNECTION = 5_000;
+    private static final long VERY_SLOW_CONNECTION = 10_000;
+    private static final long WIFI_LATENCY = 150;
+    private static final long CELLULAR_LATENCY = 6_000;
+
+    private long now;
+    private FixedRandom random;
+    private ValidationScheduler scheduler;
+
+    /**
+     * Random whose nextDouble() is fixed; 0.5 means no jitter
+     */
+    private static final class FixedRandom extends Random {
+        double value = 0.5;
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        now = 1_000_000;
+        random = new FixedRandom();
+        scheduler = newScheduler(MAX);
+    }
+
+    private ValidationScheduler newScheduler(long maxInterval) {
+        return new ValidationScheduler(BASE, maxInterval, SLOW, VERY_SLOW, () -> now, random);
+    }
+
+    @Test
+    public void healthyLinkUsesBaseInterval() {
+        assertEquals(BASE, scheduler.nextDelay());
+        scheduler.recordResult(FAST, true);
+        assertEquals(BASE, scheduler.nextDelay());
+    }
+
+    @Test
+    public void failuresBackOffExponentially() {
+        scheduler.recordResult(FAST, false);
+        assertEquals(2 * BASE, scheduler.nextDelay());
+
+        // From the second failure on, the failure rate is above one half and doubles the delay too
+        scheduler.recordResult(FAST, false);
+        assertEquals(2 * 4 * BASE, scheduler.nextDelay());
+        scheduler.recordResult(FAST, false);
+        assertEquals(2 * 8 * BASE, scheduler.nextDelay());
+        scheduler.recordResult(FAST, false);
+        assertEquals(2 * 16 * BASE, scheduler.nextDelay());
+        scheduler.recordResult(FAST, false);
+        assertEquals(2 * 32 * BASE, scheduler.nextDelay());
+    }
+
+    @Test
+    public void backoffStopsGrowingAfterMaxExponent() {
+        for (int i = 0; i < 5; i++) {
+            scheduler.recordResult(FAST, false);
+        }
+        long atMaxExponent = scheduler.nextDelay();
+        for (int i = 0; i < 10; i++) {
+            scheduler.recordResult(FAST, false);
+        }
+        assertEquals(atMaxExponent, scheduler.nextDelay());
+    }
+
+    @Test
+    public void successResetsBackoff() {
+        for (int i = 0; i < 5; i++) {
+            scheduler.recordResult(FAST, false);
+        }
+
+        // The exponential part resets at once; the failure-rate EWMA decays over a few successes
+        scheduler.recordResult(FAST, true);
+        assertEquals(2 * BASE, scheduler.nextDelay());
+        scheduler.recordResult(FAST, true);
+        scheduler.recordResult(FAST, true);
+        assertTrue(scheduler.getFailureRate() <= 0.5);
+        assertEquals(BASE, scheduler.nextDelay());
+    }
+
+    @Test
+    public void slowLinksStretchInterval() {
+        scheduler.recordResult(SLOW + 1, true);
+        assertEquals(2 * BASE, scheduler.nextDelay());
+
+        ValidationScheduler verySlow = newScheduler(MAX);
+        verySlow.recordResult(VERY_SLOW + 1, true);
+        assertEquals(4 * BASE, verySlow.nextDelay());
+    }
+
+    @Test
+    public void delayIsCappedAtMaxInterval() {
+        long max = 15_000;
+        ValidationScheduler capped = newScheduler(max);
+        for (int i = 0; i < 5; i++) {
+            capped.recordResult(VERY_SLOW + 1, false);
+        }
+        assertEquals(max, capped.nextDelay());
+    }
+
+    @Test
+    public void jitterStaysWithinTwentyPercent() {
+        random.value = 0.0;
+        assertEquals((long) (BASE * 0.8), scheduler.nextDelay());
+        random.value = 0.999999;
+        long high = scheduler.nextDelay();
+        assertTrue(high <= (long) (BASE * 1.2));
+        assertTrue(high > BASE);
+    }
+
+    @Test
+    public void resumeReturnsRemainingDelay() {
+        scheduler.onWakeup();
+        scheduler.park();
+        assertTrue(scheduler.isParked());
+
+        now += 1_000;
+        assertEquals(BASE - 1_000, scheduler.resume());
+        assertFalse(scheduler.isParked());
+
+        scheduler.park();
+        now += BASE;
+        assertEquals(0, scheduler.resume());
+        assertEquals(1, scheduler.getWakeupCount());
+    }
+
+    /**
+     * Safety-net wakeups in hour number {@code hour} (end inclusive) for a link where every
+     * check takes {@code latency} and succeeds or not; offline is a failed check with no latency
+     */
+    private long wakeupsInHour(long interval, long latency, boolean success, int hour) {
+        ValidationScheduler production = new ValidationScheduler(interval, MAX_CHECK_INTERVAL,
+            SLOW_CONNECTION, VERY_SLOW_CONNECTION, () -> now, random);
+        long from = hour * HOUR;
+        long to = from + HOUR;
+        long wakeups = 0;
+        for (long t = production.nextDelay(interval); t <= to; t += production.nextDelay(interval)) {
+            production.onWakeup();
+            production.recordResult(latency, success);
+            if (t > from) {
+                wakeups++;
+            }
+        }
+        return wakeups;
+    }
+
+    @Test
+    public void wifiWakeupsPerHour() {
+        assertEquals(4, wakeupsInHour(PUSHED_INTERVAL, WIFI_LATENCY, true, 0));
+        assertEquals(4, wakeupsInHour(PUSHED_INTERVAL, WIFI_LATENCY, true, 5));
+        // Until the server has acked the FCM token
+        assertEquals(60, wakeupsInHour(UNPUSHED_INTERVAL, WIFI_LATENCY, true, 0));
+    }
+
+    @Test
+    public void cellularWakeupsPerHour() {
+        // Checks slower than SLOW_CONNECTION double the interval
+        assertEquals(2, wakeupsInHour(PUSHED_INTERVAL, CELLULAR_LATENCY, true, 0));
+        assertEquals(2, wakeupsInHour(PUSHED_INTERVAL, CELLULAR_LATENCY, true, 5));
+        assertEquals(30, wakeupsInHour(UNPUSHED_INTERVAL, CELLULAR_LATENCY, true, 0));
+    }
+
+    @Test
+    public void offlineWakeupsPerHour() {
+        // Each offline wakeup counts as a failed check, so the interval climbs to the 2 hour ceiling
+        assertEquals(2, wakeupsInHour(PUSHED_INTERVAL, 0, false, 0));
+        assertEquals(5, wakeupsInHour(UNPUSHED_INTERVAL, 0, false, 0));
+        for (int hour = 2; hour < 8; hour++) {
+            assertTrue(wakeupsInHour(PUSHED_INTERVAL, 0, false, hour) <= 1);
+            assertTrue(wakeupsInHour(UNPUSHED_INTERVAL, 0, false, hour) <= 1);
+        }
+    }
+}
@@ -75,7 +75,7 @@ function sendFCMNotification($fcmToken, $title, $body) {
 }
 
 // FCM Notification Sending Function using Firebase Admin SDK
-function sendFCMNotificationToToken($fcmToken, $title, $body, $dataPayload = null) {
+function sendFCMNotificationToToken($fcmToken, $title, $body, $dataPayload = null, $dataOnly = false) {
     try {
         // Firebase Admin SDK Service Account Key
         $serviceAccountKey = [
@@ -129,6 +129,13 @@ function sendFCMNotificationToToken($fcmToken, $title, $body, $dataPayload = nul
             ]
         ];
         
+        // Data-only messages (session invalidation) must not show a visible notification
+        if ($dataOnly) {
+            unset($message['message']['notification']);
+            unset($message['message']['apns']);
+            $message['message']['android'] = ['priority' => 'HIGH'];
+        }
+        
         $headers = [
             'Authorization: Bearer ' . $accessToken,
             'Content-Type: application/json'
@@ -189,13 +196,14 @@ function sendAccountDeletedNotification($userEmail) {
             'body' => '',   // Empty = no notification
             'data' => [
                 'type' => 'account_deleted',
+                'email' => $userEmail,
                 'message' => 'Your account has been deleted',
                 'silent' => 'true'
             ]
         ];
         
-        // Use existing FCM function
-        $result = sendFCMNotificationToToken($fcmToken, $notification['title'], $notification['body']);
+        // Use existing FCM function; the app's SessionInvalidationChannel reads the data payload
+        $result = sendFCMNotificationToToken($fcmToken, $notification['title'], $notification['body'], $notification['data'], true);
         
         if ($result['success']) {
             error_log("Account deletion notification sent successfully to: $userEmail");
@@ -211,6 +219,46 @@ function sendAccountDeletedNotification($userEmail) {
     }
 }
 
+/**
+ * Send silent FCM session invalidation (account_archived, force_logout, session_changed)
+ * The Android app revalidates the session only when it receives one of these
+ */
+function sendSessionInvalidationNotification($userEmail, $type = 'session_changed') {
+    try {
+        error_log("Sending session invalidation ($type) to: $userEmail");
+        
+        $db = DatabaseAPI::getInstance();
+        $stmt = $db->getPDO()->prepare("
+            SELECT fcm_token FROM community_users 
+            WHERE email = ? AND fcm_token IS NOT NULL AND fcm_token != ''
+        ");
+        $stmt->execute([$userEmail]);
+        $user = $stmt->fetch(PDO::FETCH_ASSOC);
+        
+        if (!$user || empty($user['fcm_token'])) {
+            error_log("No FCM token found for user: $userEmail");
+            return false;
+        }
+        
+        $dataPayload = [
+            'type' => $type,
+            'email' => $userEmail,
+            'silent' => 'true'
+        ];
+        $result = sendFCMNotificationToToken($user['fcm_token'], '', '', $dataPayload, true);
+        
+        if (!$result['success']) {
+            error_log("Failed to send session invalidation to: $userEmail - " . ($result['error'] ?? 'Unknown error'));
+        }
+        
+        return $result['success'];
+        
+    } catch (Exception $e) {
+        error_log("Error sending session invalidation: " . $e->getMessage());
+        return false;
+    }
+}
+
 /**
  * Send FCM notification for profile updates
  * Notifies user when their profile data has been updated
@@ -4241,6 +4289,362 @@ function sendWelcomeEmail($email, $username) {
     }
 }
 
+// ========================================
+// COMPACT WIRE FORMAT (CBOR, RFC 8949)
+// ========================================
+
+// Mobile clients opt in with "Accept: application/cbor"; JSON stays the default for everyone else.
+// The mobile actions (select, insert, update, sync_fcm_token, batch) encode their reply with
+// encodeApiResponse(); everything else, including error replies, stays JSON.
+// Actions that read their body through readRequestInput() (select, insert, update,
+// sync_fcm_token, batch) also accept CBOR bodies sent with "Content-Type: application/cbor".
+
+function cborEncode($value) {
+    if ($value === null) {
+        return "\xF6";
+    }
+    if ($value === false) {
+        return "\xF4";
+    }
+    if ($value === true) {
+        return "\xF5";
+    }
+    if (is_int($value)) {
+        return $value >= 0 ? cborHead(0, $value) : cborHead(1, -1 - $value);
+    }
+    if (is_float($value)) {
+        return "\xFB" . pack('E', $value);
+    }
+    if (is_string($value)) {
+        return cborHead(3, strlen($value)) . $value;
+    }
+    // Same shapes as json_encode: objects and non-list arrays are maps, list arrays are arrays
+    if (is_object($value) || (is_array($value) && $value !== array_values($value))) {
+        $fields = is_object($value) ? get_object_vars($value) : $value;
+        $out = cborHead(5, count($fields));
+        foreach ($fields as $key => $item) {
+            $out .= cborEncode((string) $key) . cborEncode($item);
+        }
+        return $out;
+    }
+    if (is_array($value)) {
+        $out = cborHead(4, count($value));
+        foreach ($value as $item) {
+            $out .= cborEncode($item);
+        }
+        return $out;
+    }
+    return cborEncode((string) $value);
+}
+
+function cborHead($major, $length) {
+    if ($length < 24) {
+        return chr(($major << 5) | $length);
+    }
+    if ($length <= 0xFF) {
+        return chr(($major << 5) | 24) . chr($length);
+    }
+    if ($length <= 0xFFFF) {
+        return chr(($major << 5) | 25) . pack('n', $length);
+    }
+    if ($length <= 0xFFFFFFFF) {
+        return chr(($major << 5) | 26) . pack('N', $length);
+    }
+    return chr(($major << 5) | 27) . pack('J', $length);
+}
+
+function cborDecode($bytes) {
+    $offset = 0;
+    $value = cborDecodeItem($bytes, $offset);
+    if ($offset !== strlen($bytes)) {
+        throw new Exception('Trailing bytes after CBOR item');
+    }
+    return $value;
+}
+
+function cborDecodeItem($bytes, &$offset) {
+    if ($offset >= strlen($bytes)) {
+        throw new Exception('Truncated CBOR item');
+    }
+    $initial = ord($bytes[$offset++]);
+    $major = $initial >> 5;
+    $info = $initial & 0x1F;
+
+    if ($major === 7) {
+        switch ($info) {
+            case 20: return false;
+            case 21: return true;
+            case 25: return cborHalfToFloat(unpack('n', cborRead($bytes, $offset, 2))[1]);
+            case 26: return unpack('G', cborRead($bytes, $offset, 4))[1];
+            case 27: return unpack('E', cborRead($bytes, $offset, 8))[1];
+            default: return null;
+        }
+    }
+
+    $indefinite = $info === 31;
+    $length = $indefinite ? -1 : cborReadLength($bytes, $offset, $info);
+
+    switch ($major) {
+        case 0:
+            return $length;
+        case 1:
+            return -1 - $length;
+        case 2:
+        case 3:
+            if (!$indefinite) {
+                return cborRead($bytes, $offset, $length);
+            }
+            $text = '';
+            while (!cborAtBreak($bytes, $offset)) {
+                $text .= cborDecodeItem($bytes, $offset);
+            }
+            return $text;
+        case 4:
+            $items = [];
+            for ($i = 0; $indefinite ? !cborAtBreak($bytes, $offset) : $i < $length; $i++) {
+                $items[] = cborDecodeItem($bytes, $offset);
+            }
+            return $items;
+        case 5:
+            $map = [];
+            for ($i = 0; $indefinite ? !cborAtBreak($bytes, $offset) : $i < $length; $i++) {
+                $key = cborDecodeItem($bytes, $offset);
+                $map[is_scalar($key) ? (string) $key : json_encode($key)] = cborDecodeItem($bytes, $offset);
+            }
+            return $map;
+        default:
+            // Tag: ignore it and return the tagged item
+            return cborDecodeItem($bytes, $offset);
+    }
+}
+
+function cborReadLength($bytes, &$offset, $info) {
+    if ($info < 24) {
+        return $info;
+    }
+    switch ($info) {
+        case 24: return ord(cborRead($bytes, $offset, 1));
+        case 25: return unpack('n', cborRead($bytes, $offset, 2))[1];
+        case 26: return unpack('N', cborRead($bytes, $offset, 4))[1];
+        case 27: return unpack('J', cborRead($bytes, $offset, 8))[1];
+    }
+    throw new Exception('Malformed CBOR length');
+}
+
+function cborRead($bytes, &$offset, $length) {
+    if ($length < 0 || $offset + $length > strlen($bytes)) {
+        throw new Exception('Truncated CBOR item');
+    }
+    $chunk = substr($bytes, $offset, $length);
+    $offset += $length;
+    return $chunk;
+}
+
+function cborAtBreak($bytes, &$offset) {
+    if ($offset >= strlen($bytes)) {
+        throw new Exception('Missing CBOR break');
+    }
+    if ($bytes[$offset] === "\xFF") {
+        $offset++;
+        return true;
+    }
+    return false;
+}
+
+function cborHalfToFloat($half) {
+    $exponent = ($half >> 10) & 0x1F;
+    $mantissa = $half & 0x3FF;
+    if ($exponent === 0) {
+        $value = $mantissa * pow(2, -24);
+    } elseif ($exponent === 31) {
+        $value = $mantissa === 0 ? INF : NAN;
+    } else {
+        $value = ($mantissa + 1024) * pow(2, $exponent - 25);
+    }
+    return ($half & 0x8000) ? -$value : $value;
+}
+
+// Request body as an array, from CBOR or JSON depending on Content-Type; null if unreadable
+function readRequestInput() {
+    $raw = file_get_contents('php://input');
+    if (stripos($_SERVER['CONTENT_TYPE'] ?? '', 'application/cbor') !== false) {
+        try {
+            $data = cborDecode($raw);
+            return is_array($data) ? $data : null;
+        } catch (Exception $e) {
+            error_log("CBOR request decode error: " . $e->getMessage());
+            return null;
+        }
+    }
+    return json_decode($raw, true);
+}
+
+// Response body for a mobile action, encoded once: CBOR for clients that sent
+// "Accept: application/cbor", JSON otherwise. Other actions always answer JSON.
+function encodeApiResponse($data) {
+    if (stripos($_SERVER['HTTP_ACCEPT'] ?? '', 'application/cbor') !== false) {
+        header('Content-Type: application/cbor');
+        return cborEncode($data);
+    }
+    return json_encode($data);
+}
+
+// ========================================
+// MOBILE OPERATION HANDLERS (shared by single and batch requests)
+// ========================================
+
+define('BATCH_MAX_OPERATIONS', 16);
+
+// Conditional FCM token write: nothing is written when the client's digest matches the stored row
+function syncFcmToken($db, $input) {
+    try {
+        $email = $input['email'] ?? '';
+        $fcmToken = $input['fcm_token'] ?? '';
+        $barangay = $input['barangay'] ?? '';
+        $digest = $input['digest'] ?? '';
+        
+        if (empty($email) || empty($fcmToken)) {
+            return ['success' => false, 'updated' => false, 'message' => 'Email and fcm_token are required'];
+        }
+        
+        $pdo = $db->getPDO();
+        $stmt = $pdo->prepare("SELECT fcm_token, barangay FROM community_users WHERE email = ? LIMIT 1");
+        $stmt->execute([$email]);
+        $user = $stmt->fetch(PDO::FETCH_ASSOC);
+        
+        if (!$user) {
+            return ['success' => true, 'updated' => false, 'exists' => false];
+        }
+        
+        $storedDigest = hash('sha256', ($user['fcm_token'] ?? '') . '|' . $email . '|' . ($user['barangay'] ?? ''));
+        if (!empty($digest) && hash_equals($storedDigest, $digest)) {
+            return ['success' => true, 'unchanged' => true];
+        }
+        
+        $stmt = $pdo->prepare("UPDATE community_users SET fcm_token = ?, barangay = ? WHERE email = ?");
+        $stmt->execute([$fcmToken, $barangay, $email]);
+        return ['success' => true, 'updated' => true];
+    } catch (Exception $e) {
+        error_log("FCM token sync error: " . $e->getMessage());
+        return ['success' => false, 'updated' => false, 'message' => 'Error syncing FCM token: ' . $e->getMessage()];
+    }
+}
+
+// One operation of a batch request; same validation and result shape as the single-action cases
+function runBatchOperation($db, $action, $input) {
+    if (!is_array($input)) {
+        return ['success' => false, 'message' => 'Operation body must be an object'];
+    }
+    
+    switch ($action) {
+        case 'select':
+            if (empty($input['table'])) {
+                return ['success' => false, 'message' => 'Table name is required'];
+            }
+            return $db->universalSelect($input['table'], $input['columns'] ?? '*', $input['where'] ?? '',
+                $input['order_by'] ?? '', $input['limit'] ?? '', $input['params'] ?? []);
+            
+        case 'insert':
+            if (empty($input['table']) || empty($input['data'])) {
+                return ['success' => false, 'message' => 'Table and data are required'];
+            }
+            return $db->universalInsert($input['table'], $input['data']);
+            
+        case 'update':
+            if (empty($input['table']) || empty($input['data']) || empty($input['where'])) {
+                return ['success' => false, 'message' => 'Table, data, and where conditions are required'];
+            }
+            return $db->universalUpdate($input['table'], $input['data'], $input['where'], $input['params'] ?? []);
+            
+        case 'sync_fcm_token':
+            return syncFcmToken($db, $input);
+            
+        default:
+            return ['success' => false, 'message' => 'Action not allowed in batch: ' . $action];
+    }
+}
+
+// ========================================
+// SESSION CREDENTIALS (mobile session lease and probe)
+// ========================================
+
+// An expired lease still authenticates its renewal for this long
+define('SESSION_LEASE_RENEW_GRACE', 7 * 24 * 3600);
+
+// Lease signing key (SESSION_LEASE_PRIVATE_KEY, RSA PEM), or null when leases are not configured
+function sessionLeasePrivateKey() {
+    $privateKeyPem = getenv('SESSION_LEASE_PRIVATE_KEY');
+    if (empty($privateKeyPem)) {
+        return null;
+    }
+    $privateKey = openssl_pkey_get_private(str_replace('\\n', "\n", $privateKeyPem));
+    if (!$privateKey) {
+        error_log("Session lease error: invalid SESSION_LEASE_PRIVATE_KEY");
+        return null;
+    }
+    return $privateKey;
+}
+
+// Payload of a lease signed with our key, or null if malformed or tampered with (expiry not checked)
+function verifySessionLease($token, $privateKey) {
+    $parts = explode('.', $token);
+    if (count($parts) !== 2) {
+        return null;
+    }
+    $details = openssl_pkey_get_details($privateKey);
+    $signature = base64_decode(strtr($parts[1], '-_', '+/'));
+    if ($signature === false || openssl_verify($parts[0], $signature, $details['key'], OPENSSL_ALGO_SHA256) !== 1) {
+        return null;
+    }
+    $payload = json_decode(base64_decode(strtr($parts[0], '-_', '+/')), true);
+    return is_array($payload) ? $payload : null;
+}
+
+// Mark the PHP session as signed in to a community user (mobile login)
+function startCommunitySession($email, $name) {
+    if (session_status() !== PHP_SESSION_ACTIVE) {
+        session_start();
+    }
+    $_SESSION['user_email'] = $email;
+    $_SESSION['username'] = $name;
+    $_SESSION['logged_in'] = true;
+    $_SESSION['user_type'] = 'community_user';
+}
+
+// True if the request is authenticated as $email: "Authorization: Lease <token>" with a lease we
+// signed (expired at most SESSION_LEASE_RENEW_GRACE ago), "Authorization: Device <fcm token>" with
+// the token stored for that user by sync_fcm_token (the app's first lease), or the PHP session from login
+function hasSessionCredential($email) {
+    $authorization = $_SERVER['HTTP_AUTHORIZATION'] ?? $_SERVER['REDIRECT_HTTP_AUTHORIZATION'] ?? '';
+    if (stripos($authorization, 'Lease ') === 0) {
+        $privateKey = sessionLeasePrivateKey();
+        $payload = $privateKey ? verifySessionLease(trim(substr($authorization, 6)), $privateKey) : null;
+        if ($payload && strcasecmp($payload['email'] ?? '', $email) === 0
+                && (int)($payload['exp'] ?? 0) + SESSION_LEASE_RENEW_GRACE >= time()) {
+            return true;
+        }
+    }
+    
+    if (stripos($authorization, 'Device ') === 0) {
+        $deviceToken = trim(substr($authorization, 7));
+        $stmt = DatabaseAPI::getInstance()->getPDO()->prepare("SELECT fcm_token FROM community_users WHERE email = ? LIMIT 1");
+        $stmt->execute([$email]);
+        $storedToken = (string)($stmt->fetchColumn() ?: '');
+        if ($deviceToken !== '' && $storedToken !== '' && hash_equals($storedToken, $deviceToken)) {
+            return true;
+        }
+    }
+    
+    if (isset($_COOKIE[session_name()])) {
+        if (session_status() !== PHP_SESSION_ACTIVE) {
+            session_start();
+        }
+        $sessionEmail = $_SESSION['user_email'] ?? $_SESSION['email'] ?? '';
+        return $sessionEmail !== '' && strcasecmp($sessionEmail, $email) === 0;
+    }
+    return false;
+}
+
 // ========================================
 // API ENDPOINTS
 // ========================================
@@ -4253,6 +4657,8 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
     header('Access-Control-Allow-Origin: *');
     header('Access-Control-Allow-Methods: GET, POST, OPTIONS');
     header('Access-Control-Allow-Headers: Content-Type');
+    header('Vary: Accept');
+    header('X-Accept-Content-Type: application/json, application/cbor');
     
     // Handle preflight requests
     if ($_SERVER['REQUEST_METHOD'] === 'OPTIONS') {
@@ -4331,6 +4737,9 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
                     break;
                 }
                 
+                // Session credential for the mobile session lease (see hasSessionCredential)
+                startCommunitySession($user['email'], $user['name'] ?? '');
+                
                 // Return user data (without password)
                 unset($user['password']);
                 echo json_encode([
@@ -6352,7 +6761,7 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
         case 'select':
             // Universal SELECT operation
             if ($_SERVER['REQUEST_METHOD'] === 'POST') {
-                $input = json_decode(file_get_contents('php://input'), true) ?: $_POST;
+                $input = readRequestInput() ?: $_POST;
                 
                 $table = $input['table'] ?? '';
                 $columns = $input['columns'] ?? '*';
@@ -6367,7 +6776,20 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
                 }
                 
                 $result = $db->universalSelect($table, $columns, $where, $orderBy, $limit, $params);
-                echo json_encode($result);
+                $body = encodeApiResponse($result);
+                
+                // Clients revalidate cached selects with If-None-Match; unchanged rows cost a body-less 304
+                if (!empty($result['success'])) {
+                    $etag = '"' . md5($body) . '"';
+                    header('ETag: ' . $etag);
+                    header('Cache-Control: private, no-cache');
+                    if (($_SERVER['HTTP_IF_NONE_MATCH'] ?? '') === $etag) {
+                        http_response_code(304);
+                        header_remove('Content-Type');
+                        exit(0);
+                    }
+                }
+                echo $body;
             } else {
                 echo json_encode(['success' => false, 'message' => 'POST method required']);
             }
@@ -6376,7 +6798,7 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
         case 'insert':
             // Universal INSERT operation
             if ($_SERVER['REQUEST_METHOD'] === 'POST') {
-                $input = json_decode(file_get_contents('php://input'), true) ?: $_POST;
+                $input = readRequestInput() ?: $_POST;
                 
                 $table = $input['table'] ?? '';
                 $data = $input['data'] ?? [];
@@ -6387,7 +6809,7 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
                 }
                 
                 $result = $db->universalInsert($table, $data);
-                echo json_encode($result);
+                echo encodeApiResponse($result);
             } else {
                 echo json_encode(['success' => false, 'message' => 'POST method required']);
             }
@@ -6396,7 +6818,7 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
         case 'update':
             // Universal UPDATE operation
             if ($_SERVER['REQUEST_METHOD'] === 'POST') {
-                $input = json_decode(file_get_contents('php://input'), true) ?: $_POST;
+                $input = readRequestInput() ?: $_POST;
                 
                 $table = $input['table'] ?? '';
                 $data = $input['data'] ?? [];
@@ -6409,7 +6831,7 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
                 }
                 
                 $result = $db->universalUpdate($table, $data, $where, $params);
-                echo json_encode($result);
+                echo encodeApiResponse($result);
             } else {
                 echo json_encode(['success' => false, 'message' => 'POST method required']);
             }
@@ -6479,6 +6901,177 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
             echo json_encode($result);
             break;
             
+        // ========================================
+        // SESSION LEASE API (offline-verifiable session for mobile)
+        // ========================================
+        case 'issue_session_lease':
+            // Signs {email, status, iat, exp} with SESSION_LEASE_PRIVATE_KEY (RSA, PEM) so the app
+            // can validate the session locally until exp without calling the server.
+            // Only issued to a caller already authenticated as that email (hasSessionCredential):
+            // the app's first lease uses its acknowledged FCM token, renewals the previous lease.
+            // After a key rotation, SESSION_LEASE_KEY_ENDORSEMENT holds the base64 SHA256withRSA
+            // signature over the new public key's DER, made offline with the previous private key.
+            try {
+                if ($_SERVER['REQUEST_METHOD'] !== 'POST') {
+                    echo json_encode(['success' => false, 'message' => 'POST method required']);
+                    break;
+                }
+                
+                $privateKey = sessionLeasePrivateKey();
+                if (!$privateKey) {
+                    echo json_encode(['success' => false, 'message' => 'Session leases are not configured']);
+                    break;
+                }
+                
+                $input = json_decode(file_get_contents('php://input'), true) ?: $_POST;
+                $email = $input['email'] ?? '';
+                
+                if (empty($email)) {
+                    echo json_encode(['success' => false, 'message' => 'Email is required']);
+                    break;
+                }
+                
+                if (!hasSessionCredential($email)) {
+                    http_response_code(401);
+                    echo json_encode(['success' => false, 'message' => 'Session credential required']);
+                    break;
+                }
+                
+                $stmt = $db->getPDO()->prepare("SELECT email, status FROM community_users WHERE email = ? LIMIT 1");
+                $stmt->execute([$email]);
+                $user = $stmt->fetch(PDO::FETCH_ASSOC);
+                $status = ($user && isset($user['status'])) ? (string)$user['status'] : '1';
+                
+                if (!$user || $status === '0') {
+                    echo json_encode(['success' => true, 'exists' => false]);
+                    break;
+                }
+                
+                $leaseTtl = (int)(getenv('SESSION_LEASE_TTL') ?: 6 * 3600);
+                $now = time();
+                $payload = json_encode([
+                    'email' => $user['email'],
+                    'status' => $status,
+                    'iat' => $now,
+                    'exp' => $now + $leaseTtl
+                ]);
+                $encodedPayload = rtrim(strtr(base64_encode($payload), '+/', '-_'), '=');
+                
+                if (!openssl_sign($encodedPayload, $signature, $privateKey, OPENSSL_ALGO_SHA256)) {
+                    error_log("Session lease error: signing failed");
+                    echo json_encode(['success' => false, 'message' => 'Could not sign session lease']);
+                    break;
+                }
+                $details = openssl_pkey_get_details($privateKey);
+                
+                echo json_encode([
+                    'success' => true,
+                    'exists' => true,
+                    'lease' => $encodedPayload . '.' . rtrim(strtr(base64_encode($signature), '+/', '-_'), '='),
+                    'expires_at' => $now + $leaseTtl,
+                    'public_key' => $details['key'],
+                    'key_endorsement' => getenv('SESSION_LEASE_KEY_ENDORSEMENT') ?: null
+                ]);
+            } catch (Exception $e) {
+                error_log("Session lease error: " . $e->getMessage());
+                echo json_encode(['success' => false, 'message' => 'Error issuing session lease: ' . $e->getMessage()]);
+            }
+            break;
+            
+        // ========================================
+        // SESSION PROBE API (mobile session validation)
+        // ========================================
+        case 'session_probe':
+            // Returns 304 with no body when the session version sent in If-None-Match is unchanged.
+            // Only answers a caller authenticated as that email, and only with the validity result.
+            try {
+                if ($_SERVER['REQUEST_METHOD'] !== 'POST') {
+                    echo json_encode(['success' => false, 'message' => 'POST method required']);
+                    break;
+                }
+                
+                $input = json_decode(file_get_contents('php://input'), true) ?: $_POST;
+                $email = $input['email'] ?? '';
+                
+                if (empty($email)) {
+                    echo json_encode(['success' => false, 'message' => 'Email is required']);
+                    break;
+                }
+                
+                if (!hasSessionCredential($email)) {
+                    http_response_code(401);
+                    echo json_encode(['success' => false, 'message' => 'Session credential required']);
+                    break;
+                }
+                
+                $stmt = $db->getPDO()->prepare("SELECT email, status FROM community_users WHERE email = ? LIMIT 1");
+                $stmt->execute([$email]);
+                $user = $stmt->fetch(PDO::FETCH_ASSOC);
+                
+                $status = ($user && isset($user['status'])) ? (string)$user['status'] : '1';
+                if (!$user || $status === '0') {
+                    echo json_encode(['success' => true, 'exists' => false]);
+                    break;
+                }
+                
+                $version = '"' . md5($user['email'] . '|' . $status) . '"';
+                $ifNoneMatch = $_SERVER['HTTP_IF_NONE_MATCH'] ?? '';
+                
+                header('ETag: ' . $version);
+                if ($ifNoneMatch === $version) {
+                    http_response_code(304);
+                    header_remove('Content-Type');
+                    exit(0);
+                }
+                
+                echo json_encode([
+                    'success' => true,
+                    'exists' => true,
+                    'version' => $version
+                ]);
+            } catch (Exception $e) {
+                error_log("Session probe error: " . $e->getMessage());
+                echo json_encode(['success' => false, 'message' => 'Error probing session: ' . $e->getMessage()]);
+            }
+            break;
+            
+        // ========================================
+        // CONDITIONAL FCM TOKEN SYNC API (mobile)
+        // ========================================
+        case 'sync_fcm_token':
+            // Client sends sha256(token|email|barangay); when it matches the stored row nothing is written
+            if ($_SERVER['REQUEST_METHOD'] !== 'POST') {
+                echo json_encode(['success' => false, 'message' => 'POST method required']);
+                break;
+            }
+            echo encodeApiResponse(syncFcmToken($db, readRequestInput() ?: $_POST));
+            break;
+            
+        // ========================================
+        // BATCH API (mobile): several operations in one round trip
+        // ========================================
+        case 'batch':
+            // Body: {"operations": [{"action": "select", "body": {...}}, ...]}
+            // Reply: {"success": true, "results": [...]} with one result per operation, in order
+            if ($_SERVER['REQUEST_METHOD'] !== 'POST') {
+                echo json_encode(['success' => false, 'message' => 'POST method required']);
+                break;
+            }
+            
+            $input = readRequestInput() ?: [];
+            $operations = $input['operations'] ?? null;
+            if (!is_array($operations) || count($operations) > BATCH_MAX_OPERATIONS) {
+                echo json_encode(['success' => false, 'message' => 'operations must be a list of at most ' . BATCH_MAX_OPERATIONS]);
+                break;
+            }
+            
+            $results = [];
+            foreach ($operations as $operation) {
+                $results[] = runBatchOperation($db, $operation['action'] ?? '', $operation['body'] ?? []);
+            }
+            echo encodeApiResponse(['success' => true, 'results' => $results]);
+            break;
+            
         // ========================================
         // GET COMMUNITY USER DATA API
         // ========================================
@@ -8244,6 +8837,7 @@ if (basename($_SERVER['SCRIPT_NAME']) === 'DatabaseAPI.php' || basename($_SERVER
                     'select' => 'POST /DatabaseAPI.php?action=select (table, columns, where, order_by, limit, params)',
                     'insert' => 'POST /DatabaseAPI.php?action=insert (table, data)',
                     'update' => 'POST /DatabaseAPI.php?action=update (table, data, where, params)',
+                    'batch' => 'POST /DatabaseAPI.php?action=batch (operations: [{action, body}])',
                     'delete' => 'POST /DatabaseAPI.php?action=delete (table, where, params)',
                     'query' => 'POST /DatabaseAPI.php?action=query (sql, params)',
                     'describe' => 'GET /DatabaseAPI.php?action=describe&table=table_name',
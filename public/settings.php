@@ -975,6 +975,11 @@ if ($_SERVER['REQUEST_METHOD'] === 'POST' && isset($_POST['action'])) {
                if ($result && $updateStmt->rowCount() > 0) {
                    $message = ($action === 'archive') ? 'Community user archived successfully' : 'Community user unarchived successfully';
                    error_log("Archive community user successful: $message");
+                   
+                   // Push the change so the app revalidates now instead of polling
+                   if ($action === 'archive' && function_exists('sendSessionInvalidationNotification')) {
+                       sendSessionInvalidationNotification($user_email, 'account_archived');
+                   }
                    echo json_encode(['success' => true, 'message' => $message]);
                } else {
                    error_log("Archive community user failed: User not found or could not be updated. Rows affected: " . $updateStmt->rowCount());